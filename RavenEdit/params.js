@@ -42,6 +42,49 @@ var StartMap = "maps/Raven_DM1.map";
 // //cell space partitioning defaults
 var NumCellsX = 10;
 var NumCellsY = 10;
+
+//the size of the cells used to index the walls for line of sight and
+//collision tests
+var WallGridCellSize = 40;
+
+//set to 1 to store the precalculated path costs between graph nodes as
+//floats, halving the table's memory at the cost of some precision
+var PathCostTableSinglePrecision = 0;
+
+//set above 0 to work out path costs only as they are needed, keeping at
+//most this many nodes' worth of costs at once, instead of precalculating
+//the costs between every pair of nodes. For maps too big for the full table
+var PathCostLazyRows = 0;
+
+//the number of landmark nodes used to estimate path costs for A*. More
+//landmarks give better estimates, so fewer nodes are searched, but take
+//longer to set up when a map loads and use more memory. 0 to estimate by
+//straight-line distance only
+var NumPathLandmarks = 8;
+
+//set above 0 to search for long paths hierarchically: the map is cut into
+//square clusters this wide, a path is first found between the clusters and
+//then filled in inside only the clusters it crosses. Much less searching on
+//big maps, but paths can be a little longer than the shortest
+var PathClusterSize = 0;
+
+//the map is rastered into cells this wide, each listing the few nav graph
+//nodes nearest its middle that a bot could walk to. Finding the node nearest
+//a bot is then a lookup rather than a search. 0 turns the lookup off
+var ClosestNodeCellSize = 10;
+var ClosestNodeCandidates = 3;
+
+//while a door is closed the edges through it cost this many times as much,
+//as a bot must go to a switch to open it. At least 1. Set
+//ClosedDoorsBlockPaths to 1 to route bots around closed doors altogether
+var ClosedDoorCostMultiplier = 2;
+var ClosedDoorsBlockPaths = 0;
+
+//set to 1 to keep, for each type of item, the cost from every nav graph node
+//to the nearest active giver, patched as givers are picked up and respawn.
+//Bots then rate goals by looking up one number instead of the cost to every
+//giver. 0 looks the givers up one by one
+var ItemDistanceFields = 1;
 // 
 // //how long the graves remain on screen
 var GraveLifetime = 5;
@@ -36,15 +36,83 @@ var NumTeams = 2;
 //this is the maximum number of search cycles allocated to *all* current path
 // planning searches per update
 var MaxSearchCyclesPerUpdateStep = 1000;
+
+//the number of threads used for the read-only sense phase (vision and
+//targeting) of the bot update. 1 updates the bots serially, 0 uses one thread
+//per available processor
+var BotSenseThreads = 1;
+
+//the number of threads used to run path searches. 1 searches on the game
+//thread within the budget above, 0 uses one thread per available processor.
+//When searching in parallel each search gets the whole budget every update
+//and bots are told of the result at the start of the next update
+var PathSearchThreads = 1;
+
+//the number of finished paths remembered between pairs of graph nodes, so
+//bots asking for the same path again skip the search. 0 turns this off
+var PathCacheSize = 256;
+
 var StartMap = "maps/default.raven";
 
 //cell space partitioning defaults
 var NumCellsX = 10;
 var NumCellsY = 10;
 
+//the size of the cells used to index the walls for line of sight and
+//collision tests
+var WallGridCellSize = 40;
+
+//set to 1 to store the precalculated path costs between graph nodes as
+//floats, halving the table's memory at the cost of some precision
+var PathCostTableSinglePrecision = 0;
+
+//set above 0 to work out path costs only as they are needed, keeping at
+//most this many nodes' worth of costs at once, instead of precalculating
+//the costs between every pair of nodes. For maps too big for the full table
+var PathCostLazyRows = 0;
+
+//the number of landmark nodes used to estimate path costs for A*. More
+//landmarks give better estimates, so fewer nodes are searched, but take
+//longer to set up when a map loads and use more memory. 0 to estimate by
+//straight-line distance only
+var NumPathLandmarks = 8;
+
+//set above 0 to search for long paths hierarchically: the map is cut into
+//square clusters this wide, a path is first found between the clusters and
+//then filled in inside only the clusters it crosses. Much less searching on
+//big maps, but paths can be a little longer than the shortest
+var PathClusterSize = 0;
+
+//the map is rastered into cells this wide, each listing the few nav graph
+//nodes nearest its middle that a bot could walk to. Finding the node nearest
+//a bot is then a lookup rather than a search. 0 turns the lookup off
+var ClosestNodeCellSize = 10;
+var ClosestNodeCandidates = 3;
+
+//while a door is closed the edges through it cost this many times as much,
+//as a bot must go to a switch to open it. At least 1. Set
+//ClosedDoorsBlockPaths to 1 to route bots around closed doors altogether
+var ClosedDoorCostMultiplier = 2;
+var ClosedDoorsBlockPaths = 0;
+
+//set to 1 to keep, for each type of item, the cost from every nav graph node
+//to the nearest active giver, patched as givers are picked up and respawn.
+//Bots then rate goals by looking up one number instead of the cost to every
+//giver. 0 looks the givers up one by one
+var ItemDistanceFields = 1;
+
+//the size of the cells used to index the bots for separation, collision
+//and picking queries
+var BotIndexCellSize = 50;
+
 //how long the graves remain on screen
 var GraveLifetime = 5;
 
+//headless runs (Main -headless) advance the game by this fixed timestep, in
+//seconds, for this many ticks unless overridden on the command line
+var HeadlessTimeStep = 1.0 / 60;
+var HeadlessNumTicks = 36000;
+
 
 ////////////////////////[[ bot parameters ]]//////////////////////////////////
 //////////////////////////////////////////////////////////////////////////////-
@@ -82,6 +150,9 @@ var Bot_VisionUpdateFreq = 4;
 //the bot's field of view (in degrees)
 var Bot_FOV = 180;
 
+//bots can't see opponents further away than this. 0 for no limit
+var Bot_VisionRange = 0;
+
 //the bot's reaction time (in seconds)
 var Bot_ReactionTime = 0.2;
 
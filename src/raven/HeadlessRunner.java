@@ -0,0 +1,107 @@
+package raven;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import raven.game.RavenGame;
+import raven.game.navigation.PathCache;
+import raven.script.RavenScript;
+import raven.utils.Log;
+import raven.utils.MapLoadedException;
+
+/**
+ * Drives a RavenGame without any UI. The game is advanced by a fixed
+ * timestep as fast as the CPU allows, so matches can be run faster than
+ * wall-clock time and on machines without a display.
+ */
+public class HeadlessRunner {
+	/** the game being simulated */
+	private RavenGame game;
+
+	/** the amount of simulated time (in seconds) each tick advances */
+	private double timeStep;
+
+	/** the number of ticks simulated so far */
+	private long ticksRun;
+
+	public HeadlessRunner(RavenGame game, double timeStep) {
+		if (timeStep <= 0)
+			throw new IllegalArgumentException("HeadlessRunner: timestep must be positive, got " + timeStep);
+
+		this.game = game;
+		this.timeStep = timeStep;
+		this.ticksRun = 0;
+	}
+
+	/** creates a runner using the HeadlessTimeStep from params.js */
+	public HeadlessRunner(RavenGame game) {
+		this(game, RavenScript.getDouble("HeadlessTimeStep"));
+	}
+
+	/**
+	 * advances the game by one fixed timestep. A map switch requested during
+	 * the tick is applied by the game itself; there is no UI to rebuild so
+	 * the resulting MapLoadedException is only logged.
+	 */
+	public void tick() {
+		try {
+			game.update(timeStep);
+		} catch (MapLoadedException e) {
+			Log.info("headless", "Map switched at tick " + ticksRun);
+		}
+
+		ticksRun++;
+	}
+
+	/**
+	 * runs the given number of ticks back to back, without sleeping.
+	 * @param numTicks number of fixed timesteps to simulate
+	 * @return the wall-clock time taken in seconds
+	 */
+	public double run(long numTicks) {
+		Log.info("headless", "Running " + numTicks + " ticks of " + timeStep + "s");
+
+		long startTime = System.nanoTime();
+		long startBytes = allocatedBytes();
+
+		for (long i = 0; i < numTicks; i++) {
+			tick();
+		}
+
+		double elapsed = (System.nanoTime() - startTime) * 1.0e-9;
+		long allocated = allocatedBytes() - startBytes;
+
+		Log.info("headless", "Simulated " + (numTicks * timeStep) + "s of game time in " + elapsed + "s");
+		if (startBytes >= 0 && numTicks > 0) {
+			Log.info("headless", "Allocated " + (allocated / numTicks) + " bytes per tick on the game thread");
+		}
+		Log.info("headless", "Line of sight: " + game.getVisibility().getRaycasts() + " rays cast, "
+				+ game.getVisibility().getRaycastsSaved() + " saved");
+		PathCache pathCache = game.getPathManager().getPathCache();
+		Log.info("headless", "Path cache: " + pathCache.getHits() + " hits, "
+				+ pathCache.getMisses() + " misses, " + pathCache.size() + " paths held");
+
+		return elapsed;
+	}
+
+	/** the bytes this thread has allocated so far, or -1 if the JVM can't
+	 * tell */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+
+		com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean)threads;
+		if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled())
+			return -1;
+
+		return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// Accessors
+
+	public RavenGame getGame() { return game; }
+	public double getTimeStep() { return timeStep; }
+	public long getTicksRun() { return ticksRun; }
+	public double getSimulatedTime() { return ticksRun * timeStep; }
+}
@@ -1,13 +1,17 @@
 package raven;
 
 import java.awt.Dimension;
+import java.io.IOException;
 
 import raven.game.RavenGame;
+import raven.script.RavenScript;
 import raven.ui.GameCanvas;
 import raven.ui.RavenUI;
+import raven.utils.BinaryMapFormat;
 import raven.utils.Log;
 import raven.utils.Log.Level;
 import raven.utils.MapLoadedException;
+import raven.utils.MapSerializer;
 
 public class Main {
 	private static RavenUI ui;
@@ -16,12 +20,66 @@ public class Main {
     public static void main(String args[]) {
     	Log.setLevel(Level.INFO);
     	
+    	if (args.length > 0 && args[0].equals("-headless")) {
+    		headless(args);
+    		return;
+    	}
+    	
+    	if (args.length > 0 && args[0].equals("-convertmap")) {
+    		convertMap(args);
+    		return;
+    	}
+    	
     	game = new RavenGame();
     	ui = new RavenUI(game);
     	
     	gameLoop();
 	}
     
+	//////////////////////////////////////////////////////////////////////////
+	// Headless simulation
+
+    /** runs the game without a UI. Usage: -headless [numTicks] [timeStep] */
+    private static void headless(String args[]) {
+    	long numTicks = RavenScript.getInt("HeadlessNumTicks");
+    	double timeStep = RavenScript.getDouble("HeadlessTimeStep");
+    	
+    	if (args.length > 1) {
+    		numTicks = Long.parseLong(args[1]);
+    	}
+    	if (args.length > 2) {
+    		timeStep = Double.parseDouble(args[2]);
+    	}
+    	
+    	game = new RavenGame();
+    	new HeadlessRunner(game, timeStep).run(numTicks);
+    }
+    
+	//////////////////////////////////////////////////////////////////////////
+	// Map conversion
+
+    /** writes a binary copy of an XML map, or an XML copy with its path costs
+     * cached if the output isn't a binary file.
+     * Usage: -convertmap in.raven out.rvb|out.raven */
+    private static void convertMap(String args[]) {
+    	if (args.length < 3) {
+    		System.err.println("Usage: -convertmap <in.raven> <out" + BinaryMapFormat.EXTENSION + "|out.raven>");
+    		System.exit(1);
+    	}
+    	
+    	try {
+    		if (args[2].endsWith(BinaryMapFormat.EXTENSION)) {
+    			MapSerializer.convertToBinary(args[1], args[2]);
+    		} else {
+    			MapSerializer.serializeMapWithCosts(MapSerializer.readXmlMap(args[1]), args[2]);
+    		}
+    		Log.info("raven", "Wrote " + args[2]);
+    	} catch (IOException e) {
+    		System.err.println("Failed to convert " + args[1] + ". Reason: \n" + e.getLocalizedMessage());
+    		System.exit(1);
+    	}
+    }
+    
 	//////////////////////////////////////////////////////////////////////////
 	// Game simulation
 
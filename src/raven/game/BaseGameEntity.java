@@ -1,9 +1,10 @@
 package raven.game;
 
 import raven.game.messaging.Telegram;
+import raven.math.Positioned;
 import raven.math.Vector2D;
 
-public abstract class BaseGameEntity {
+public abstract class BaseGameEntity implements Positioned {
 	
 	public static final int DEFAULT_ENTITY_TYPE = -1;
 	
@@ -16,12 +17,20 @@ public abstract class BaseGameEntity {
 	transient private static int nextValidID;
 	
 	private void setID(int val) {
-		if (val < nextValidID)
-			throw new RuntimeException("Invalid ID during creation!");
-		
-		ID = val;
-		
-		nextValidID++;
+		synchronized (BaseGameEntity.class) {
+			if (val < nextValidID)
+				throw new RuntimeException("Invalid ID during creation!");
+			
+			ID = val;
+			
+			nextValidID++;
+		}
+	}
+	
+	/** hands out the next valid ID. Entities may be created on more than
+	 * one thread, such as when a map loads in the background */
+	private static synchronized int takeNextValidID() {
+		return nextValidID++;
 	}
 	
 	protected Vector2D position;
@@ -32,6 +41,11 @@ public abstract class BaseGameEntity {
 	protected BaseGameEntity(int id) {
 		setID(id);
 	}
+	
+	/** creates an entity with the next valid ID */
+	protected BaseGameEntity() {
+		ID = takeNextValidID();
+	}
 
 	public void update(double delta) {}
 	public abstract void render();
@@ -40,7 +54,7 @@ public abstract class BaseGameEntity {
 	
 	public static int getNextValidID() { return nextValidID; }
 	
-	public static void resetNextValidID() { nextValidID = 0; }
+	public static synchronized void resetNextValidID() { nextValidID = 0; }
 	
 	// Accessors
 	
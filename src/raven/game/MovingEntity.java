@@ -32,7 +32,7 @@ public abstract class MovingEntity extends BaseGameEntity {
 						Vector2D scale,
 						double turnRate,
 						double maxForce) {
-		super(BaseGameEntity.getNextValidID());
+		super();
 		this.heading = heading;
 		this.velocity = velocity;
 		this.mass = mass;
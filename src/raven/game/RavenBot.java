@@ -109,6 +109,10 @@ public class RavenBot extends MovingEntity implements IRavenBot {
 	/** set to true when a human player takes over control of the bot */
 	private boolean possessed;
 
+	/** this bot's position in the game's list of bots, or -1 if it is not
+	 * in the game. Other bots use it to index their memories of this one */
+	private int slot = -1;
+
 	/** a vertex buffer containing the bot's geometry */
 	transient private ArrayList<Vector2D> vecBotVB;
 
@@ -123,26 +127,29 @@ public class RavenBot extends MovingEntity implements IRavenBot {
 		//calculate the combined steering force
 		Vector2D force = steering.calculate();
 
+		// other objects keep hold of the bot's velocity and position (spawn
+		// points, goals and projectiles among them), so new vectors are made
+		// for them rather than changing the old ones in place
+		Vector2D newVelocity = new Vector2D(velocity);
+
 		//if no steering force is produced decelerate the player by applying a
 		//braking force
 		if (steering.force().isZero())
 		{
 			final double BrakingRate = 0.8; 
 
-			velocity = velocity.mul(BrakingRate);                                     
+			newVelocity.scaleLocal(BrakingRate);                                     
 		}
 
-		//calculate the acceleration
-		Vector2D accel = force.div(mass);
-
-		//update the velocity
-		velocity = velocity.add(accel);
+		//update the velocity with the acceleration
+		newVelocity.addScaledLocal(force, 1.0 / mass);
 
 		//make sure vehicle does not exceed maximum velocity per second
-		velocity.truncate(maxSpeed * delta);
+		newVelocity.truncate(maxSpeed * delta);
+		velocity = newVelocity;
 
 		//update the position
-		position = position.add(velocity);
+		position = new Vector2D(position).addLocal(velocity);
 
 		//if the vehicle has a non zero velocity the heading and side vectors must 
 		//be updated
@@ -373,6 +380,44 @@ public class RavenBot extends MovingEntity implements IRavenBot {
 
 	@Override
 	public void update(double delta) {
+		sense(delta);
+		act(delta);
+	}
+
+	/**
+	 * the read-only half of an update. The bot looks at the world, updates
+	 * its sensory memory and target, and scores the goals it could pursue,
+	 * but changes nothing outside of itself, so the game may run this for
+	 * many bots concurrently as long as nobody moves in the meantime.
+	 */
+	public void sense(double delta) {
+		// if the bot is under AI control but not scripted
+		if (!isPossessed()) {
+			targetSelectionRegulator.update(delta);
+			goalArbitrationRegulator.update(delta);
+
+			// examine all the opponents in the bots sensory memory and select
+			// one to be the current target
+			if (targetSelectionRegulator.isReady()) {
+				targSys.update();
+			}
+
+			// update the sensory memory with any visual stimulus
+			sensoryMem.updateVision(delta);
+
+			// appraise all possible high level goals. The most desirable is
+			// set when the bot acts
+			if (goalArbitrationRegulator.isReady()) {
+				brain.scoreEvaluators();
+			}
+		}
+	}
+
+	/**
+	 * the half of an update with side effects: goals, path requests,
+	 * movement, firing and messaging. This must be run on the game thread.
+	 */
+	public void act(double delta) {
 		// Moved from render() since this is time dependent!
 		numSecondsHitPersistant -= delta;
 
@@ -389,24 +434,10 @@ public class RavenBot extends MovingEntity implements IRavenBot {
 		// if the bot is under AI control but not scripted
 		if (!isPossessed()) {
 			weaponSelectionRegulator.update(delta);
-			goalArbitrationRegulator.update(delta);
-			targetSelectionRegulator.update(delta);
 			triggerTestRegulator.update(delta);
 
-			// examine all the opponents in the bots sensory memory and select
-			// one to be the current target
-			if (targetSelectionRegulator.isReady()) {
-				targSys.update();
-			}
-
-			// appraise and arbitrate between all possible high level goals
-			if (goalArbitrationRegulator.isReady()) {
-			//	brain.process(delta);
-				brain.Arbitrate();
-			}
-
-			// update the sensory memory with any visual stimulus
-			sensoryMem.updateVision(delta);
+			// arbitrate between the high level goals scored while sensing
+			brain.setMostDesirableGoal();
 
 			// select the appropriate weapon to use from the weapons currently
 			// in the inventory
@@ -423,8 +454,6 @@ public class RavenBot extends MovingEntity implements IRavenBot {
 		{
 			weaponSys.angryFire(delta);
 		}
-
-		
 	}
 
 	@Override
@@ -583,6 +612,14 @@ public class RavenBot extends MovingEntity implements IRavenBot {
 		return possessed;
 	}
 
+	public int slot() {
+		return slot;
+	}
+
+	void setSlot(int slot) {
+		this.slot = slot;
+	}
+
 	public boolean isDead() {
 		return status == Status.DEAD;
 	}
@@ -3,6 +3,8 @@ package raven.game;
 import java.util.LinkedList;
 import java.util.List;
 
+import raven.game.messaging.RavenMessage;
+import raven.game.messaging.Telegram;
 import raven.math.Vector2D;
 import raven.math.Wall2D;
 import raven.ui.GameCanvas;
@@ -38,10 +40,14 @@ public class RavenDoor extends BaseGameEntity {
 	
 	protected double currentSize;
 	
+	/** counts the times the door has finished opening or closing */
+	transient protected int numStateChanges;
+	
 	protected void open() {
 		if (status == Status.OPENING) {
 			if (currentSize < 2) {
 				status = Status.OPEN;
+				numStateChanges++;
 				
 				numSecondsCurrentlyOpen = numSecondsStayOpen;
 				
@@ -60,6 +66,7 @@ public class RavenDoor extends BaseGameEntity {
 	protected void close() {
 		if (status == Status.CLOSING) {
 			status = Status.CLOSED;
+			numStateChanges++;
 			return;
 		}
 		
@@ -80,7 +87,10 @@ public class RavenDoor extends BaseGameEntity {
 
 		status = Status.CLOSED;
 		numSecondsStayOpen = timeout;
+		switches = new LinkedList<Integer>();
 		
+		p1 = pos1;
+		p2 = pos2;
 		vectorToP2Norm = pos2.sub(pos1);
 		vectorToP2Norm.normalize();
 		currentSize = size = pos2.distance(pos1);
@@ -93,6 +103,50 @@ public class RavenDoor extends BaseGameEntity {
 	List<Integer> getSwitchIDs() {
 		return switches;
 	}
+	
+	/** opens or closes the door a little, or counts down the time it has
+	 * left to stay open */
+	@Override
+	public void update(double delta) {
+		switch (status) {
+		case OPENING:
+			open();
+			break;
+		case CLOSING:
+			close();
+			break;
+		case OPEN:
+			numSecondsCurrentlyOpen -= delta;
+			if (numSecondsCurrentlyOpen < 0) {
+				status = Status.CLOSING;
+			}
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/** a switch asks the door to open */
+	@Override
+	public boolean handleMessage(Telegram msg) {
+		if (msg.msg == RavenMessage.MSG_OPEN_SESAME) {
+			if (status != Status.OPEN) {
+				status = Status.OPENING;
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/** true once the door is fully open, until it starts to close */
+	public boolean isOpen() {
+		return status == Status.OPEN;
+	}
+	
+	/** returns a number that changes whenever the door opens or closes */
+	public int getNumStateChanges() {
+		return numStateChanges;
+	}
 
 	@Override
 	public void render() {
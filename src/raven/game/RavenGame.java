@@ -7,6 +7,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JFileChooser;
 import javax.swing.filechooser.FileFilter;
@@ -22,6 +28,7 @@ import raven.game.messaging.Dispatcher;
 import raven.game.messaging.RavenMessage;
 import raven.game.navigation.PathManager;
 import raven.game.navigation.RavenPathPlanner;
+import raven.math.CellSpacePartition;
 import raven.math.Vector2D;
 import raven.math.WallIntersectionTest;
 import raven.script.RavenScript;
@@ -35,7 +42,8 @@ public class RavenGame {
 	/** the current game map */
 	private RavenMap map;
 
-	/** bots that inhabit the current map */
+	/** bots that inhabit the current map. Bots are only ever added to or
+	 * removed from the end, so each bot's slot stays its index here */
 	private ArrayList<IRavenBot> bots = new ArrayList<IRavenBot>();
 
 	/** A user may control a bot manually. This is that bot */
@@ -45,7 +53,8 @@ public class RavenGame {
 	private ArrayList<RavenProjectile> projectiles = new ArrayList<RavenProjectile>();
 
 	/** manages all the path planning requests */
-	PathManager pathManager = new PathManager(RavenScript.getInt("MaxSearchCyclesPerUpdateStep"));;
+	PathManager pathManager = new PathManager(RavenScript.getInt("MaxSearchCyclesPerUpdateStep"),
+			RavenScript.getInt("PathSearchThreads"), RavenScript.getInt("PathCacheSize"));
 
 	/** true if the game is paused */
 	boolean paused;
@@ -61,8 +70,118 @@ public class RavenGame {
 
 	/** Holds a request to load a new map. This is set from another thread */
 	private String newMapPath;
+	
+	/** loads maps in the background, so the game keeps running while a new
+	 * map is parsed and its path costs are worked out. Created on first use */
+	private ExecutorService mapLoader;
+	
+	/** the map being loaded in the background and where it is loaded from.
+	 * null if none is. Only touched by the game thread */
+	private Future<RavenMap> pendingMap;
+	private String pendingMapPath;
 	private volatile int botsToAdd;
 
+	/** runs the read-only sense phase of the bot update across several
+	 * threads. null if the bots are updated serially. */
+	private ExecutorService senseExecutor;
+
+	/** one task per sense thread, each covering a slice of botsToUpdate */
+	private List<SenseTask> senseTasks = new ArrayList<SenseTask>();
+
+	/** the bots that are alive at the start of this update step */
+	private ArrayList<IRavenBot> botsToUpdate = new ArrayList<IRavenBot>();
+
+	/** partitions the bots by position for proximity queries. Rebuilt at the
+	 * start of each update and kept current as the bots move */
+	private CellSpacePartition<IRavenBot> botIndex;
+
+	/** the largest bounding radius of any bot in the index */
+	private double maxBotRadius;
+
+	/** where the bot being moved was before it moved */
+	private Vector2D oldBotPos = new Vector2D();
+
+	/** line of sight between the bots, shared by all of them during the
+	 * sense phase */
+	private VisibilityMatrix visibility = new VisibilityMatrix(RavenScript.getDouble("Bot_VisionRange"));
+
+	/** runs the sense phase for a contiguous slice of botsToUpdate */
+	private class SenseTask implements Callable<Void> {
+		private int slice;
+		private double delta;
+
+		public SenseTask(int slice) {
+			this.slice = slice;
+		}
+
+		@Override
+		public Void call() {
+			int numSlices = senseTasks.size();
+			int begin = botsToUpdate.size() * slice / numSlices;
+			int end = botsToUpdate.size() * (slice + 1) / numSlices;
+
+			for (int i = begin; i < end; i++) {
+				botsToUpdate.get(i).sense(delta);
+			}
+
+			return null;
+		}
+	}
+
+	/** creates the sense thread pool, if more than one thread is requested */
+	private void createSenseExecutor(int numThreads) {
+		if (numThreads <= 0) {
+			numThreads = Runtime.getRuntime().availableProcessors();
+		}
+
+		if (numThreads == 1) {
+			return;
+		}
+
+		Log.info("game", "Updating bots with " + numThreads + " sense threads");
+
+		senseExecutor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "raven-sense");
+				// never keep the game alive on our account
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		for (int i = 0; i < numThreads; i++) {
+			senseTasks.add(new SenseTask(i));
+		}
+	}
+
+	/**
+	 * phase one of the bot update: every bot senses the world. Nothing moves
+	 * during this phase, so the bots may be processed concurrently.
+	 */
+	private void senseBots(double delta) {
+		if (senseExecutor == null || botsToUpdate.size() < 2) {
+			for (IRavenBot bot : botsToUpdate) {
+				bot.sense(delta);
+			}
+			return;
+		}
+
+		for (SenseTask task : senseTasks) {
+			task.delta = delta;
+		}
+
+		try {
+			for (Future<Void> result : senseExecutor.invokeAll(senseTasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("RavenGame#senseBots: bot sense phase failed", e.getCause());
+		}
+	}
+
 	private void clear() {
 		Log.debug("game", "Clearing Map");
 		// delete the bots
@@ -116,6 +235,8 @@ public class RavenGame {
 	public RavenGame() {
 		EntityManager.reset();
 		
+		createSenseExecutor(RavenScript.getInt("BotSenseThreads"));
+		
 		try {
 			loadMap(RavenScript.getString("StartMap"));
 		} catch (IOException e) {
@@ -213,15 +334,10 @@ public class RavenGame {
 	public void update(double delta) throws MapLoadedException {
 		Log.trace("game", "Beginning update");
 		
-		// Check if we need to switch maps
-		if (newMapPath != null) {
-			try {
-				loadMap(newMapPath);
-				throw new MapLoadedException();
-			} catch (IOException e) {
-				Log.warn("game", "Failed to laod map " + newMapPath + ".");
-			}
-		}
+		// Check if we need to switch maps. The new map is swapped in here,
+		// between updates, once it has finished loading
+		beginMapLoad();
+		finishMapLoad();
 		
 		// don't update if the user has paused the game
 		if (paused) {
@@ -240,6 +356,8 @@ public class RavenGame {
 		}
 		
 
+		rebuildBotIndex();
+		
 		graveMarkers.update(delta);
 		
 		// Update a player controlled bot
@@ -253,6 +371,16 @@ public class RavenGame {
 			door.update(delta);
 		}
 		
+		// if a door opened or closed, change the cost of the edges through
+		// it. The searches running on the workers read those costs, so they
+		// must finish first, and those that keep costs of their own are
+		// told afterwards
+		if (!map.areDoorEdgesCurrent()) {
+			pathManager.waitForSearches();
+			map.updateDoorEdges();
+			pathManager.edgeCostsChanged();
+		}
+		
 		// update any current projectiles
 		HashSet<RavenProjectile> toRemove = new HashSet<RavenProjectile>();
 		for (RavenProjectile projectile : projectiles) {
@@ -266,12 +394,15 @@ public class RavenGame {
 		
 		// update the bots
 		boolean spawnPossible = true;
+		botsToUpdate.clear();
 		
 		for (IRavenBot bot : bots) {
 			// if this bot's status is 'respawning' attempt to resurrect it
 			// from an unoccupied spawn point
 			if (bot.isSpawning() && spawnPossible) {
+				oldBotPos.setValue(bot.pos());
 				spawnPossible = attemptToAddBot(bot);
+				botIndex.updateEntity(bot, oldBotPos);
 			}
 			// if this bot's status is 'dead' add a grave at its current
 			// location then change its status to 'respawning'
@@ -281,10 +412,22 @@ public class RavenGame {
 			}
 		    // if this bot is alive update it.
 			else if (bot.isAlive()) {
-				bot.update(delta);
+				botsToUpdate.add(bot);
 			}
 		}
 		
+		// the living bots first all sense the world as it stands at the start
+		// of this step, then act on it one at a time
+		visibility.begin(bots, map.getWallGrid());
+		senseBots(delta);
+		visibility.end();
+		
+		for (IRavenBot bot : botsToUpdate) {
+			oldBotPos.setValue(bot.pos());
+			bot.act(delta);
+			botIndex.updateEntity(bot, oldBotPos);
+		}
+		
 		// update the triggers
 		map.updateTriggerSystem(delta, bots);
 		
@@ -299,6 +442,7 @@ public class RavenGame {
 				}
 				notifyAllBotsOfRemoval(bot);
 				bots.remove(bot);
+				botIndex.removeEntity(bot, bot.pos());
 			}
 			
 			removeBot = false;
@@ -306,30 +450,109 @@ public class RavenGame {
 	}
 
 
-	public void switchToMap(String filename) {
+	/** asks for a map to be loaded. The current map keeps running until the
+	 * new one is ready */
+	public synchronized void switchToMap(String filename) {
 		newMapPath = filename;
 	}
 	
+	private synchronized String takeMapRequest() {
+		String path = newMapPath;
+		newMapPath = null;
+		return path;
+	}
+	
+	/** starts loading the map asked for by switchToMap, if any. A newer
+	 * request replaces one still loading */
+	private void beginMapLoad() {
+		final String path = takeMapRequest();
+		if (path == null) {
+			return;
+		}
+		
+		if (pendingMap != null) {
+			pendingMap.cancel(false);
+		}
+		
+		if (mapLoader == null) {
+			mapLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "raven-map-loader");
+					// never keep the game alive on our account
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		Log.info("game", "Loading map " + path + " in the background");
+		pendingMapPath = path;
+		pendingMap = mapLoader.submit(new Callable<RavenMap>() {
+			@Override
+			public RavenMap call() throws IOException {
+				return MapSerializer.loadMap(path);
+			}
+		});
+	}
+	
+	/** swaps in the map being loaded in the background if it is ready */
+	private void finishMapLoad() throws MapLoadedException {
+		if (pendingMap == null || !pendingMap.isDone()) {
+			return;
+		}
+		
+		Future<RavenMap> loaded = pendingMap;
+		String path = pendingMapPath;
+		pendingMap = null;
+		pendingMapPath = null;
+		
+		try {
+			installMap(loaded.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			Log.warn("game", "Failed to load map " + path + ". Reason: " + e.getCause().getLocalizedMessage());
+			return;
+		}
+		
+		throw new MapLoadedException();
+	}
+	
 	public void changeBotCount(int count) {
 		botsToAdd += count;
 	}
 
-	/** Loads an environment from a file 
+	/** Loads an environment from a file, on the calling thread
 	 * @throws IOException */
 	public boolean loadMap(String fileName) throws IOException {
+		installMap(MapSerializer.loadMap(fileName));
+		
+		return true;
+	}
+	
+	/** replaces the current map with one already loaded, and starts over
+	 * with new bots */
+	private void installMap(RavenMap newMap) {
 		// clear any current bots and projectiles
 		clear();
 
 		// out with the old
 		map = null;
-		newMapPath = null;
+		botIndex = null;
 		graveMarkers = null;
+		if (pathManager != null) {
+			pathManager.shutdown();
+		}
 		pathManager = null;
 
 		graveMarkers = new GraveMarkers(RavenScript.getDouble("GraveLifetime"));
 		pathManager = new PathManager(
-				RavenScript.getInt("MaxSearchCyclesPerUpdateStep"));
-		map = MapSerializer.deserializeMapFromPath(fileName);
+				RavenScript.getInt("MaxSearchCyclesPerUpdateStep"),
+				RavenScript.getInt("PathSearchThreads"),
+				RavenScript.getInt("PathCacheSize"));
+		map = newMap;
 		
 		EntityManager.reset();
 		
@@ -341,8 +564,6 @@ public class RavenGame {
 		
 		
 		Log.info("game", "Loaded map " + map);
-		
-		return true;
 	}
 
 	
@@ -368,6 +589,7 @@ public class RavenGame {
 			// switch the default steering behaviors on
 			bot.getSteering().wallAvoidanceOn();
 			bot.getSteering().separationOn();
+			((RavenBot)bot).setSlot(bots.size());
 			bots.add(bot);
 			Log.info("game", "Bot " + bot.ID() + " added");
 			
@@ -413,29 +635,50 @@ public class RavenGame {
 
 	/**
 	 * returns true if a bot of size BoundingRadius cannot move from A to B
-	 * without bumping into world geometry. It achieves this by stepping from
-	 * A to B in steps of size BoundingRadius and testing for intersection
-	 * with world geometry at each point.
+	 * without bumping into world geometry. It achieves this by sweeping the
+	 * bot's bounding circle along the line from A to B and testing the
+	 * capsule it covers against the nearby walls.
 	 */
 	public boolean isPathObstructed(Vector2D a, Vector2D b, double boundingRadius) {
-		Vector2D toB = b.sub(a);
-		toB.normalize();
-		
-		Vector2D curPos = a;
-		
-		while (curPos.distanceSq(b) > boundingRadius * boundingRadius) {
-			// advance curPos one step
-			curPos = curPos.add(toB.mul(0.5).mul(boundingRadius));
-			
-			if (WallIntersectionTest.doWallsIntersectCircle(map.getWalls(), curPos, boundingRadius)) {
-				return true;
-			}
+		return WallIntersectionTest.doWallsObstructSweptCircle(map.getWallGrid(), a, b, boundingRadius);
+	}
+
+	/** fills the bot index with every bot at its current position, creating
+	 * the index to fit the map if need be */
+	private void rebuildBotIndex() {
+		if (botIndex == null) {
+			double cellSize = RavenScript.getDouble("BotIndexCellSize");
+			botIndex = new CellSpacePartition<IRavenBot>(map.getSizeX(), map.getSizeY(),
+					(int)Math.ceil(map.getSizeX() / cellSize), (int)Math.ceil(map.getSizeY() / cellSize),
+					bots.size());
+		}
+
+		botIndex.emptyCells();
+		maxBotRadius = 0;
+		for (IRavenBot bot : bots) {
+			botIndex.addEntity(bot);
+			maxBotRadius = Math.max(maxBotRadius, bot.getBRadius());
 		}
-		
-		return false;
 	}
 
-	/** returns of bots in the FOV of the given bot */
+	/**
+	 * finds every bot, dead or alive, whose position is within range of pos,
+	 * and puts them in result. Add getMaxBotRadius() to the range to find
+	 * every bot whose bounding circle might reach within range.
+	 */
+	public void getBotsInRange(Vector2D pos, double range, List<IRavenBot> result) {
+		if (botIndex == null) {
+			rebuildBotIndex();
+		}
+
+		botIndex.calculateNeighbors(pos, range, result);
+	}
+
+	/** the largest bounding radius of any bot */
+	public double getMaxBotRadius() { return maxBotRadius; }
+
+	/** returns of bots in the FOV of the given bot. The field of view has no
+	 * range limit, so this looks at every bot */
 	public List<IRavenBot> getAllBotsInFOV(final IRavenBot bot) {
 		ArrayList<IRavenBot> visibleBots = new ArrayList<IRavenBot>();
 		
@@ -449,7 +692,7 @@ public class RavenGame {
 			if (Vector2D.isSecondInFOVOfFirst(bot.pos(), bot.facing(), other.pos(), bot.fieldOfView())) {
 				// cast a ray from between the bots to test visibility. If the
 				// bot is visible add it to the vector
-				if (!WallIntersectionTest.doWallsObstructLineSegment(bot.pos(), other.pos(), map.getWalls())) {
+				if (!WallIntersectionTest.doWallsObstructLineSegment(bot.pos(), other.pos(), map.getWallGrid())) {
 					visibleBots.add(other);
 				}	
 			}
@@ -466,7 +709,7 @@ public class RavenGame {
 		// false
 		if (!first.equals(second) && second.isAlive()) {
 			if (Vector2D.isSecondInFOVOfFirst(first.pos(), first.facing(), second.pos(), second.fieldOfView())) {
-				if (!WallIntersectionTest.doWallsObstructLineSegment(first.pos(), second.pos(), map.getWalls())) {
+				if (!WallIntersectionTest.doWallsObstructLineSegment(first.pos(), second.pos(), map.getWallGrid())) {
 					return true;
 				}
 			}
@@ -477,9 +720,18 @@ public class RavenGame {
 
 	/** returns true if the ray between A and B is unobstructed. */
 	public boolean isLOSOkay(final Vector2D A, final Vector2D B) {
-		return !WallIntersectionTest.doWallsObstructLineSegment(A, B, map.getWalls());
+		return !WallIntersectionTest.doWallsObstructLineSegment(A, B, map.getWallGrid());
 	}
 
+	/** returns true if the ray between the two bots is unobstructed. During
+	 * the sense phase the answer is shared with every other bot asking about
+	 * the same pair, and bots beyond the vision range are never visible */
+	public boolean isLOSOkay(final IRavenBot first, final IRavenBot second) {
+		return visibility.isLOSOkay(first, second, map.getWallGrid());
+	}
+
+	public VisibilityMatrix getVisibility() { return visibility; }
+
 	/**
 	 * starting from the given origin and moving in the direction Heading this
 	 * method returns the distance to the closest wall
@@ -532,6 +784,8 @@ public class RavenGame {
 	 * @return
 	 */
 	public IRavenBot getBotAtPosition(Vector2D cursorPos) {
+		// the UI calls this from the event thread, while the game thread may
+		// be rebuilding the bot index, so look at every bot instead
 		for (IRavenBot bot : bots) {
 			if (bot.pos().distance(cursorPos) < bot.getBRadius()) {
 				if (bot.isAlive()) {
@@ -732,10 +986,14 @@ public class RavenGame {
 	/** Some weird helper method */
 	public void tagRavenBotsWithinViewRange(IRavenBot ravenBot,
 			double viewDistance) {
-		//iterate through all entities checking for range
 		for (IRavenBot bot : bots) {
 			bot.unTag();
-
+		}
+		
+		//iterate through the nearby entities checking for range
+		List<IRavenBot> nearby = new ArrayList<IRavenBot>();
+		getBotsInRange(ravenBot.pos(), viewDistance + maxBotRadius, nearby);
+		for (IRavenBot bot : nearby) {
 			//work in distance squared to avoid sqrts
 			Vector2D to = bot.pos().sub(ravenBot.pos());
 			
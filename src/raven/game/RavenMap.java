@@ -2,14 +2,16 @@ package raven.game;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 
 import raven.game.interfaces.IRavenBot;
 import raven.game.messaging.RavenMessage;
+import raven.game.navigation.ClosestNodeGrid;
+import raven.game.navigation.ItemDistanceFields;
 import raven.game.navigation.NavGraphEdge;
 import raven.game.navigation.NavGraphNode;
+import raven.game.navigation.PathHierarchy;
 import raven.game.triggers.Trigger;
 import raven.game.triggers.TriggerHealthGiver;
 import raven.game.triggers.TriggerOnButtonSendMsg;
@@ -19,12 +21,18 @@ import raven.game.triggers.TriggerWeaponGiver;
 import raven.math.CellSpacePartition;
 import raven.math.Vector2D;
 import raven.math.Wall2D;
+import raven.math.WallGrid;
+import raven.math.graph.EuclideanHeuristic;
 import raven.math.graph.GraphNode;
+import raven.math.graph.Heuristic;
+import raven.math.graph.LandmarkHeuristic;
+import raven.math.graph.LazyPathCostTable;
+import raven.math.graph.PathCostProvider;
+import raven.math.graph.PathCostTable;
 import raven.math.graph.SparseGraph;
 import raven.script.RavenScript;
 import raven.ui.GameCanvas;
 import raven.utils.Log;
-import raven.utils.Pair;
 
 @XStreamAlias("RavenMap")
 public class RavenMap {
@@ -48,6 +56,10 @@ public class RavenMap {
 	/** this map's accompanying navigation graph */
 	private SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> navGraph;
 	
+	/** the walls are indexed by a grid so line of sight and collision tests
+	 * only look at nearby walls. Rebuilt on demand after walls are added. */
+	transient private WallGrid wallGrid;
+	
 	/** the graph nodes will be partitioned enabling fast lookup */
 	transient private CellSpacePartition<NavGraphNode<Trigger<IRavenBot>>> spacePartition;
 	
@@ -59,8 +71,36 @@ public class RavenMap {
 	int sizeY = 0;
 	
 	/* this will hold a pre-calculated lookup table of the cost to travel
-	 * from */
-	transient private Map<Pair<Integer, Integer>, Double> pathCosts;
+	 * from one node to any other, or work the costs out as asked for if
+	 * PathCostLazyRows is set */
+	transient private PathCostProvider pathCosts;
+
+	/** estimates the cost between two graph nodes for A*. Uses landmarks
+	 * unless NumPathLandmarks is 0 */
+	transient private Heuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> pathHeuristic;
+
+	/** the clusters and entrances used for hierarchical path searches.
+	 * null if PathClusterSize is 0. Not used on maps with doors, so not
+	 * kept up to date as they open and close */
+	transient private PathHierarchy pathHierarchy;
+
+	/** the nav graph nodes nearest each small cell of the map. null if
+	 * ClosestNodeCellSize is 0 */
+	transient private ClosestNodeGrid closestNodeGrid;
+
+	/** the cost from each node to the nearest active giver of each type.
+	 * null if ItemDistanceFields is 0 */
+	transient private ItemDistanceFields itemDistanceFields;
+
+	/** the door state version the edges through doors were last set for.
+	 * -1 until they have been set */
+	transient private int doorEdgesVersion = -1;
+
+	/** the edges going through doors, and the graph version and number of
+	 * doors they were found for */
+	transient private List<NavGraphEdge> doorEdges;
+	transient private int doorEdgesGraphVersion;
+	transient private int doorEdgesNumDoors;
 
 	/** the path this file was loaded from. null if unsaved. */
 	transient private String path;
@@ -145,6 +185,7 @@ public class RavenMap {
 		doors.clear();
 		
 		walls.clear();
+		wallGrid = null;
 		
 		spawnPoints.clear();
 		
@@ -166,12 +207,91 @@ public class RavenMap {
 		cellSpaceNeighborhoodRange = 0.0;
 	}
 	
-	private Object readResolve() {
+	/**
+	 * builds a map from parts read back from a binary map file. The triggers
+	 * are registered as they are, and the path cost table is used without
+	 * any searching if it covers the graph.
+	 */
+	public RavenMap(String name, int sizeX, int sizeY, List<Wall2D> walls, List<Vector2D> spawnPoints,
+			List<Trigger<IRavenBot>> triggers,
+			SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> navGraph,
+			PathCostTable pathCosts) {
+		this.name = name;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.walls = new ArrayList<Wall2D>(walls);
+		this.spawnPoints = new ArrayList<Vector2D>(spawnPoints);
+		this.doors = new ArrayList<RavenDoor>();
+		this.navGraph = navGraph;
+		
+		triggerSystem = new TriggerSystem<Trigger<IRavenBot>>();
+		for (Trigger<IRavenBot> trigger : triggers) {
+			triggerSystem.register(trigger);
+		}
+		
+		buildIndices(pathCosts);
+	}
+	
+	/** builds everything derived from the walls and graph. The path costs
+	 * are worked out unless a table covering the graph is given */
+	private void buildIndices(PathCostTable costs) {
+		doorEdgesVersion = -1;
+		doorEdges = null;
+		
+		linkGiverNodes();
+		
+		wallGrid = new WallGrid(walls, RavenScript.getDouble("WallGridCellSize"));
+		
 		cellSpaceNeighborhoodRange = navGraph.calculateAverageGraphEdgeLength() + 1;
 		
 		partitionNavGraph();
 		
-		pathCosts = navGraph.createAllPairsCostsTable();
+		boolean singlePrecision = RavenScript.getInt("PathCostTableSinglePrecision") != 0;
+		int lazyRows = RavenScript.getInt("PathCostLazyRows");
+		
+		int numLandmarks = RavenScript.getInt("NumPathLandmarks");
+		if (numLandmarks > 0) {
+			pathHeuristic = new LandmarkHeuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>>(navGraph, numLandmarks);
+		} else {
+			pathHeuristic = new EuclideanHeuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>>();
+		}
+		
+		double clusterSize = RavenScript.getDouble("PathClusterSize");
+		pathHierarchy = clusterSize > 0 ? new PathHierarchy(navGraph, sizeX, sizeY, clusterSize) : null;
+		
+		closestNodeGrid = RavenScript.getDouble("ClosestNodeCellSize") > 0 ? createClosestNodeGrid() : null;
+		
+		itemDistanceFields = RavenScript.getInt("ItemDistanceFields") != 0
+				? new ItemDistanceFields(navGraph, getTriggers()) : null;
+		
+		if (costs != null && costs.numNodes() == navGraph.numNodes()) {
+			pathCosts = costs;
+		} else if (lazyRows > 0) {
+			pathCosts = new LazyPathCostTable(navGraph, lazyRows, singlePrecision);
+		} else {
+			pathCosts = navGraph.createAllPairsCostsTable(singlePrecision);
+		}
+	}
+	
+	/** points each giver's graph node back at the giver, so searches for
+	 * items can find it. Saved maps don't always record the link */
+	private void linkGiverNodes() {
+		for (Trigger<IRavenBot> trigger : getTriggers()) {
+			// only givers are given a node of their own
+			if (!(trigger instanceof TriggerHealthGiver) && !(trigger instanceof TriggerWeaponGiver))
+				continue;
+			
+			int index = trigger.graphNodeIndex();
+			if (index >= 0 && index < navGraph.numNodes()
+					&& navGraph.getNode(index).index() != GraphNode.INVALID_NODE_INDEX
+					&& navGraph.getNode(index).extraInfo() == null) {
+				navGraph.getNode(index).setExtraInfo(trigger);
+			}
+		}
+	}
+	
+	private Object readResolve() {
+		buildIndices(null);
 		
 		return this;
 	}
@@ -188,6 +308,7 @@ public class RavenMap {
 	public Wall2D addWall(Vector2D from, Vector2D to) {
 		Wall2D wall = new Wall2D(from, to);
 		walls.add(wall);
+		wallGrid = null;
 		return wall;
 	}
 	
@@ -199,13 +320,12 @@ public class RavenMap {
 		if (node1 < 0 || node2 < 0 || node1 >= navGraph.numNodes() || node2 >= navGraph.numNodes())
 			throw new IndexOutOfBoundsException("Invalid node index: " + node1 + " to " + node2);
 		
-		double cost = 100.0;
-		try{
-			cost =  pathCosts.get(new Pair<Integer,Integer>(node1, node2));
-		} catch (NullPointerException e) {
-			Log.error("RavenMap", "pathCosts threw a NPE getting cost from " + node1 + " to " + node2);
+		if (pathCosts == null || pathCosts.numNodes() != navGraph.numNodes()) {
+			Log.error("RavenMap", "no path cost for " + node1 + " to " + node2);
+			return 100.0;
 		}
-		return cost;
+		
+		return pathCosts.getCost(node1, node2);
 	}
 	
 	/** returns the position of a graph node selected at random */
@@ -229,6 +349,12 @@ public class RavenMap {
 	
 	public void updateTriggerSystem(double delta, List<IRavenBot> bots) {
 		triggerSystem.update(delta, bots);
+		
+		// givers picked up or respawned change the distances to items
+		ItemDistanceFields fields = getItemDistanceFields();
+		if (fields != null) {
+			fields.update();
+		}
 	}
 	
 	// Accessors
@@ -241,6 +367,16 @@ public class RavenMap {
 		return walls;
 	}
 	
+	/** returns the wall index, building it first if the walls have changed */
+	public WallGrid getWallGrid() {
+		WallGrid grid = wallGrid;
+		if (grid == null) {
+			grid = new WallGrid(walls, RavenScript.getDouble("WallGridCellSize"));
+			wallGrid = grid;
+		}
+		return grid;
+	}
+	
 	public SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> getNavGraph() {
 		return navGraph;
 	}
@@ -249,10 +385,154 @@ public class RavenMap {
 		return doors;
 	}
 	
+	/** returns a number that changes whenever any door opens or closes */
+	public int getDoorStateVersion() {
+		int version = 0;
+		for (RavenDoor door : doors) {
+			version += door.getNumStateChanges();
+		}
+		return version;
+	}
+	
+	/** true if the edges through doors have been set for the doors' current
+	 * states */
+	public boolean areDoorEdgesCurrent() {
+		return doorEdgesVersion == getDoorStateVersion();
+	}
+	
+	/** the edges of the nav graph that go through a door */
+	public List<NavGraphEdge> getDoorEdges() {
+		if (doorEdges == null || doorEdgesGraphVersion != navGraph.getVersion() || doorEdgesNumDoors != doors.size()) {
+			doorEdges = new ArrayList<NavGraphEdge>();
+			for (RavenDoor door : doors) {
+				for (int node = 0; node < navGraph.numNodes(); node++) {
+					for (NavGraphEdge edge : navGraph.getEdges(node)) {
+						if (edge.IDOfIntersectingEntity() == door.ID()) {
+							doorEdges.add(edge);
+						}
+					}
+				}
+			}
+			doorEdgesGraphVersion = navGraph.getVersion();
+			doorEdgesNumDoors = doors.size();
+		}
+		return doorEdges;
+	}
+	
+	/**
+	 * sets the edges through each door as its state calls for: as they were
+	 * saved while it is open, and dearer, or blocked if ClosedDoorsBlockPaths
+	 * is set, while it isn't. The path costs are repaired one edge at a time
+	 * rather than worked out again. The path hierarchy is left as it is,
+	 * since paths on maps with doors are found by D* Lite instead. No path
+	 * search may run while this is called.
+	 */
+	public void updateDoorEdges() {
+		doorEdgesVersion = getDoorStateVersion();
+		
+		// costs may only rise above those the landmarks were found for
+		double closedMultiplier = Math.max(1, RavenScript.getDouble("ClosedDoorCostMultiplier"));
+		boolean closedBlocks = RavenScript.getInt("ClosedDoorsBlockPaths") != 0;
+		
+		boolean changed = false;
+		for (RavenDoor door : doors) {
+			boolean open = door.isOpen();
+			for (NavGraphEdge edge : getDoorEdges()) {
+				if (edge.IDOfIntersectingEntity() != door.ID())
+					continue;
+				
+				// on an undirected graph the edge back changes with this one
+				NavGraphEdge back = null;
+				if (!navGraph.isDigraph()) {
+					if (edge.from() > edge.to())
+						continue;
+					if (navGraph.isEdgePresent(edge.to(), edge.from())) {
+						back = navGraph.getEdge(edge.to(), edge.from());
+					}
+				}
+				
+				double oldCost = edge.cost();
+				edge.setBlocked(!open && closedBlocks);
+				edge.setCostMultiplier(open ? 1 : closedMultiplier);
+				if (back != null) {
+					back.setBlocked(edge.isBlocked());
+					back.setCostMultiplier(edge.costMultiplier());
+				}
+				
+				if (edge.cost() != oldCost && pathCosts != null) {
+					pathCosts.edgeCostChanged(navGraph, edge.from(), edge.to(), oldCost);
+					changed = true;
+				}
+			}
+		}
+		
+		if (changed && itemDistanceFields != null) {
+			itemDistanceFields.clear();
+		}
+	}
+	
 	public List<Vector2D> getSpawnPoints() {
 		return spawnPoints;
 	}
 	
+	/** the cost of the shortest path between each pair of graph nodes */
+	public PathCostProvider getPathCosts() {
+		return pathCosts;
+	}
+	
+	/** the cost of the shortest path between each pair of graph nodes, all
+	 * worked out, as saved with a map. Costs that are worked out as needed
+	 * are all worked out now */
+	public PathCostTable getPathCostTable() {
+		if (pathCosts instanceof PathCostTable && pathCosts.numNodes() == navGraph.numNodes()) {
+			return (PathCostTable)pathCosts;
+		}
+		return navGraph.createAllPairsCostsTable(RavenScript.getInt("PathCostTableSinglePrecision") != 0);
+	}
+	
+	/** the heuristic path searches on this map's graph should use */
+	public Heuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> getPathHeuristic() {
+		if (pathHeuristic == null) {
+			pathHeuristic = new EuclideanHeuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>>();
+		}
+		return pathHeuristic;
+	}
+	
+	/** the abstract graph for hierarchical path searches, rebuilt first if
+	 * the nav graph has changed. null if they are turned off */
+	public PathHierarchy getPathHierarchy() {
+		if (pathHierarchy != null && pathHierarchy.getVersion() != navGraph.getVersion()) {
+			pathHierarchy = new PathHierarchy(navGraph, sizeX, sizeY, RavenScript.getDouble("PathClusterSize"));
+		}
+		return pathHierarchy;
+	}
+	
+	/** the nodes nearest each cell of the map, rebuilt first if the nav
+	 * graph has changed. null if the lookup is turned off. Bots may ask
+	 * for it concurrently while they sense */
+	public synchronized ClosestNodeGrid getClosestNodeGrid() {
+		if (closestNodeGrid != null && closestNodeGrid.getVersion() != navGraph.getVersion()) {
+			closestNodeGrid = createClosestNodeGrid();
+		}
+		return closestNodeGrid;
+	}
+	
+	/** the distances to each type of giver, made again first if the nav
+	 * graph has changed. null if they are turned off. Bots may ask for
+	 * them concurrently while they sense */
+	public synchronized ItemDistanceFields getItemDistanceFields() {
+		if (itemDistanceFields != null && itemDistanceFields.getVersion() != navGraph.getVersion()) {
+			itemDistanceFields = new ItemDistanceFields(navGraph, getTriggers());
+		}
+		return itemDistanceFields;
+	}
+	
+	private ClosestNodeGrid createClosestNodeGrid() {
+		return new ClosestNodeGrid(navGraph, getWallGrid(), sizeX, sizeY,
+				RavenScript.getDouble("ClosestNodeCellSize"), cellSpaceNeighborhoodRange,
+				RavenScript.getDouble("Bot_Scale"), RavenScript.getInt("ClosestNodeCandidates"));
+	}
+	
 	public CellSpacePartition<NavGraphNode<Trigger<IRavenBot>>> getCellSpace() {
 		return spacePartition;
 	}
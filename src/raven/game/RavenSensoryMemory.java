@@ -1,72 +1,117 @@
 package raven.game;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import raven.game.interfaces.IRavenBot;
 import raven.math.Vector2D;
 import raven.ui.GameCanvas;
 
 public class RavenSensoryMemory {
-	protected class MemoryRecord {
-		/** records the time the opponent was last sensed (seen or heard).
-		 * This is used to determine if a bot can 'remember' this record or
-		 * not. (if System.nanoTime() - timeLastSensed is greater than the
-		 * bot's memory span, the data in this record is made unavailable
-		 * to clients) */
-		public double timeSinceLastSensed;
-		/** it can be useful to know how long an opponent has been visible.
-		 * This variable is tagged with the current time whenever an opponent 
-		 * first becomes visible. It's then a simple matter to calculate how
-		 * long the opponent has been in view
-		 * (currentTime - timeBecameVisible) */
-		public double timeSinceBecameVisible;
-		/** it can be useful to know the last time an opponent was seen */
-		public double timeSinceLastVisible;
-		/** a vector marking the position where the opponent was last sensed.
-		 * This can be used to help hunt down an opponent if it goes out of
-		 * view */
-		public Vector2D lastSensedPosition;
-		/** true if opponent is within the field of view of the owner */
-		public boolean withinFOV;
-		/** set to true if there is no obstruction between the opponent and
-		 * the owner, permitting a shot. */
-		public boolean shootable;
-
-		public MemoryRecord() {
-			timeSinceLastSensed = timeSinceBecameVisible = -999;
-			timeSinceLastVisible = 0;
-			withinFOV = shootable = false;			
-		}
-	}
+	/* The memory of each opponent is spread over the arrays below, indexed
+	 * by the opponent's slot. opponents[slot] is null if there is no memory
+	 * of that slot. */
+
+	/** the opponent each slot remembers */
+	private IRavenBot[] opponents = new IRavenBot[0];
+
+	/** records the time the opponent was last sensed (seen or heard). This
+	 * is used to determine if a bot can 'remember' this record or not. (if
+	 * the time since it was sensed is greater than the bot's memory span,
+	 * the data in this record is made unavailable to clients) */
+	private double[] timeSinceLastSensed = new double[0];
+
+	/** it can be useful to know how long an opponent has been visible. This
+	 * is reset whenever an opponent first becomes visible. It's then a
+	 * simple matter to tell how long the opponent has been in view */
+	private double[] timeSinceBecameVisible = new double[0];
+
+	/** it can be useful to know the last time an opponent was seen */
+	private double[] timeSinceLastVisible = new double[0];
+
+	/** the position where the opponent was last sensed. This can be used to
+	 * help hunt down an opponent if it goes out of view */
+	private double[] lastSensedX = new double[0];
+	private double[] lastSensedY = new double[0];
+
+	/** true once the opponent's position has been recorded */
+	private boolean[] positionKnown = new boolean[0];
+
+	/** true if opponent is within the field of view of the owner */
+	private boolean[] withinFOV = new boolean[0];
+
+	/** set to true if there is no obstruction between the opponent and the
+	 * owner, permitting a shot. */
+	private boolean[] shootable = new boolean[0];
 
 	/** the owner of this instance */
 	private RavenBot owner;
 
-	/** this container is used to simulate memory of sensory events. A
-	 * MemoryRecord is created for each opponent in the environment. Each
-	 * record is updated whenever the opponent is encountered. (when it is
-	 * seen or heard) */
-	private Map<IRavenBot, MemoryRecord> memoryMap;
-
 	/** a bot has a memory span equivalent to this value. When a bot requests
 	 * a list of all recently sensed opponents this value is used to determine
 	 * if the bot is able to remember an opponent or not. */
 	private double memorySpan;
 
-	private void makeNewRecordIfNotAlreadyPresent(IRavenBot bot) {
-		if (!memoryMap.containsKey(bot)) {
-			memoryMap.put(bot, new MemoryRecord());
+	/** makes room for slots up to numSlots */
+	private void ensureCapacity(int numSlots) {
+		if (numSlots <= opponents.length)
+			return;
+
+		int capacity = Math.max(numSlots, opponents.length * 2);
+		timeSinceLastSensed = Arrays.copyOf(timeSinceLastSensed, capacity);
+		timeSinceBecameVisible = Arrays.copyOf(timeSinceBecameVisible, capacity);
+		timeSinceLastVisible = Arrays.copyOf(timeSinceLastVisible, capacity);
+		lastSensedX = Arrays.copyOf(lastSensedX, capacity);
+		lastSensedY = Arrays.copyOf(lastSensedY, capacity);
+		positionKnown = Arrays.copyOf(positionKnown, capacity);
+		withinFOV = Arrays.copyOf(withinFOV, capacity);
+		shootable = Arrays.copyOf(shootable, capacity);
+		// grown last, so a reader going by its length never overruns the rest
+		opponents = Arrays.copyOf(opponents, capacity);
+	}
+
+	/** returns the bot's slot, starting a fresh memory of it if the slot
+	 * does not already remember it. Returns -1 for a bot not in the game */
+	private int makeNewRecordIfNotAlreadyPresent(IRavenBot bot) {
+		int slot = bot.slot();
+		if (slot < 0)
+			return -1;
+
+		ensureCapacity(slot + 1);
+
+		if (opponents[slot] != bot) {
+			opponents[slot] = bot;
+			timeSinceLastSensed[slot] = timeSinceBecameVisible[slot] = -999;
+			timeSinceLastVisible[slot] = 0;
+			positionKnown[slot] = withinFOV[slot] = shootable[slot] = false;
 		}
+
+		return slot;
+	}
+
+	/** the slot remembering the opponent, or -1 if it is not remembered */
+	private int slotOf(IRavenBot opponent) {
+		if (opponent == null)
+			return -1;
+
+		int slot = opponent.slot();
+		if (slot < 0 || slot >= opponents.length || opponents[slot] != opponent)
+			return -1;
+
+		return slot;
+	}
+
+	private void recordPosition(int slot, Vector2D pos) {
+		lastSensedX[slot] = pos.x;
+		lastSensedY[slot] = pos.y;
+		positionKnown[slot] = true;
 	}
 
 	public RavenSensoryMemory(RavenBot owner, double memorySpan) {
 		this.owner = owner;
 		// Store memory length in seconds
 		this.memorySpan = memorySpan;
-		this.memoryMap = new HashMap<IRavenBot, MemoryRecord>();
 	}
 
 	/**
@@ -76,19 +121,19 @@ public class RavenSensoryMemory {
 	 */
 	public void updateWithSoundSource(IRavenBot noiseMaker) {
 		if (!owner.equals(noiseMaker)) {
-			makeNewRecordIfNotAlreadyPresent(noiseMaker);
-
-			MemoryRecord info = memoryMap.get(noiseMaker);
+			int slot = makeNewRecordIfNotAlreadyPresent(noiseMaker);
+			if (slot < 0)
+				return;
 
 			if (owner.getWorld().isLOSOkay(owner.pos(), noiseMaker.pos())) {
-				info.shootable = true;
+				shootable[slot] = true;
 
-				info.lastSensedPosition = noiseMaker.pos();
+				recordPosition(slot, noiseMaker.pos());
 			} else {
-				info.shootable = false;
+				shootable[slot] = false;
 			}
 
-			info.timeSinceLastSensed = 0;
+			timeSinceLastSensed[slot] = 0;
 		}
 	}
 
@@ -97,7 +142,10 @@ public class RavenSensoryMemory {
 	 * @param removedBot the bot to forget about
 	 */
 	public void removeBotFromMemory(IRavenBot removedBot) {
-		memoryMap.remove(removedBot);
+		int slot = slotOf(removedBot);
+		if (slot >= 0) {
+			opponents[slot] = null;
+		}
 	}
 
 	/** this method iterates through all the opponents in the game world and
@@ -107,38 +155,40 @@ public class RavenSensoryMemory {
 		// this class
 		List<IRavenBot> bots = owner.getWorld().getBots();
 
-		for (IRavenBot bot : bots) {
+		for (int i = 0; i < bots.size(); i++) {
+			IRavenBot bot = bots.get(i);
+
 			// make sure the bot being examined is not this bot
 			if (!bot.equals(owner)) {
-				// make sure it is part of the memory map
-				makeNewRecordIfNotAlreadyPresent(bot);
-
-				// get a reference to this bot's data
-				MemoryRecord info = memoryMap.get(bot);
+				// make sure it is part of the memory
+				int slot = makeNewRecordIfNotAlreadyPresent(bot);
+				if (slot < 0)
+					continue;
 
-				// test if there is LOS between bots
-				if (owner.getWorld().isLOSOkay(owner.pos(), bot.pos())) {
-					info.shootable = true;
+				// test if there is LOS between bots. The answer is shared by
+				// every bot this step, so each pair is only cast once
+				if (owner.getWorld().isLOSOkay(owner, bot)) {
+					shootable[slot] = true;
 
 					// test if the bot is within FOV
 					if (Vector2D.isSecondInFOVOfFirst(owner.pos(), owner.facing(), bot.pos(), owner.fieldOfView())) {
-						info.timeSinceLastSensed = 0;
-						info.lastSensedPosition = new Vector2D(bot.pos());
-						info.timeSinceLastVisible = 0;
-						info.timeSinceBecameVisible += delta;
-
-						if (info.withinFOV == false) {
-							info.withinFOV = true;
-							info.timeSinceBecameVisible = delta;
+						timeSinceLastSensed[slot] = 0;
+						recordPosition(slot, bot.pos());
+						timeSinceLastVisible[slot] = 0;
+						timeSinceBecameVisible[slot] += delta;
+
+						if (withinFOV[slot] == false) {
+							withinFOV[slot] = true;
+							timeSinceBecameVisible[slot] = delta;
 						}
 					} else {
-						info.withinFOV = false;
-						info.timeSinceLastVisible += delta;
-						info.timeSinceLastSensed += delta;
+						withinFOV[slot] = false;
+						timeSinceLastVisible[slot] += delta;
+						timeSinceLastSensed[slot] += delta;
 					}
 				} else {
-					info.shootable = false;
-					info.withinFOV = false;
+					shootable[slot] = false;
+					withinFOV[slot] = false;
 				}
 			}
 		}
@@ -147,56 +197,86 @@ public class RavenSensoryMemory {
 	// Queries
 
 	public boolean isOpponentShootable(IRavenBot opponent) {
-		MemoryRecord info = memoryMap.get(opponent);
-		return (info == null) ? false : info.shootable;
+		int slot = slotOf(opponent);
+		return (slot < 0) ? false : shootable[slot];
 	}
 
 	public boolean isOpponentWithinFOV(IRavenBot currentTarget) {
-		MemoryRecord info = memoryMap.get(currentTarget);
-		return (info == null) ? false : info.withinFOV;
+		int slot = slotOf(currentTarget);
+		return (slot < 0) ? false : withinFOV[slot];
 	}
 
 	public Vector2D getLastRecordedPositionOfOpponent(IRavenBot opponent) {
-		MemoryRecord info = memoryMap.get(opponent);
-		if (info == null) {
+		Vector2D pos = new Vector2D();
+		return getLastRecordedPositionOfOpponent(opponent, pos) ? pos : null;
+	}
+
+	/** copies the position the opponent was last sensed at into pos,
+	 * without making a new vector.
+	 * @return false, leaving pos as it was, if the position isn't known */
+	public boolean getLastRecordedPositionOfOpponent(IRavenBot opponent, Vector2D pos) {
+		int slot = slotOf(opponent);
+		if (slot < 0) {
 			throw new RuntimeException("RavenSensoryMemory#getLastRecordedPositionOfOpponent: Attempting to get position of unrecorded bot");
-		} else {
-			return info.lastSensedPosition;
+		} else if (!positionKnown[slot]) {
+			return false;
 		}
+
+		pos.set(lastSensedX[slot], lastSensedY[slot]);
+		return true;
 	}
 
 	public double getTimeOpponentHasBeenVisible(IRavenBot opponent) {
-		MemoryRecord info = memoryMap.get(opponent);
-		return (info == null) ? 0 : info.timeSinceBecameVisible;		
+		int slot = slotOf(opponent);
+		return (slot < 0) ? 0 : timeSinceBecameVisible[slot];
 	}
 
 	public double getTimeSinceLastSensed(IRavenBot opponent) {
-		MemoryRecord info = memoryMap.get(opponent);
-		return (info == null) ? 0 : info.timeSinceLastSensed;		
+		int slot = slotOf(opponent);
+		return (slot < 0) ? 0 : timeSinceLastSensed[slot];
 	}
 
 	public double getTimeOpponentHasBeenOutOfView(IRavenBot opponent) {
-		MemoryRecord info = memoryMap.get(opponent);
-		return (info == null) ? Double.MAX_VALUE : info.timeSinceLastVisible;
+		int slot = slotOf(opponent);
+		return (slot < 0) ? Double.MAX_VALUE : timeSinceLastVisible[slot];
+	}
+
+	/** the number of slots to iterate over with getOpponentInSlot and
+	 * isRecentlySensed. Some may be empty */
+	public int numSlots() { return opponents.length; }
 
+	/** the opponent remembered in the slot, or null */
+	public IRavenBot getOpponentInSlot(int slot) { return opponents[slot]; }
+
+	/** true if the slot remembers an opponent sensed within the memory span */
+	public boolean isRecentlySensed(int slot) {
+		return opponents[slot] != null && timeSinceLastSensed[slot] < memorySpan;
 	}
 
-	public List<IRavenBot> getListOfRecentlySensedOpponents() {
-		List<IRavenBot> opponents = new ArrayList<IRavenBot>();
+	/** puts the opponents sensed within the memory span in result, after
+	 * clearing it */
+	public void getRecentlySensedOpponents(List<IRavenBot> result) {
+		result.clear();
 
-		for (IRavenBot bot : memoryMap.keySet()) {
-			if (memoryMap.get(bot).timeSinceLastSensed < memorySpan) {
-				opponents.add(bot);
+		for (int slot = 0; slot < opponents.length; slot++) {
+			if (isRecentlySensed(slot)) {
+				result.add(opponents[slot]);
 			}
 		}
+	}
 
+	public List<IRavenBot> getListOfRecentlySensedOpponents() {
+		List<IRavenBot> opponents = new ArrayList<IRavenBot>();
+		getRecentlySensedOpponents(opponents);
 		return opponents;
 	}
 
 	public void renderBoxesAroundRecentlySensed() {
-		List<IRavenBot> opponents = getListOfRecentlySensedOpponents();
+		for (int slot = 0; slot < opponents.length; slot++) {
+			if (!isRecentlySensed(slot))
+				continue;
 
-		for (IRavenBot bot : opponents) {
+			IRavenBot bot = opponents[slot];
 			Vector2D p = bot.pos();
 			double b = bot.getBRadius();
 
@@ -1,5 +1,6 @@
 package raven.game;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.Vector;
@@ -69,6 +70,18 @@ public class RavenSteering {
 	/** a vertex buffer to contain the feelers rqd for wall avoidance */  
 	private Vector<Vector2D> feelers;
 
+	/** the bots near this one, found for the separation behavior */
+	private List<IRavenBot> neighbors = new ArrayList<IRavenBot>();
+
+	/** the force of the behavior being summed. Each behavior works in this
+	 * and the scratch vectors below rather than creating new vectors */
+	private Vector2D behaviorForce = new Vector2D();
+	private Vector2D scratch = new Vector2D();
+	private Vector2D closestPoint = new Vector2D();
+	private DistanceHolder distToThisIP = new DistanceHolder();
+
+	private Random random = new Random();
+
 	/** the length of the 'feeler/s' used in wall detection */
 	private double wallDetectionFeelerLength;
 
@@ -153,14 +166,13 @@ public class RavenSteering {
 		//add together. Otherwise add as much of the ForceToAdd vector is
 		//possible without going over the max.
 		if (magnitudeToAdd < magnitudeRemaining) {
-			runningTot.setValue(runningTot.add(forceToAdd));
+			runningTot.addLocal(forceToAdd);
 		} else {
 			magnitudeToAdd = magnitudeRemaining;
 
 			//add it to the steering force
 			forceToAdd.normalize();
-			// Dirty hack due to the way it was ported.
-			runningTot.setValue(runningTot.add(forceToAdd.mul(magnitudeToAdd))); 
+			runningTot.addScaledLocal(forceToAdd, magnitudeToAdd);
 		}
 
 		return true;
@@ -175,21 +187,22 @@ public class RavenSteering {
 	 */
 
 
-	/** this behavior moves the agent towards a target position */
-	private Vector2D seek(final Vector2D target) {
+	/** this behavior moves the agent towards a target position. The force
+	 * is put in out, which may be target */
+	private Vector2D seek(final Vector2D target, Vector2D out) {
 
-		Vector2D desiredVelocity = target.sub(ravenBot.pos());
+		Vector2D desiredVelocity = out.set(target).subLocal(ravenBot.pos());
 		desiredVelocity.normalize();
-		desiredVelocity = desiredVelocity.mul(ravenBot.maxForce());
+		desiredVelocity.scaleLocal(ravenBot.maxForce());
 
-		return (desiredVelocity.sub(ravenBot.velocity()));
+		return (desiredVelocity.subLocal(ravenBot.velocity()));
 
 	}
 
 	/** this behavior is similar to seek but it attempts to arrive at the
 	 * target with a zero velocity */
-	private Vector2D arrive(final Vector2D target, final Deceleration deceleration){
-		Vector2D toTarget = target.sub(ravenBot.pos());
+	private Vector2D arrive(final Vector2D target, final Deceleration deceleration, Vector2D out){
+		Vector2D toTarget = out.set(target).subLocal(ravenBot.pos());
 
 		//calculate the distance to the target
 		double dist = toTarget.length();
@@ -203,7 +216,7 @@ public class RavenSteering {
 			//calculate the speed required to reach the target given the desired
 			//deceleration
 			//   double speed =  dist / (deceleration* decelerationTweaker);     
-			double speed = target.distance(ravenBot.pos())/ (Double.valueOf(deceleration.getValue())*DecelerationTweaker);
+			double speed = target.distance(ravenBot.pos())/ (deceleration.getValue()*DecelerationTweaker);
 			//make sure the velocity does not exceed the max
 			speed = Math.min(speed, ravenBot.maxSpeed());
 
@@ -211,72 +224,72 @@ public class RavenSteering {
 			//from here proceed just like Seek except we don't need to normalize 
 			//the ToTarget vector because we have already gone to the trouble
 			//of calculating its length: dist. 
-			Vector2D DesiredVelocity =  toTarget.mul(speed / dist);
+			Vector2D DesiredVelocity =  toTarget.scaleLocal(speed / dist);
 
-			return (DesiredVelocity.sub(ravenBot.velocity()));
+			return (DesiredVelocity.subLocal(ravenBot.velocity()));
 		}
 
-		return new Vector2D(0,0);
+		return out.set(0, 0);
 
 	}
 
 	/** this behavior makes the agent wander about randomly */
-	private Vector2D wander() {
+	private Vector2D wander(Vector2D out) {
 
 		//first, add a small random vector to the target's position
-		wanderTarget = wanderTarget.add(new Vector2D( new Random().nextDouble()* wanderJitter,
-				new Random().nextDouble() * wanderJitter));
+		wanderTarget.x += random.nextDouble() * wanderJitter;
+		wanderTarget.y += random.nextDouble() * wanderJitter;
 
 		//reproject this new vector back on to a unit circle
 		wanderTarget.normalize();
 
 		//increase the length of the vector to the same as the radius
 		//of the wander circle
-		wanderTarget = wanderTarget.mul(wanderRadius);
+		wanderTarget.scaleLocal(wanderRadius);
 
 		//move the target into a position WanderDist in front of the agent
-		Vector2D target = wanderTarget.add(new Vector2D(wanderDistance, 0));
+		Vector2D target = out.set(wanderTarget.x + wanderDistance, wanderTarget.y);
 
 		//project the target into world space
-		Vector2D Target = Transformations.pointToLocalSpace(target, ravenBot.heading(), ravenBot.side(), ravenBot.pos());
+		Vector2D Target = Transformations.pointToLocalSpace(target, ravenBot.heading(), ravenBot.side(), ravenBot.pos(), out);
 
 		//and steer towards it
-		return Target.sub(ravenBot.pos()); 
+		return Target.subLocal(ravenBot.pos()); 
 
 	}
 	
 	
-	private Vector2D pursuit(RavenBot target) {
+	private Vector2D pursuit(RavenBot target, Vector2D out) {
 
-		Vector2D toTarget = target.pos().sub(ravenBot.pos());
+		Vector2D toTarget = out.set(target.pos()).subLocal(ravenBot.pos());
 		
 		double RelativeHeading = ravenBot.heading().dot(target.heading());
 		
 		if ((toTarget.dot(ravenBot.heading()) > 0) && (RelativeHeading < -0.95))
 		{
-			return seek(target.pos());
+			return seek(target.pos(), out);
 		}
 		
 		double LookAheadTime = toTarget.length() / (ravenBot.maxSpeed() + target.speed());
 		
-		return seek(target.pos().add(target.velocity().mul(LookAheadTime)));
+		out.set(target.pos()).addScaledLocal(target.velocity(), LookAheadTime);
+		return seek(out, out);
 	}
 
 	/** this returns a steering force which will keep the agent away from any
 	 * walls it may encounter */
-	private Vector2D wallAvoidance(final List<Wall2D> walls) {
+	private Vector2D wallAvoidance(final List<Wall2D> walls, Vector2D out) {
 		//the feelers are contained in a std::vector, m_Feelers
 		createFeelers();
 
-		DistanceHolder DistToThisIP = new DistanceHolder();
-		DistToThisIP.dist = 0.0;
+		distToThisIP.dist = 0.0;
 		double DistToClosestIP = Double.MAX_VALUE;
 
 		//this will hold an index into the vector of walls
 		int ClosestWall = -1;
 
-		Vector2D SteeringForce = new Vector2D();
-		Vector2D ClosestPoint=new Vector2D();  //holds the closest intersection point
+		Vector2D SteeringForce = out.set(0, 0);
+		closestPoint.set(0, 0);  //holds the closest intersection point
 
 		//examine each feeler in turn
 		for (int flr=0; flr<feelers.size(); ++flr)
@@ -288,18 +301,18 @@ public class RavenSteering {
 						feelers.get(flr),
 						walls.get(w).from(),
 						walls.get(w).to(),
-						DistToThisIP);
+						distToThisIP);
 				
 				if(point != null)
 				{
 					//is this the closest found so far? If so keep a record
-							if (DistToThisIP.dist < DistToClosestIP)
+							if (distToThisIP.dist < DistToClosestIP)
 							{
-								DistToClosestIP = DistToThisIP.dist;
+								DistToClosestIP = distToThisIP.dist;
 
 								ClosestWall = w;
 
-								ClosestPoint = point;
+								closestPoint.set(point);
 							}
 				}
 			}//next wall
@@ -311,11 +324,11 @@ public class RavenSteering {
 			{
 				//calculate by what distance the projected position of the agent
 				//will overshoot the wall
-				Vector2D overShoot = feelers.get(flr).sub(ClosestPoint);
+				double overShoot = feelers.get(flr).distance(closestPoint);
 
 				//create a force in the direction of the wall normal, with a 
 				//magnitude of the overshoot
-				SteeringForce = walls.get(ClosestWall).normal().mul(overShoot.length());
+				SteeringForce.set(walls.get(ClosestWall).normal()).scaleLocal(overShoot);
 			}
 
 		}//next feeler
@@ -324,44 +337,49 @@ public class RavenSteering {
 
 	}
 	
+	/** points the three feelers ahead, left and right of the bot. The
+	 * feeler vectors are reused from one update to the next */
 	private void createFeelers(){
-		feelers.clear();
-
-		Vector2D temp;
+		if (feelers.size() != 3) {
+			feelers.clear();
+			feelers.add(new Vector2D());
+			feelers.add(new Vector2D());
+			feelers.add(new Vector2D());
+		}
 
 		//feeler pointing straight in front
-		temp = new Vector2D(ravenBot.pos());
-		temp = temp.add(ravenBot.heading().mul(wallDetectionFeelerLength).mul(ravenBot.speed()));
-		feelers.add(temp);
+		feelers.get(0).set(ravenBot.pos()).addScaledLocal(ravenBot.heading(), wallDetectionFeelerLength * ravenBot.speed());
 
 		//feeler to left
-		temp = new Vector2D(ravenBot.heading());
-		Transformations.Vec2DRotateAroundOrigin(temp, -Math.PI / 6);
-		feelers.add(ravenBot.pos().add(temp.mul(wallDetectionFeelerLength/2).mul(ravenBot.speed())));
+		scratch.set(ravenBot.heading());
+		Transformations.Vec2DRotateAroundOrigin(scratch, -Math.PI / 6);
+		feelers.get(1).set(ravenBot.pos()).addScaledLocal(scratch, wallDetectionFeelerLength/2 * ravenBot.speed());
 
 		//feeler to right
-		temp = new Vector2D(ravenBot.heading());
-		Transformations.Vec2DRotateAroundOrigin(temp, Math.PI / 6);
-		feelers.add(ravenBot.pos().add(temp.mul(wallDetectionFeelerLength/2).mul(ravenBot.speed()))); 
+		scratch.set(ravenBot.heading());
+		Transformations.Vec2DRotateAroundOrigin(scratch, Math.PI / 6);
+		feelers.get(2).set(ravenBot.pos()).addScaledLocal(scratch, wallDetectionFeelerLength/2 * ravenBot.speed());
 	}
 
 
-	private Vector2D separation(final List<IRavenBot> agents){
+	private Vector2D separation(final List<IRavenBot> agents, Vector2D out){
 
 		//iterate through all the neighbors and calculate the vector from them
-		Vector2D steeringForce = new Vector2D();
+		Vector2D steeringForce = out.set(0, 0);
 		for( IRavenBot agent : agents) {
 
 			//make sure this agent isn't included in the calculations and that
 			//the agent being examined is close enough. ***also make sure it doesn't
 			//include the evade target ***
-			if(ravenBot.isTagged() && agent != targetAgent1) {
-				Vector2D toAgent = ravenBot.pos().sub(agent.pos());
+			double range = viewDistance + agent.getBRadius();
+			if(agent != ravenBot && agent != targetAgent1 &&
+					ravenBot.pos().distanceSq(agent.pos()) < range * range) {
+				Vector2D toAgent = scratch.set(ravenBot.pos()).subLocal(agent.pos());
 				toAgent.normalize();
 
 				//scale the force inversely proportional to the agents distance  
 				//from its neighbor.
-				steeringForce = steeringForce.add(toAgent.div(toAgent.length()));
+				steeringForce.addScaledLocal(toAgent, 1.0 / toAgent.length());
 			}
 		}
 		
@@ -380,13 +398,11 @@ public class RavenSteering {
 	 * accumulated to that point */
 	private Vector2D calculatePrioritized(){
 
-		Vector2D force = new Vector2D();
-
 		if (On(BehaviorType.WALL_AVOIDANCE))
 		{
-			force = wallAvoidance(world.getMap().getWalls()).mul(weightWallAvoidance);
+			wallAvoidance(world.getMap().getWalls(), behaviorForce).scaleLocal(weightWallAvoidance);
 
-			if (!accumulateForce(steeringForce, force)) return steeringForce;
+			if (!accumulateForce(steeringForce, behaviorForce)) return steeringForce;
 		}
 
 		//these next three can be combined for flocking behavior (wander is
@@ -394,38 +410,39 @@ public class RavenSteering {
 		if (On(BehaviorType.PURSUIT))
 		{
 			// need to sub the ravenBot below with the pursuit target
-			force = pursuit(targetAgent1).mul(weightPursuit);
+			pursuit(targetAgent1, behaviorForce).scaleLocal(weightPursuit);
 
-			if (!accumulateForce(steeringForce, force)) return steeringForce;
+			if (!accumulateForce(steeringForce, behaviorForce)) return steeringForce;
 		}
 		
 		if (On(BehaviorType.SEPARATION))
 		{
-			// HAve to tag bots that are in danger of being hit
-			world.tagRavenBotsWithinViewRange(ravenBot, viewDistance);
-			force = separation(world.getBots()).mul(weightSeparation);
-			if (!accumulateForce(steeringForce, force)) return steeringForce;
+			// only the bots close enough to be in danger of being hit need
+			// to be considered
+			world.getBotsInRange(ravenBot.pos(), viewDistance + world.getMaxBotRadius(), neighbors);
+			separation(neighbors, behaviorForce).scaleLocal(weightSeparation);
+			if (!accumulateForce(steeringForce, behaviorForce)) return steeringForce;
 		}
 
 		if (On(BehaviorType.SEEK))
 		{
-			force = seek(target).mul(weightSeek);
+			seek(target, behaviorForce).scaleLocal(weightSeek);
 
-			if (!accumulateForce(steeringForce, force)) return steeringForce;
+			if (!accumulateForce(steeringForce, behaviorForce)) return steeringForce;
 		}
 
 		if (On(BehaviorType.ARRIVE))
 		{
-			force = arrive(target, deceleration).mul(weightArrive);
+			arrive(target, deceleration, behaviorForce).scaleLocal(weightArrive);
 
-			if (!accumulateForce(steeringForce, force)) return steeringForce;
+			if (!accumulateForce(steeringForce, behaviorForce)) return steeringForce;
 		}
 
 		if (On(BehaviorType.WANDER))
 		{
-			force = wander().mul(weightWander);
+			wander(behaviorForce).scaleLocal(weightWander);
 
-			if (!accumulateForce(steeringForce, force)) return steeringForce;
+			if (!accumulateForce(steeringForce, behaviorForce)) return steeringForce;
 		}
 
 		return steeringForce;
@@ -1,8 +1,5 @@
 package raven.game;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import raven.game.interfaces.IRavenBot;
 import raven.game.interfaces.IRavenTargetingSystem;
 import raven.math.Vector2D;
@@ -21,11 +18,19 @@ public class RavenTargetingSystem implements IRavenTargetingSystem{
 		double closestDistSoFar = Double.MAX_VALUE;
 		currentTarget = null;
 		
-		// grab a list of all the opponents the owner can sense
-		List<IRavenBot> sensedBots = owner.getSensoryMem().getListOfRecentlySensedOpponents();
-		List<IRavenBot> validTargets = removeTeammatesFromSensed(sensedBots, owner.getTeam().ID());
+		// look through all the opponents the owner can sense, skipping its
+		// teammates
+		RavenSensoryMemory memory = owner.getSensoryMem();
+		int selfTeam = owner.getTeam().ID();
 		
-		for (IRavenBot opponent : validTargets) {
+		for (int slot = 0; slot < memory.numSlots(); slot++) {
+			if (!memory.isRecentlySensed(slot))
+				continue;
+			
+			IRavenBot opponent = memory.getOpponentInSlot(slot);
+			if (opponent.getTeam().ID() == selfTeam)
+				continue;
+			
 			if (opponent.isAlive() && !opponent.equals(owner)) {
 		//	if ((opponent.isAlive() && !opponent.equals(owner)) && opponent.getTeam().ID() != owner.getTeam().ID()) {
 				double dist = opponent.pos().distanceSq(owner.pos());
@@ -38,19 +43,6 @@ public class RavenTargetingSystem implements IRavenTargetingSystem{
 		}
 	}
 	
-	private List<IRavenBot> removeTeammatesFromSensed(List<IRavenBot> sensedBots, int selfTeam) {
-		// TODO Auto-generated method stub
-		List<IRavenBot> returnList = new ArrayList<IRavenBot>();
-		for(IRavenBot botToCheck : sensedBots)
-		{
-		if(botToCheck.getTeam().ID() != selfTeam){
-			returnList.add(botToCheck);
-		}
-		}
-		
-		return returnList;
-	}
-
 	public boolean isTargetPresent() {
 		return currentTarget != null;
 	}
@@ -71,6 +63,10 @@ public class RavenTargetingSystem implements IRavenTargetingSystem{
 		return owner.getSensoryMem().getLastRecordedPositionOfOpponent(currentTarget);
 	}
 	
+	public boolean getLastRecordedPosition(Vector2D pos) {
+		return owner.getSensoryMem().getLastRecordedPositionOfOpponent(currentTarget, pos);
+	}
+	
 	public double getTimeTargetHasBeenVisible() {
 		return owner.getSensoryMem().getTimeOpponentHasBeenVisible(currentTarget);
 	}
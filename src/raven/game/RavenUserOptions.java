@@ -22,7 +22,7 @@ public class RavenUserOptions {
 	  public static boolean showWeaponAppraisals;
 
 	  public static boolean smoothPathsQuick;
-	  public static boolean smoothPathsPrecise;
+	  public static boolean smoothPathsPrecise = true;
 
 	  public static boolean showBotIDs;
 
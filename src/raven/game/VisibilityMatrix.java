@@ -0,0 +1,145 @@
+package raven.game;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import raven.game.interfaces.IRavenBot;
+import raven.math.Vector2D;
+import raven.math.WallGrid;
+import raven.math.WallIntersectionTest;
+
+/**
+ * Remembers, for the duration of one sense phase, which pairs of bots have
+ * line of sight to each other. Line of sight is symmetric, so the ray
+ * between two bots is cast at most once however many times the pair is
+ * asked about. Pairs further apart than the vision range are never cast.
+ *
+ * Results are filled in as they are asked for, so may be read from several
+ * sense threads at once. Two threads asking about the same new pair at the
+ * same moment both cast the ray, and both store the same answer.
+ */
+public class VisibilityMatrix {
+	private static final byte UNKNOWN = 0;
+	private static final byte VISIBLE = 1;
+	private static final byte BLOCKED = 2;
+
+	/** the bots the matrix was started with, by IRavenBot.slot(). A bot is
+	 * only in the matrix if it is found at its own slot */
+	private IRavenBot[] members = new IRavenBot[0];
+
+	/** the bot positions the matrix was started with, by slot */
+	private Vector2D[] positions = new Vector2D[0];
+
+	/** the state of each pair, by row = slot of one bot, column = slot of
+	 * the other. Both halves are written */
+	private byte[] states = new byte[0];
+
+	private int numBots;
+
+	private WallGrid walls;
+
+	/** bots further apart than this can't see each other. 0 for no limit */
+	private double visionRangeSq;
+
+	/** true between begin and end */
+	private boolean active;
+
+	private AtomicLong lookups = new AtomicLong();
+	private AtomicLong raycasts = new AtomicLong();
+
+	/** @param visionRange bots further apart than this can't see each other.
+	 * 0 for no limit */
+	public VisibilityMatrix(double visionRange) {
+		visionRangeSq = visionRange * visionRange;
+	}
+
+	/**
+	 * starts a new sense phase. Every pair is unknown until asked about. The
+	 * bots must not move until end is called. Bots whose slot is outside
+	 * the list are left out, and have their rays cast every time.
+	 */
+	public void begin(List<IRavenBot> bots, WallGrid walls) {
+		numBots = bots.size();
+		this.walls = walls;
+
+		if (states.length < numBots * numBots) {
+			states = new byte[numBots * numBots];
+			positions = new Vector2D[numBots];
+			members = new IRavenBot[numBots];
+		} else {
+			Arrays.fill(states, 0, numBots * numBots, UNKNOWN);
+			Arrays.fill(members, null);
+		}
+
+		for (IRavenBot bot : bots) {
+			int slot = bot.slot();
+			if (slot >= 0 && slot < numBots) {
+				members[slot] = bot;
+				positions[slot] = bot.pos();
+			}
+		}
+
+		active = true;
+	}
+
+	/** ends the sense phase. Until the next begin every question is answered
+	 * by casting a ray */
+	public void end() {
+		active = false;
+	}
+
+	public boolean isActive() { return active; }
+
+	/**
+	 * true if nothing blocks the line between the two bots. Outside a sense
+	 * phase, or for a bot that joined after it began, this falls back to
+	 * casting the ray, and the vision range does not apply.
+	 */
+	public boolean isLOSOkay(IRavenBot first, IRavenBot second, WallGrid currentWalls) {
+		int a = active ? slotOf(first) : -1;
+		int b = active ? slotOf(second) : -1;
+
+		if (a < 0 || b < 0) {
+			return !WallIntersectionTest.doWallsObstructLineSegment(first.pos(), second.pos(), currentWalls);
+		}
+
+		lookups.incrementAndGet();
+
+		int index = a * numBots + b;
+		byte state = states[index];
+
+		if (state == UNKNOWN) {
+			Vector2D from = positions[a];
+			Vector2D to = positions[b];
+
+			if (visionRangeSq > 0 && from.distanceSq(to) > visionRangeSq) {
+				state = BLOCKED;
+			} else {
+				raycasts.incrementAndGet();
+				state = WallIntersectionTest.doWallsObstructLineSegment(from, to, walls) ? BLOCKED : VISIBLE;
+			}
+
+			states[index] = state;
+			states[b * numBots + a] = state;
+		}
+
+		return state == VISIBLE;
+	}
+
+	/** the bot's slot in the matrix, or -1 if it isn't in it */
+	private int slotOf(IRavenBot bot) {
+		int slot = bot.slot();
+		return slot >= 0 && slot < numBots && members[slot] == bot ? slot : -1;
+	}
+
+	/** the number of questions answered from the matrix */
+	public long getLookups() { return lookups.get(); }
+
+	/** the number of rays actually cast to answer them */
+	public long getRaycasts() { return raycasts.get(); }
+
+	/** the rays that would have been cast without the matrix, less those that
+	 * were */
+	public long getRaycastsSaved() { return lookups.get() - raycasts.get(); }
+}
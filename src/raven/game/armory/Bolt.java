@@ -41,13 +41,15 @@ public class Bolt extends RavenProjectile {
 	{
 		if(!HasImpacted())
 		{
-			velocity = heading().mul(maxSpeed());
+			previousPos.set(position);
+
+			velocity.set(heading()).scaleLocal(maxSpeed());
 
 			//make sure vehicle does not exceed maximum velocity
 			velocity.truncate(maxSpeed());
 
 			//update the position
-			position = position.add(velocity);
+			position.addLocal(velocity);
 
 			//if the projectile has reached the target position or it hits an entity
 			//or wall it should explode/inflict damage/whatever and then mark itself
@@ -56,7 +58,7 @@ public class Bolt extends RavenProjectile {
 			//test to see if the line segment connecting the bolt's current position
 			//and previous position intersects with any bots.
 
-			IRavenBot hit = GetClosestIntersectingBot(position.sub(velocity), position);
+			IRavenBot hit = GetClosestIntersectingBot(previousPos, position);
 			if (hit != null) {
 				isDead = true;
 				isImpacted = true;
@@ -67,7 +69,7 @@ public class Bolt extends RavenProjectile {
 			}
 
 			//test for impact with a wall
-			if (Geometry.FindClosestPointOfIntersectionWithWalls(position.sub(velocity), position, impactPoint, world.getMap().getWalls()) != null) {
+			if (Geometry.FindClosestPointOfIntersectionWithWalls(previousPos, position, impactPoint, world.getMap().getWallGrid()) != null) {
 				isDead = true;
 				isImpacted = true;
 
@@ -55,23 +55,7 @@ public class Pellet extends RavenProjectile {
 	{
 		if (!HasImpacted())
 		{
-			//calculate the steering force
-			Vector2D DesiredVelocity = vTarget.sub(position);
-			DesiredVelocity.normalize();
-			DesiredVelocity = DesiredVelocity.mul(maxSpeed());	
-
-			Vector2D sf = DesiredVelocity.sub(this.velocity());
-
-			//update the position
-			Vector2D accel = sf.div(this.mass());
-
-			this.setVelocity(this.velocity().add(accel));
-
-			//make sure vehicle does not exceed maximum velocity
-			this.velocity().truncate(this.maxSpeed());
-
-			//update the position
-			this.setPos(this.pos().add(this.velocity()));
+			seekTarget();
 
 			TestForImpact();
 		}
@@ -92,11 +76,11 @@ public class Pellet extends RavenProjectile {
 		Double distToClosestImpact = Geometry.FindClosestPointOfIntersectionWithWalls(origin,
 				position,
 				impactPoint,
-				world.getMap().getWalls());
+				world.getMap().getWallGrid());
 
 		//test to see if the ray between the current position of the shell and 
 		//the start position intersects with any bots.
-		IRavenBot hit = GetClosestIntersectingBot(pos().sub(velocity), pos());
+		IRavenBot hit = GetClosestIntersectingBot(previousPos, pos());
 
 		//if no bots hit just return;
 		if (hit == null)
@@ -23,6 +23,15 @@ public abstract class RavenProjectile extends MovingEntity {
 	protected int damageInflicted;
 	protected double timeSinceCreation;
 	
+	/** the bots near this projectile, reused between queries */
+	protected List<IRavenBot> nearbyBots = new ArrayList<IRavenBot>();
+	
+	/** where the projectile was before its last move */
+	protected Vector2D previousPos;
+	
+	/** the steering force, worked out in place each update */
+	private Vector2D steeringForce = new Vector2D();
+	
 	public RavenProjectile(Vector2D target,
 						RavenGame world,
 						int shooterID,
@@ -34,7 +43,9 @@ public abstract class RavenProjectile extends MovingEntity {
 						double mass,
 						double maxForce)
 	{
-		super(origin, scale, new Vector2D(), maxSpeed, heading, mass, new Vector2D(scale, scale), 0, maxForce);
+		// the projectile's position is moved in place, so it gets its own copy
+		// of the origin (usually the shooter's position)
+		super(new Vector2D(origin), scale, new Vector2D(), maxSpeed, heading, mass, new Vector2D(scale, scale), 0, maxForce);
 		this.vTarget = target;
 		this.isDead = false;
 		this.isImpacted = false;
@@ -44,13 +55,46 @@ public abstract class RavenProjectile extends MovingEntity {
 		this.origin = origin;
 		this.shooterID = shooterID;
 		this.timeSinceCreation = 0.0;
+		this.previousPos = new Vector2D(origin);
+	}
+
+	/** steers the projectile straight for its target at full speed, and
+	 * moves it one step. Its position and velocity are changed in place */
+	protected void seekTarget()
+	{
+		previousPos.set(position);
+
+		//calculate the steering force: from the current velocity to heading
+		//straight for the target
+		steeringForce.set(vTarget).subLocal(position);
+		steeringForce.normalize();
+		steeringForce.scaleLocal(maxSpeed).subLocal(velocity);
+
+		//update the velocity with the acceleration
+		velocity.addScaledLocal(steeringForce, 1.0 / mass);
+
+		//make sure the projectile does not exceed maximum velocity
+		velocity.truncate(maxSpeed);
+
+		//update the position
+		position.addLocal(velocity);
+	}
+
+	/** finds the bots that might touch the segment from-to: those within
+	 * a bot radius of the circle around the segment */
+	protected List<IRavenBot> getBotsNearSegment(Vector2D from, Vector2D to)
+	{
+		Vector2D mid = new Vector2D((from.x + to.x) / 2, (from.y + to.y) / 2);
+		double range = from.distance(to) / 2 + world.getMaxBotRadius();
+		world.getBotsInRange(mid, range, nearbyBots);
+		return nearbyBots;
 	}
 
 	protected IRavenBot GetClosestIntersectingBot(Vector2D from, Vector2D to)
 	{
 		IRavenBot closest = null;
 		double closestDistance = Double.MAX_VALUE;
-		for(IRavenBot bot : world.getBots())
+		for(IRavenBot bot : getBotsNearSegment(from, to))
 		{
 			// Make sure to not process this projectile's owner.
 			if(bot.ID() != this.shooterID)
@@ -74,7 +118,7 @@ public abstract class RavenProjectile extends MovingEntity {
 	protected List<IRavenBot> GetListOfIntersectingBots(Vector2D from, Vector2D to)
 	{
 		ArrayList<IRavenBot> bots = new ArrayList<IRavenBot>();
-		for(IRavenBot bot : world.getBots())
+		for(IRavenBot bot : getBotsNearSegment(from, to))
 		{
 			if(bot.ID() != shooterID)
 			{
@@ -31,7 +31,10 @@ public class Rocket extends RavenProjectile {
 	}
 
 	private void InflictDamageOnBotsWithinBlastRadius(){
-		for (IRavenBot curBot : world.getBots())
+		// the test below compares a squared distance with the blast radius,
+		// so that is the range the bots must be found within
+		world.getBotsInRange(position, Math.sqrt(blastRadius + world.getMaxBotRadius()), nearbyBots);
+		for (IRavenBot curBot : nearbyBots)
 		{
 			if (position.distanceSq(curBot.pos()) < (blastRadius + curBot.getBRadius()))
 			{
@@ -56,7 +59,7 @@ public class Rocket extends RavenProjectile {
 
 		//test to see if the line segment connecting the rocket's current position
 		//and previous position intersects with any bots.
-		IRavenBot hit = GetClosestIntersectingBot(pos().sub(velocity), pos());
+		IRavenBot hit = GetClosestIntersectingBot(previousPos, pos());
 
 		//if hit
 		if (hit != null)
@@ -77,7 +80,7 @@ public class Rocket extends RavenProjectile {
 
 		//test for impact with a wall
 
-		Double dist = Geometry.FindClosestPointOfIntersectionWithWalls(position.sub(velocity), position, impactPoint, world.getMap().getWalls());
+		Double dist = Geometry.FindClosestPointOfIntersectionWithWalls(previousPos, position, impactPoint, world.getMap().getWallGrid());
 		if (dist != null)
 		{
 			isImpacted = true;
@@ -85,7 +88,7 @@ public class Rocket extends RavenProjectile {
 			//test for bots within the blast radius and inflict damage
 			InflictDamageOnBotsWithinBlastRadius();
 
-			position = impactPoint;
+			position.set(impactPoint);
 
 			return;
 		}
@@ -117,23 +120,7 @@ public class Rocket extends RavenProjectile {
 	public void update(double delta){
 		if (!isImpacted)
 		{
-			//calculate the steering force
-			Vector2D DesiredVelocity = vTarget.sub(position);
-			DesiredVelocity.normalize();
-			DesiredVelocity = DesiredVelocity.mul(maxSpeed());	
-
-			Vector2D sf = DesiredVelocity.sub(velocity);
-
-			//update the position
-			Vector2D accel = sf.div(mass);
-
-			velocity = velocity.add(accel);
-
-			//make sure the slug does not exceed maximum velocity
-			velocity.truncate(maxSpeed);
-
-			//update the position
-			position = position.add(velocity); 
+			seekTarget();
 
 			TestForImpact();  
 		}
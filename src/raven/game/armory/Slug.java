@@ -40,7 +40,7 @@ public class Slug extends RavenProjectile {
 		Geometry.FindClosestPointOfIntersectionWithWalls(origin,
 				position,
 				impactPoint,
-				world.getMap().getWalls());
+				world.getMap().getWallGrid());
 
 
 		//test to see if the ray between the current position of the slug and 
@@ -85,23 +85,7 @@ public class Slug extends RavenProjectile {
 	{
 		if (!HasImpacted())
 		{
-			//calculate the steering force
-			Vector2D DesiredVelocity = vTarget.sub(position);
-			DesiredVelocity.normalize();
-			DesiredVelocity = DesiredVelocity.mul(maxSpeed());	
-
-			Vector2D sf = DesiredVelocity.sub(velocity);
-
-			//update the position
-			Vector2D accel = sf.div(mass);
-
-			velocity = velocity.add(accel);
-
-			//make sure the slug does not exceed maximum velocity
-			velocity.truncate(maxSpeed);
-
-			//update the position
-			position = position.add(velocity); 
+			seekTarget();
 
 			TestForImpact();
 		}
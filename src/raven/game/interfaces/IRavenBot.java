@@ -9,9 +9,10 @@ import raven.game.RavenWeaponSystem;
 import raven.game.Team;
 import raven.game.messaging.Telegram;
 import raven.goals.GoalThink;
+import raven.math.Positioned;
 import raven.math.Vector2D;
 
-public interface IRavenBot {
+public interface IRavenBot extends Positioned {
 	
 	public Team getTeam();
 	public void setAsCaptain();
@@ -32,6 +33,7 @@ public interface IRavenBot {
 	public boolean rotateFacingTowardPosition(Vector2D clientCursorPosition,
 			double delta);
 	public boolean isPossessed();
+	public int slot();
 	public void exorcise();
 	public void fireWeapon(Vector2D p);
 	public GoalThink getBrain();
@@ -42,6 +44,8 @@ public interface IRavenBot {
 	public RavenSensoryMemory getSensoryMem();
 	public RavenSteering getSteering();
 	public void update(double delta);
+	public void sense(double delta);
+	public void act(double delta);
 	public void setSpawning();
 	public boolean isDead();
 	public boolean isSpawning();
@@ -27,6 +27,10 @@ public interface IRavenTargetingSystem {
 
 	Vector2D getLastRecordedPosition();
 
+	/** copies the target's last recorded position into pos. Returns false,
+	 * leaving pos as it was, if it isn't known */
+	boolean getLastRecordedPosition(Vector2D pos);
+
 	boolean isTargetWithinFOV();
 
 }
@@ -0,0 +1,55 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import raven.math.graph.GraphSearchStatus;
+import raven.math.graph.GraphSearchType;
+
+/**
+ * Stands in for an A* search whose path was found in the PathCache. It is
+ * complete from the start.
+ */
+public class CachedPathSearch extends GraphSearchTimeSliced<NavGraphEdge> {
+	private List<Integer> nodes;
+	private List<PathEdge> edges;
+	private double cost;
+
+	public CachedPathSearch(List<Integer> nodes, List<PathEdge> edges, double cost) {
+		super(GraphSearchType.AStar);
+
+		this.nodes = nodes;
+		this.edges = edges;
+		this.cost = cost;
+	}
+
+	@Override
+	public GraphSearchStatus cycleOnce() {
+		return GraphSearchStatus.TARGET_FOUND;
+	}
+
+	/** the cache does not keep the search tree, so this is empty */
+	@Override
+	public List<NavGraphEdge> getSPT() {
+		return new ArrayList<NavGraphEdge>();
+	}
+
+	@Override
+	public double getCostToTarget() {
+		return cost;
+	}
+
+	@Override
+	public List<Integer> getPathToTarget() {
+		return new ArrayList<Integer>(nodes);
+	}
+
+	@Override
+	public List<PathEdge> getPathAsPathEdges() {
+		List<PathEdge> path = new ArrayList<PathEdge>(edges.size());
+		for (PathEdge edge : edges) {
+			path.add(new PathEdge(edge.Source(), edge.Destination(), edge.Behavior(), edge.DoorID()));
+		}
+		return path;
+	}
+}
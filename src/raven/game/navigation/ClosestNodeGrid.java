@@ -0,0 +1,182 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import raven.math.Vector2D;
+import raven.math.WallGrid;
+import raven.math.WallIntersectionTest;
+import raven.math.graph.GraphNode;
+import raven.math.graph.SparseGraph;
+
+/**
+ * A raster over the map giving, for each small cell, the nav graph nodes a
+ * bot standing there would most likely head for first. Each cell keeps the
+ * few nodes nearest its center that a bot could walk to from the center,
+ * nearest first.
+ *
+ * Finding the closest node to a position is then a lookup: the cell's
+ * candidates are put in order of distance from the position itself, and
+ * the first one the bot can actually walk to is the answer. That is nearly
+ * always the first one tried. A cell with no
+ * candidates, inside a wall say, or one whose candidates have all become
+ * blocked, is left to a full search of the nearby nodes.
+ *
+ * The grid is built for one graph version and is not changed afterwards,
+ * so it may be shared between threads.
+ */
+public class ClosestNodeGrid {
+	private static final int[] NO_CANDIDATES = new int[0];
+
+	private final int version;
+
+	private final double cellSize;
+	private final int numCellsX;
+	private final int numCellsY;
+
+	private final int maxCandidates;
+
+	/** the candidate nodes of each cell, nearest the center first */
+	private final int[][] candidates;
+
+	/** the position of each node, indexed by node */
+	private final double[] nodeX;
+	private final double[] nodeY;
+
+	/**
+	 * @param graph the nav graph
+	 * @param walls the walls a bot must be able to pass to reach a node
+	 * @param sizeX the width of the map
+	 * @param sizeY the height of the map
+	 * @param cellSize the width and height of a cell
+	 * @param range only nodes this close to a cell's center are candidates
+	 * @param botRadius the radius of the bots that will walk to the nodes
+	 * @param maxCandidates the most nodes kept for each cell
+	 */
+	public ClosestNodeGrid(SparseGraph<? extends GraphNode, ?> graph, WallGrid walls,
+			double sizeX, double sizeY, double cellSize, double range, double botRadius, int maxCandidates) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("ClosestNodeGrid: cell size must be positive, not " + cellSize);
+
+		this.version = graph.getVersion();
+		this.cellSize = cellSize;
+		this.maxCandidates = Math.max(0, maxCandidates);
+		numCellsX = Math.max(1, (int)Math.ceil(sizeX / cellSize));
+		numCellsY = Math.max(1, (int)Math.ceil(sizeY / cellSize));
+
+		// share the nodes out to every cell whose center is in range
+		List<List<GraphNode>> inRange = new ArrayList<List<GraphNode>>(numCellsX * numCellsY);
+		for (int i = 0; i < numCellsX * numCellsY; i++) {
+			inRange.add(new ArrayList<GraphNode>());
+		}
+
+		nodeX = new double[graph.numNodes()];
+		nodeY = new double[graph.numNodes()];
+		for (int i = 0; i < graph.numNodes(); i++) {
+			GraphNode node = graph.getNode(i);
+			nodeX[i] = node.pos().x;
+			nodeY[i] = node.pos().y;
+			if (node.index() == GraphNode.INVALID_NODE_INDEX)
+				continue;
+
+			int minX = Math.max(0, (int)Math.floor((node.pos().x - range) / cellSize));
+			int maxX = Math.min(numCellsX - 1, (int)Math.floor((node.pos().x + range) / cellSize));
+			int minY = Math.max(0, (int)Math.floor((node.pos().y - range) / cellSize));
+			int maxY = Math.min(numCellsY - 1, (int)Math.floor((node.pos().y + range) / cellSize));
+
+			for (int y = minY; y <= maxY; y++) {
+				for (int x = minX; x <= maxX; x++) {
+					if (cellCenter(x, y).distanceSq(node.pos()) <= range * range) {
+						inRange.get(y * numCellsX + x).add(node);
+					}
+				}
+			}
+		}
+
+		// keep the nearest few a bot at the center could walk to
+		candidates = new int[numCellsX * numCellsY][];
+		for (int y = 0; y < numCellsY; y++) {
+			for (int x = 0; x < numCellsX; x++) {
+				final Vector2D center = cellCenter(x, y);
+				List<GraphNode> nodes = inRange.get(y * numCellsX + x);
+
+				Collections.sort(nodes, new Comparator<GraphNode>() {
+					@Override
+					public int compare(GraphNode a, GraphNode b) {
+						return Double.compare(center.distanceSq(a.pos()), center.distanceSq(b.pos()));
+					}
+				});
+
+				List<Integer> kept = new ArrayList<Integer>(this.maxCandidates);
+				for (GraphNode node : nodes) {
+					if (kept.size() == this.maxCandidates)
+						break;
+
+					if (!WallIntersectionTest.doWallsObstructSweptCircle(walls, center, node.pos(), botRadius)) {
+						kept.add(node.index());
+					}
+				}
+
+				int[] cell = NO_CANDIDATES;
+				if (!kept.isEmpty()) {
+					cell = new int[kept.size()];
+					for (int i = 0; i < cell.length; i++) {
+						cell[i] = kept.get(i);
+					}
+				}
+				candidates[y * numCellsX + x] = cell;
+			}
+		}
+	}
+
+	private Vector2D cellCenter(int x, int y) {
+		return new Vector2D((x + 0.5) * cellSize, (y + 0.5) * cellSize);
+	}
+
+	/**
+	 * copies the candidate nodes for the cell holding pos into nodes,
+	 * nearest pos first.
+	 * @param pos the position to find nodes near
+	 * @param nodes filled with the candidates. Must hold at least
+	 * getMaxCandidates() of them
+	 * @return the number of candidates. 0 if pos is off the map
+	 */
+	public int getCandidates(Vector2D pos, int[] nodes) {
+		int x = (int)Math.floor(pos.x / cellSize);
+		int y = (int)Math.floor(pos.y / cellSize);
+		if (x < 0 || y < 0 || x >= numCellsX || y >= numCellsY)
+			return 0;
+
+		// an insertion sort, as there are only ever a few
+		int[] cell = candidates[y * numCellsX + x];
+		for (int i = 0; i < cell.length; i++) {
+			int node = cell[i];
+			double dist = distanceSq(pos, node);
+
+			int j = i;
+			while (j > 0 && distanceSq(pos, nodes[j - 1]) > dist) {
+				nodes[j] = nodes[j - 1];
+				j--;
+			}
+			nodes[j] = node;
+		}
+		return cell.length;
+	}
+
+	private double distanceSq(Vector2D pos, int node) {
+		double dx = nodeX[node] - pos.x;
+		double dy = nodeY[node] - pos.y;
+		return dx * dx + dy * dy;
+	}
+
+	/** the most candidates any cell has */
+	public int getMaxCandidates() { return maxCandidates; }
+
+	/** the version of the graph this was built for */
+	public int getVersion() { return version; }
+
+	public int getNumCellsX() { return numCellsX; }
+	public int getNumCellsY() { return numCellsY; }
+}
@@ -1,6 +1,5 @@
 package raven.game.navigation;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -12,7 +11,6 @@ import raven.math.graph.GraphSearchStatus;
 import raven.math.graph.GraphSearchType;
 import raven.math.graph.Heuristic;
 import raven.math.graph.SparseGraph;
-import raven.utils.IndexedPriorityQueue;
 
 public class GraphSearchAStarTS<T extends SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> extends GraphSearchTimeSliced<NavGraphEdge> {
 
@@ -20,47 +18,52 @@ public class GraphSearchAStarTS<T extends SparseGraph<NavGraphNode<Trigger<IRave
 
 	private Heuristic<T> heuristic;
 
-	/** indexed into my node. Contains the 'real' accumulative cost to that node */
-	private List<Double> gCosts;
+	/** holds, indexed by node, the 'real' accumulative cost to that node
+	 * (G), that cost plus the heuristic cost to the target (F), the shortest
+	 * path tree and the search frontier */
+	private SearchWorkspace workspace;
 
-	/** indexed into by node. Contains the cost from adding gCosts[n] to the
-	 * heuristic cost from n to the target node. */
-	private List<Double> fCosts;
-
-	private List<NavGraphEdge> shortestPathTree;
-	private List<NavGraphEdge> searchFrontier;
+	/** where the workspace goes back to when the search is released. null
+	 * if the search made its own. */
+	private PathManager owner;
 
 	private int source;
 	private int target;
 
-	private IndexedPriorityQueue<Double> queue;
-
 	public GraphSearchAStarTS(T graph, int source, int target) {
+		this(graph, source, target, null);
+	}
+
+	/** creates a search that borrows its workspace from the path manager */
+	public GraphSearchAStarTS(T graph, int source, int target, PathManager owner) {
+		this(graph, source, target, owner, new EuclideanHeuristic<T>());
+	}
+
+	/** creates a search guided by the given heuristic, which must never
+	 * overestimate the cost to the target */
+	public GraphSearchAStarTS(T graph, int source, int target, PathManager owner, Heuristic<T> heuristic) {
 		super(GraphSearchType.AStar);
 
 		this.graph = graph;
-		this.heuristic = new EuclideanHeuristic<T>();
-
-		shortestPathTree = new ArrayList<NavGraphEdge>(graph.numNodes());
-		searchFrontier = new ArrayList<NavGraphEdge>(graph.numNodes());
-
-		gCosts = new ArrayList<Double>(graph.numNodes());
-		fCosts = new ArrayList<Double>(graph.numNodes());
-		// Cost arrays need to be filled
-		for (int i = 0; i < graph.numNodes(); i++) {
-			gCosts.add(0.0);
-			fCosts.add(0.0);
-			shortestPathTree.add(null);
-			searchFrontier.add(null);
-		}
+		this.heuristic = heuristic;
+
+		this.owner = owner;
+		workspace = owner != null ? owner.acquireWorkspace() : new SearchWorkspace();
+		workspace.begin(graph.numNodes());
 
 		this.source = source;
 		this.target = target;
 
-		// TreeMap functions as a priority queue
-		queue = new IndexedPriorityQueue<Double>(fCosts, graph.numNodes());
+		workspace.setCosts(source, 0, 0);
+		workspace.getQueue().insert(source);
+	}
 
-		queue.insert(source);
+	@Override
+	public void release() {
+		if (owner != null && workspace != null) {
+			owner.releaseWorkspace(workspace);
+		}
+		workspace = null;
 	}
 
 	/** When called, this method pops the next node off the PQ and examines
@@ -70,15 +73,15 @@ public class GraphSearchAStarTS<T extends SparseGraph<NavGraphNode<Trigger<IRave
 	@Override
 	public GraphSearchStatus cycleOnce() {
 		//if the PQ is empty the target has not been found
-		if (queue.isEmpty()) {
+		if (workspace.getQueue().isEmpty()) {
 			return GraphSearchStatus.TARGET_NOT_FOUND;
 		}
 
 		//get lowest cost node from the queue
-		int nextClosestNode = queue.pop();
+		int nextClosestNode = workspace.getQueue().pop();
 
 		//put the node on the SPT
-		shortestPathTree.set(nextClosestNode, searchFrontier.get(nextClosestNode));
+		workspace.setSPTEdge(nextClosestNode, workspace.getFrontierEdge(nextClosestNode));
 
 		//if the target has been found exit
 		if (nextClosestNode == target) {
@@ -87,32 +90,34 @@ public class GraphSearchAStarTS<T extends SparseGraph<NavGraphNode<Trigger<IRave
 
 		//now to test all the edges attached to this node
 		for (NavGraphEdge edge : graph.getEdges(nextClosestNode)) {
+			//blocked edges can't be crossed
+			if (edge.isBlocked())
+				continue;
+
 			// calculate the heuristic cost from this node to the target (H)
 			double hCost = heuristic.Calculate(graph, target, edge.to());
 
 			// calculate the 'real' cost to this node from the source (G)
-			double gCost = gCosts.get(nextClosestNode) + edge.cost();
+			double gCost = workspace.getGCost(nextClosestNode) + edge.cost();
 
 			// if the node has not been added to the frontier, add it and
 			// update the G and F costs
-			if (searchFrontier.get(edge.to()) == null) {
-				fCosts.set(edge.to(), gCost + hCost);
-				gCosts.set(edge.to(), gCost);
+			if (workspace.getFrontierEdge(edge.to()) == null) {
+				workspace.setCosts(edge.to(), gCost, gCost + hCost);
 
-				queue.insert(edge.to());
+				workspace.getQueue().insert(edge.to());
 
-				searchFrontier.set(edge.to(), edge);
+				workspace.setFrontierEdge(edge.to(), edge);
 			}
 			//if this node is already on the frontier but the cost to get here
 			//is cheaper than has been found previously, update the node
 			//costs and frontier accordingly.
-			else if (gCost < gCosts.get(edge.to()) && shortestPathTree.get(edge.to()) == null) {
-				fCosts.set(edge.to(), gCost + hCost);
-				gCosts.set(edge.to(), gCost);
+			else if (gCost < workspace.getGCost(edge.to()) && workspace.getSPTEdge(edge.to()) == null) {
+				workspace.setCosts(edge.to(), gCost, gCost + hCost);
 
-				queue.changePriority(edge.to());
+				workspace.getQueue().changePriority(edge.to());
 
-				searchFrontier.set(edge.to(), edge);
+				workspace.setFrontierEdge(edge.to(), edge);
 			}
 		}
 
@@ -123,13 +128,13 @@ public class GraphSearchAStarTS<T extends SparseGraph<NavGraphNode<Trigger<IRave
 	/** returns the vector of edges that the algorithm has examined */
 	@Override
 	public List<NavGraphEdge> getSPT() {
-		return shortestPathTree;
+		return workspace.getSPT();
 	}
 
 	/** returns the total cost to the target */
 	@Override
 	public double getCostToTarget() {
-		return gCosts.get(target);
+		return workspace.getGCost(target);
 	}
 
 	/** returns a vector of node indexes that comprise the shortest path from
@@ -146,8 +151,8 @@ public class GraphSearchAStarTS<T extends SparseGraph<NavGraphNode<Trigger<IRave
 
 		path.add(node);
 
-		while(node != source && shortestPathTree.get(node) != null) {
-			node = shortestPathTree.get(node).from();
+		while(node != source && workspace.getSPTEdge(node) != null) {
+			node = workspace.getSPTEdge(node).from();
 			
 			path.add(0, node);
 		}
@@ -166,14 +171,15 @@ public class GraphSearchAStarTS<T extends SparseGraph<NavGraphNode<Trigger<IRave
 		
 		int node = target;
 		
-		while (node != source && shortestPathTree.get(node) != null) {
+		while (node != source && workspace.getSPTEdge(node) != null) {
+			NavGraphEdge edge = workspace.getSPTEdge(node);
 			path.add(0, new PathEdge(
-					graph.getNode(shortestPathTree.get(node).from()).pos(),
-					graph.getNode(shortestPathTree.get(node).to()).pos(),
-					shortestPathTree.get(node).flags(),
-					shortestPathTree.get(node).IDOfIntersectingEntity()));
+					graph.getNode(edge.from()).pos(),
+					graph.getNode(edge.to()).pos(),
+					edge.flags(),
+					edge.IDOfIntersectingEntity()));
 			
-			node = shortestPathTree.get(node).from();
+			node = edge.from();
 		}
 		
 		return path;
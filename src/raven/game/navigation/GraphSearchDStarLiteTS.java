@@ -0,0 +1,361 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import raven.game.interfaces.IRavenBot;
+import raven.game.triggers.Trigger;
+import raven.math.graph.GraphSearchStatus;
+import raven.math.graph.GraphSearchType;
+import raven.math.graph.Heuristic;
+import raven.math.graph.SparseGraph;
+import raven.utils.IndexedPriorityQueue;
+
+/**
+ * A time-sliced D* Lite search. It searches back from the target, keeping
+ * the cost from every node it reaches to the target, so once a path has
+ * been found it can be found again from a new source, or after some edges'
+ * costs have changed, by repairing just the costs that changed rather than
+ * searching from scratch.
+ *
+ * Only the edges given when the search is made are watched for changes:
+ * the edges through doors, say. If any other edge changes, or nodes or
+ * edges are added or removed, a new search must be made.
+ *
+ * Each cycle expands one node. The heuristic must never overestimate, and
+ * must not overestimate the cost of a path by more than the cost of any of
+ * its edges (that is, it must be consistent), as the Euclidean and landmark
+ * heuristics are.
+ */
+public class GraphSearchDStarLiteTS<T extends SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> extends GraphSearchTimeSliced<NavGraphEdge> {
+
+	private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+	private T graph;
+	private Heuristic<T> heuristic;
+
+	private int source;
+	private int target;
+
+	/** the graph version the search was made for */
+	private int graphVersion;
+
+	/** the cost from each node to the target, as far as the search knows */
+	private double[] gCosts;
+
+	/** the cost from each node to the target found by looking one step
+	 * ahead. A node whose two costs differ is queued to be expanded */
+	private double[] rhsCosts;
+
+	/** each queued node's key is its estimated cost of a path through it,
+	 * then, to break ties, its cost to the target */
+	private double[] keys;
+	private double[] tieKeys;
+	private IndexedPriorityQueue queue;
+
+	/** raised by the estimated cost between the old and new source each
+	 * time the source moves, so keys already queued need not be changed */
+	private double keyOffset;
+
+	/** the edges into each node of a digraph. null for an undirected graph,
+	 * where the edges out of a node lead back the same way */
+	private List<List<NavGraphEdge>> incoming;
+
+	/** the edges that may change cost, and what each cost when last seen */
+	private NavGraphEdge[] watched;
+	private double[] watchedCosts;
+
+	private int nodesExpanded;
+
+	/**
+	 * @param graph the nav graph
+	 * @param source the node to search from
+	 * @param target the node to search for. Fixed for the life of the
+	 * search
+	 * @param heuristic estimates the cost between two nodes. Must be
+	 * consistent
+	 * @param changeable the edges whose costs may change between one
+	 * request and the next
+	 */
+	public GraphSearchDStarLiteTS(T graph, int source, int target, Heuristic<T> heuristic, List<NavGraphEdge> changeable) {
+		super(GraphSearchType.AStar);
+
+		this.graph = graph;
+		this.heuristic = heuristic;
+		this.source = source;
+		this.target = target;
+		graphVersion = graph.getVersion();
+
+		int numNodes = graph.numNodes();
+		gCosts = new double[numNodes];
+		rhsCosts = new double[numNodes];
+		keys = new double[numNodes];
+		tieKeys = new double[numNodes];
+		Arrays.fill(gCosts, INFINITY);
+		Arrays.fill(rhsCosts, INFINITY);
+		queue = new IndexedPriorityQueue(keys, tieKeys, numNodes, 2);
+
+		if (graph.isDigraph()) {
+			incoming = new ArrayList<List<NavGraphEdge>>(numNodes);
+			for (int node = 0; node < numNodes; node++) {
+				incoming.add(new ArrayList<NavGraphEdge>());
+			}
+			for (int node = 0; node < numNodes; node++) {
+				for (NavGraphEdge edge : graph.getEdges(node)) {
+					incoming.get(edge.to()).add(edge);
+				}
+			}
+		}
+
+		watched = changeable.toArray(new NavGraphEdge[changeable.size()]);
+		watchedCosts = new double[watched.length];
+		for (int i = 0; i < watched.length; i++) {
+			watchedCosts[i] = watched[i].cost();
+		}
+
+		rhsCosts[target] = 0;
+		setKey(target);
+		queue.insert(target);
+	}
+
+	/**
+	 * gets the search ready to find a path again, from a new source and
+	 * taking in any changes to the watched edges since the last path was
+	 * found. Only the costs the changes affect are worked out again.
+	 */
+	public void restart(int newSource) {
+		keyOffset += heuristic.Calculate(graph, newSource, source);
+		source = newSource;
+
+		updateWatchedEdges();
+	}
+
+	/**
+	 * takes in any changes to the watched edges since they were last looked
+	 * at. Must be called whenever they change while the search is
+	 * unfinished, before it is cycled again, or its costs are no longer
+	 * those of the graph.
+	 */
+	public void updateWatchedEdges() {
+		for (int i = 0; i < watched.length; i++) {
+			NavGraphEdge edge = watched[i];
+			double oldCost = watchedCosts[i];
+			double newCost = edge.cost();
+			if (newCost == oldCost)
+				continue;
+
+			watchedCosts[i] = newCost;
+
+			int from = edge.from();
+			if (from == target)
+				continue;
+
+			if (newCost < oldCost) {
+				rhsCosts[from] = Math.min(rhsCosts[from], newCost + gCosts[edge.to()]);
+			} else if (rhsCosts[from] == oldCost + gCosts[edge.to()]) {
+				rhsCosts[from] = lookAhead(from);
+			}
+			updateQueue(from);
+		}
+	}
+
+	/** the node the search is for */
+	public int getTarget() { return target; }
+
+	/** the graph version the search was made for */
+	public int getGraphVersion() { return graphVersion; }
+
+	/** the number of nodes expanded so far, over every restart */
+	public int getNodesExpanded() { return nodesExpanded; }
+
+	private double calculateKey(int node) {
+		return Math.min(gCosts[node], rhsCosts[node]) + heuristic.Calculate(graph, node, source) + keyOffset;
+	}
+
+	private void setKey(int node) {
+		keys[node] = calculateKey(node);
+		tieKeys[node] = Math.min(gCosts[node], rhsCosts[node]);
+	}
+
+	/** true if the queued node's key is below the key it would have now */
+	private boolean isKeyBelow(int queued, int node) {
+		double key = calculateKey(node);
+		return keys[queued] < key
+				|| (keys[queued] == key && tieKeys[queued] < Math.min(gCosts[node], rhsCosts[node]));
+	}
+
+	/** the cheapest cost to the target through any of a node's edges */
+	private double lookAhead(int node) {
+		double best = INFINITY;
+		for (NavGraphEdge edge : graph.getEdges(node)) {
+			double cost = edge.cost() + gCosts[edge.to()];
+			if (cost < best) {
+				best = cost;
+			}
+		}
+		return best;
+	}
+
+	/** queues the node if its two costs differ, and takes it off the queue
+	 * if they don't */
+	private void updateQueue(int node) {
+		boolean queued = queue.contains(node);
+		if (gCosts[node] != rhsCosts[node]) {
+			setKey(node);
+			if (queued) {
+				queue.update(node);
+			} else {
+				queue.insert(node);
+			}
+		} else if (queued) {
+			queue.remove(node);
+		}
+	}
+
+	/** the edges leading into a node */
+	private List<NavGraphEdge> edgesInto(int node) {
+		return incoming != null ? incoming.get(node) : graph.getEdges(node);
+	}
+
+	/** the node at the other end of an edge leading into a node */
+	private int predecessor(NavGraphEdge edge) {
+		return incoming != null ? edge.from() : edge.to();
+	}
+
+	private boolean isComplete() {
+		return queue.isEmpty()
+				|| (!isKeyBelow(queue.peek(), source) && gCosts[source] == rhsCosts[source]);
+	}
+
+	@Override
+	public GraphSearchStatus cycleOnce() {
+		if (isComplete()) {
+			return walkToTarget(null) ? GraphSearchStatus.TARGET_FOUND : GraphSearchStatus.TARGET_NOT_FOUND;
+		}
+
+		int node = queue.peek();
+		nodesExpanded++;
+
+		if (isKeyBelow(node, node)) {
+			// the source has moved since it was queued
+			setKey(node);
+			queue.update(node);
+		} else if (gCosts[node] > rhsCosts[node]) {
+			// it got cheaper, so the nodes leading to it might have too
+			gCosts[node] = rhsCosts[node];
+			queue.remove(node);
+			for (NavGraphEdge edge : edgesInto(node)) {
+				int previous = predecessor(edge);
+				if (previous != target) {
+					rhsCosts[previous] = Math.min(rhsCosts[previous], edge.cost() + gCosts[node]);
+					updateQueue(previous);
+				}
+			}
+		} else {
+			// it got dearer, so the nodes that went through it must look
+			// again, and it must be expanded again if it is still reachable
+			double oldCost = gCosts[node];
+			gCosts[node] = INFINITY;
+			for (NavGraphEdge edge : edgesInto(node)) {
+				int previous = predecessor(edge);
+				if (previous != target && rhsCosts[previous] == edge.cost() + oldCost) {
+					rhsCosts[previous] = lookAhead(previous);
+				}
+				updateQueue(previous);
+			}
+			updateQueue(node);
+		}
+
+		return GraphSearchStatus.SEARCH_INCOMPLETE;
+	}
+
+	/**
+	 * steps from the source to whichever neighbor is cheapest to reach the
+	 * target from, until it gets there.
+	 * @param path the edges stepped along are added to it. May be null
+	 * @return false if a step found no way on, or the steps went round in
+	 * a loop
+	 */
+	private boolean walkToTarget(List<NavGraphEdge> path) {
+		if (gCosts[source] == INFINITY)
+			return false;
+
+		int node = source;
+		for (int steps = 0; node != target; steps++) {
+			if (steps == graph.numNodes())
+				return false;
+
+			NavGraphEdge best = null;
+			double bestCost = INFINITY;
+			for (NavGraphEdge edge : graph.getEdges(node)) {
+				double cost = edge.cost() + gCosts[edge.to()];
+				if (cost < bestCost) {
+					bestCost = cost;
+					best = edge;
+				}
+			}
+			if (best == null)
+				return false;
+
+			if (path != null) {
+				path.add(best);
+			}
+			node = best.to();
+		}
+		return true;
+	}
+
+	/** the edges of the path from the source to the target. Empty if the
+	 * source can't reach it */
+	private List<NavGraphEdge> getPathEdges() {
+		List<NavGraphEdge> path = new ArrayList<NavGraphEdge>();
+		if (!walkToTarget(path)) {
+			path.clear();
+		}
+		return path;
+	}
+
+	/** the edges of the path found, indexed by the node each leads to */
+	@Override
+	public List<NavGraphEdge> getSPT() {
+		NavGraphEdge[] spt = new NavGraphEdge[graph.numNodes()];
+		for (NavGraphEdge edge : getPathEdges()) {
+			spt[edge.to()] = edge;
+		}
+		return Arrays.asList(spt);
+	}
+
+	@Override
+	public double getCostToTarget() {
+		return gCosts[source];
+	}
+
+	@Override
+	public List<Integer> getPathToTarget() {
+		List<Integer> nodes = new LinkedList<Integer>();
+		List<NavGraphEdge> path = new ArrayList<NavGraphEdge>();
+		if (!walkToTarget(path))
+			return nodes;
+
+		nodes.add(source);
+		for (NavGraphEdge edge : path) {
+			nodes.add(edge.to());
+		}
+		return nodes;
+	}
+
+	@Override
+	public List<PathEdge> getPathAsPathEdges() {
+		List<PathEdge> edges = new LinkedList<PathEdge>();
+		for (NavGraphEdge edge : getPathEdges()) {
+			edges.add(new PathEdge(
+					graph.getNode(edge.from()).pos(),
+					graph.getNode(edge.to()).pos(),
+					edge.flags(),
+					edge.IDOfIntersectingEntity()));
+		}
+		return edges;
+	}
+}
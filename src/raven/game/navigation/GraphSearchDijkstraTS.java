@@ -1,6 +1,5 @@
 package raven.game.navigation;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -14,51 +13,53 @@ import raven.math.graph.GraphSearchStatus;
 import raven.math.graph.GraphSearchType;
 import raven.math.graph.Heuristic;
 import raven.math.graph.SparseGraph;
-import raven.utils.IndexedPriorityQueue;
 
 public class GraphSearchDijkstraTS<T extends SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> extends GraphSearchTimeSliced<NavGraphEdge> {
 
 	private T graph;
 
-	/** indexed into my node. Contains the accumulative cost to that node */
-	private List<Double> costToThisNode;
+	/** holds, indexed by node, the accumulative cost to that node, the
+	 * shortest path tree and the search frontier */
+	private SearchWorkspace workspace;
 
-
-	private List<NavGraphEdge> shortestPathTree;
-	private List<NavGraphEdge> searchFrontier;
+	/** where the workspace goes back to when the search is released. null
+	 * if the search made its own. */
+	private PathManager owner;
 
 	private int source;
 	private int targetNode;
 	private RavenObject target;
 
-	private IndexedPriorityQueue<Double> queue;
-
 	private GraphSearchTermination<SparseGraph<NavGraphNode<Trigger<?>>, NavGraphEdge>> termination;
 
 	public GraphSearchDijkstraTS(T graph, int source, RavenObject target) {
+		this(graph, source, target, null);
+	}
+
+	/** creates a search that borrows its workspace from the path manager */
+	public GraphSearchDijkstraTS(T graph, int source, RavenObject target, PathManager owner) {
 		super(GraphSearchType.Dijkstra);
 
 		this.graph = graph;
 
-		costToThisNode = new ArrayList<Double>(graph.numNodes());
-		shortestPathTree = new ArrayList<NavGraphEdge>(graph.numNodes());
-		searchFrontier = new ArrayList<NavGraphEdge>(graph.numNodes());
-
-		// Cost arrays need to be filled
-		for (int i = 0; i < graph.numNodes(); i++) {
-			costToThisNode.add(0.0);
-			shortestPathTree.add(null);
-			searchFrontier.add(null);
-		}
+		this.owner = owner;
+		workspace = owner != null ? owner.acquireWorkspace() : new SearchWorkspace();
+		workspace.begin(graph.numNodes());
 
 		this.source = source;
 		this.target = target;
 		this.targetNode = GraphNode.INVALID_NODE_INDEX;
 
-		// TreeMap functions as a priority queue
-		queue = new IndexedPriorityQueue<Double>(costToThisNode, graph.numNodes());
+		workspace.setCosts(source, 0, 0);
+		workspace.getQueue().insert(source);
+	}
 
-		queue.insert(source);
+	@Override
+	public void release() {
+		if (owner != null && workspace != null) {
+			owner.releaseWorkspace(workspace);
+		}
+		workspace = null;
 	}
 
 	/** When called, this method pops the next node off the PQ and examines
@@ -68,15 +69,15 @@ public class GraphSearchDijkstraTS<T extends SparseGraph<NavGraphNode<Trigger<IR
 	@Override
 	public GraphSearchStatus cycleOnce() {
 		//if the PQ is empty the target has not been found
-		if (queue.isEmpty()) {
+		if (workspace.getQueue().isEmpty()) {
 			return GraphSearchStatus.TARGET_NOT_FOUND;
 		}
 
 		//get lowest cost node from the queue
-		int nextClosestNode = queue.pop();
+		int nextClosestNode = workspace.getQueue().pop();
 
 		//move this node from the frontier to the spanning tree
-		shortestPathTree.set(nextClosestNode, searchFrontier.get(nextClosestNode));
+		workspace.setSPTEdge(nextClosestNode, workspace.getFrontierEdge(nextClosestNode));
 
 		//if the target has been found exit
 		NavGraphNode<Trigger<IRavenBot>> node = graph.getNode(nextClosestNode);
@@ -88,27 +89,31 @@ public class GraphSearchDijkstraTS<T extends SparseGraph<NavGraphNode<Trigger<IR
 
 		//now to test all the edges attached to this node
 		for (NavGraphEdge edge : graph.getEdges(nextClosestNode)) {
+			//blocked edges can't be crossed
+			if (edge.isBlocked())
+				continue;
+
 			// calculate the heuristic cost from this node to the target (H)
-			double newCost = costToThisNode.get(nextClosestNode) + edge.cost();
+			double newCost = workspace.getGCost(nextClosestNode) + edge.cost();
 
 			// if the node has not been added to the frontier, add it and
 			// update the G and F costs
-			if (searchFrontier.get(edge.to()) == null) {
-				costToThisNode.set(edge.to(), newCost);
+			if (workspace.getFrontierEdge(edge.to()) == null) {
+				workspace.setCosts(edge.to(), newCost, newCost);
 				
-				queue.insert(edge.to());
+				workspace.getQueue().insert(edge.to());
 
-				searchFrontier.set(edge.to(), edge);
+				workspace.setFrontierEdge(edge.to(), edge);
 			}
 			//if this node is already on the frontier but the cost to get here
 			//is cheaper than has been found previously, update the node
 			//costs and frontier accordingly.
-			else if (newCost < costToThisNode.get(edge.to()) && shortestPathTree.get(edge.to()) == null) {
-				costToThisNode.set(edge.to(), newCost);
+			else if (newCost < workspace.getGCost(edge.to()) && workspace.getSPTEdge(edge.to()) == null) {
+				workspace.setCosts(edge.to(), newCost, newCost);
 
-				queue.changePriority(edge.to());
+				workspace.getQueue().changePriority(edge.to());
 
-				searchFrontier.set(edge.to(), edge);
+				workspace.setFrontierEdge(edge.to(), edge);
 			}
 		}
 
@@ -119,13 +124,13 @@ public class GraphSearchDijkstraTS<T extends SparseGraph<NavGraphNode<Trigger<IR
 	/** returns the vector of edges that the algorithm has examined */
 	@Override
 	public List<NavGraphEdge> getSPT() {
-		return shortestPathTree;
+		return workspace.getSPT();
 	}
 
 	/** returns the total cost to the target */
 	@Override
 	public double getCostToTarget() {
-		return costToThisNode.get(targetNode);
+		return workspace.getGCost(targetNode);
 	}
 
 	/** returns a vector of node indexes that comprise the shortest path from
@@ -142,8 +147,8 @@ public class GraphSearchDijkstraTS<T extends SparseGraph<NavGraphNode<Trigger<IR
 
 		path.add(node);
 
-		while(node != source && shortestPathTree.get(node) != null) {
-			node = shortestPathTree.get(node).from();
+		while(node != source && workspace.getSPTEdge(node) != null) {
+			node = workspace.getSPTEdge(node).from();
 			
 			path.add(0, node);
 		}
@@ -162,14 +167,15 @@ public class GraphSearchDijkstraTS<T extends SparseGraph<NavGraphNode<Trigger<IR
 		
 		int node = targetNode;
 		
-		while (node != source && shortestPathTree.get(node) != null) {
+		while (node != source && workspace.getSPTEdge(node) != null) {
+			NavGraphEdge edge = workspace.getSPTEdge(node);
 			path.add(0, new PathEdge(
-					graph.getNode(shortestPathTree.get(node).from()).pos(),
-					graph.getNode(shortestPathTree.get(node).to()).pos(),
-					shortestPathTree.get(node).flags(),
-					shortestPathTree.get(node).IDOfIntersectingEntity()));
+					graph.getNode(edge.from()).pos(),
+					graph.getNode(edge.to()).pos(),
+					edge.flags(),
+					edge.IDOfIntersectingEntity()));
 			
-			node = shortestPathTree.get(node).from();
+			node = edge.from();
 		}
 		
 		return path;
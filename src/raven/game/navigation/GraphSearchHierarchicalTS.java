@@ -0,0 +1,357 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import raven.game.interfaces.IRavenBot;
+import raven.game.navigation.PathHierarchy.AbstractEdge;
+import raven.game.navigation.PathHierarchy.ClusterSearch;
+import raven.game.triggers.Trigger;
+import raven.math.graph.GraphSearchStatus;
+import raven.math.graph.GraphSearchType;
+import raven.math.graph.Heuristic;
+import raven.math.graph.SparseGraph;
+import raven.utils.IndexedPriorityQueue;
+
+/**
+ * A time-sliced hierarchical A* search (HPA*). Rather than searching the
+ * whole nav graph it searches the PathHierarchy's abstract graph of cluster
+ * entrances, which is far smaller, and then fills in the detail of only
+ * those clusters the path passes through.
+ *
+ * The first two cycles join the source and target to the entrances of their
+ * clusters. Each cycle after that expands one entrance, and once the target
+ * is reached each cycle fills in one step of the abstract path. Paths inside
+ * clusters were found when the hierarchy was built, so this needs little
+ * searching of the nav graph itself.
+ *
+ * On an undirected graph the abstract graph joins any two nodes the nav
+ * graph does. On a digraph it may not, so if it can't join the source to
+ * the target the search carries on as a plain A* over the nav graph, and a
+ * path is found whenever there is one.
+ *
+ * The path found can be a little longer than the shortest, since only some
+ * of the edges between clusters are used.
+ */
+public class GraphSearchHierarchicalTS<T extends SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> extends GraphSearchTimeSliced<NavGraphEdge> {
+
+	private static final int JOIN_SOURCE = 0;
+	private static final int JOIN_TARGET = 1;
+	private static final int SEARCH = 2;
+	private static final int REFINE = 3;
+	private static final int DONE = 4;
+	private static final int FALLBACK = 5;
+
+	private T graph;
+	private PathHierarchy hierarchy;
+	private Heuristic<T> heuristic;
+	private PathManager owner;
+
+	private int source;
+	private int target;
+
+	private int phase = JOIN_SOURCE;
+
+	/** the abstract graph's own nodes are the entrances. The source and
+	 * target are added after them */
+	private int sourceIndex;
+	private int targetIndex;
+
+	/** the abstract edges from the source into its cluster's entrances */
+	private List<AbstractEdge> sourceEdges = new ArrayList<AbstractEdge>();
+
+	/** a search of the source's cluster from the source. Only needed on a
+	 * digraph, or if the target is in the same cluster */
+	private ClusterSearch sourceSearch;
+
+	/** the abstract edge from each entrance in the target's cluster to the
+	 * target, indexed by entrance. null elsewhere */
+	private AbstractEdge[] targetEdges;
+
+	private double[] gCosts;
+	private double[] fCosts;
+	private AbstractEdge[] parents;
+	private boolean[] settled;
+	private IndexedPriorityQueue queue;
+
+	/** the abstract path, waiting to be filled in */
+	private LinkedList<AbstractEdge> abstractPath = new LinkedList<AbstractEdge>();
+
+	/** the nav graph edges of the path, as filled in so far */
+	private List<NavGraphEdge> path = new ArrayList<NavGraphEdge>();
+
+	/** the plain A* search used if the hierarchy fails */
+	private GraphSearchAStarTS<T> fallback;
+
+	private int nodesExpanded;
+
+	/**
+	 * @param graph the nav graph
+	 * @param hierarchy the abstract graph built over it
+	 * @param source the node to search from
+	 * @param target the node to search for
+	 * @param owner lends a workspace to the fallback A* search. May be null
+	 * @param heuristic estimates the cost between two nav graph nodes. Must
+	 * never overestimate
+	 */
+	public GraphSearchHierarchicalTS(T graph, PathHierarchy hierarchy, int source, int target, PathManager owner, Heuristic<T> heuristic) {
+		super(GraphSearchType.AStar);
+
+		this.graph = graph;
+		this.hierarchy = hierarchy;
+		this.heuristic = heuristic;
+		this.owner = owner;
+		this.source = source;
+		this.target = target;
+
+		int numEntrances = hierarchy.numEntrances();
+		sourceIndex = numEntrances;
+		targetIndex = numEntrances + 1;
+
+		targetEdges = new AbstractEdge[numEntrances];
+		gCosts = new double[numEntrances + 2];
+		fCosts = new double[numEntrances + 2];
+		parents = new AbstractEdge[numEntrances + 2];
+		settled = new boolean[numEntrances + 2];
+		queue = new IndexedPriorityQueue(fCosts, numEntrances + 2);
+	}
+
+	@Override
+	public void release() {
+		if (fallback != null) {
+			fallback.release();
+		}
+	}
+
+	@Override
+	public GraphSearchStatus cycleOnce() {
+		switch (phase) {
+		case JOIN_SOURCE:
+			joinSource();
+			phase = JOIN_TARGET;
+			return GraphSearchStatus.SEARCH_INCOMPLETE;
+
+		case JOIN_TARGET:
+			joinTarget();
+			startSearch();
+			phase = SEARCH;
+			return GraphSearchStatus.SEARCH_INCOMPLETE;
+
+		case SEARCH:
+			return searchOnce();
+
+		case REFINE:
+			refineOnce();
+			if (abstractPath.isEmpty()) {
+				phase = DONE;
+				return GraphSearchStatus.TARGET_FOUND;
+			}
+			return GraphSearchStatus.SEARCH_INCOMPLETE;
+
+		case DONE:
+			return GraphSearchStatus.TARGET_FOUND;
+
+		default:
+			nodesExpanded++;
+			return fallback.cycleOnce();
+		}
+	}
+
+	/** finds the cost from the source to each entrance of its cluster, and
+	 * straight to the target if it shares the cluster */
+	private void joinSource() {
+		int cluster = hierarchy.getCluster(source);
+
+		if (graph.isDigraph() || hierarchy.getCluster(target) == cluster) {
+			sourceSearch = hierarchy.searchCluster(source, -1);
+			nodesExpanded += sourceSearch.expanded;
+		}
+
+		for (int entrance : hierarchy.getClusterEntrances(cluster)) {
+			int node = hierarchy.getEntranceNode(entrance);
+
+			// on an undirected graph the cost is the same either way
+			double cost = graph.isDigraph()
+					? hierarchy.costInCluster(sourceSearch, node)
+					: hierarchy.costFromEntrance(entrance, source);
+			if (cost != Double.MAX_VALUE) {
+				sourceEdges.add(new AbstractEdge(source, node, entrance, cost, null));
+			}
+		}
+
+		if (hierarchy.getCluster(target) == cluster) {
+			double cost = hierarchy.costInCluster(sourceSearch, target);
+			if (cost != Double.MAX_VALUE) {
+				sourceEdges.add(new AbstractEdge(source, target, targetIndex, cost, null));
+			}
+		}
+	}
+
+	/** finds the cost from each entrance of the target's cluster to the
+	 * target */
+	private void joinTarget() {
+		for (int entrance : hierarchy.getClusterEntrances(hierarchy.getCluster(target))) {
+			double cost = hierarchy.costFromEntrance(entrance, target);
+			if (cost != Double.MAX_VALUE) {
+				targetEdges[entrance] = new AbstractEdge(hierarchy.getEntranceNode(entrance), target, targetIndex, cost, null);
+			}
+		}
+	}
+
+	private void startSearch() {
+		gCosts[sourceIndex] = 0;
+		fCosts[sourceIndex] = estimate(source);
+		parents[sourceIndex] = null;
+		queue.insert(sourceIndex);
+	}
+
+	private double estimate(int node) {
+		return heuristic.Calculate(graph, target, node);
+	}
+
+	/** expands the cheapest entrance on the frontier */
+	private GraphSearchStatus searchOnce() {
+		if (queue.isEmpty()) {
+			if (!graph.isDigraph())
+				return GraphSearchStatus.TARGET_NOT_FOUND;
+
+			// the hierarchy can't join them, so search the nav graph itself
+			fallback = new GraphSearchAStarTS<T>(graph, source, target, owner, heuristic);
+			phase = FALLBACK;
+			return GraphSearchStatus.SEARCH_INCOMPLETE;
+		}
+
+		int next = queue.pop();
+		settled[next] = true;
+		nodesExpanded++;
+
+		if (next == targetIndex) {
+			for (AbstractEdge edge = parents[targetIndex]; edge != null; edge = parents[indexOf(edge.fromNode())]) {
+				abstractPath.addFirst(edge);
+			}
+			phase = REFINE;
+			return GraphSearchStatus.SEARCH_INCOMPLETE;
+		}
+
+		if (next == sourceIndex) {
+			for (AbstractEdge edge : sourceEdges) {
+				relax(next, edge);
+			}
+		} else {
+			for (AbstractEdge edge : hierarchy.getAbstractEdges(next)) {
+				relax(next, edge);
+			}
+			if (targetEdges[next] != null) {
+				relax(next, targetEdges[next]);
+			}
+		}
+
+		return GraphSearchStatus.SEARCH_INCOMPLETE;
+	}
+
+	/** the abstract node standing for the nav graph node, which must be the
+	 * source or an entrance */
+	private int indexOf(int node) {
+		return node == source ? sourceIndex : hierarchy.getEntranceIndex(node);
+	}
+
+	private void relax(int from, AbstractEdge edge) {
+		int to = edge.to();
+		if (settled[to])
+			return;
+
+		double gCost = gCosts[from] + edge.cost();
+		boolean queued = queue.contains(to);
+		if (!queued || gCost < gCosts[to]) {
+			gCosts[to] = gCost;
+			fCosts[to] = gCost + (to == targetIndex ? 0 : estimate(edge.toNode()));
+			parents[to] = edge;
+
+			if (queued) {
+				queue.changePriority(to);
+			} else {
+				queue.insert(to);
+			}
+		}
+	}
+
+	/** fills in the next step of the abstract path */
+	private void refineOnce() {
+		AbstractEdge step = abstractPath.removeFirst();
+
+		if (step.edge() != null) {
+			path.add(step.edge());
+		} else if (step.fromNode() == source && sourceSearch != null) {
+			path.addAll(hierarchy.pathInCluster(source, step.toNode(), sourceSearch));
+		} else if (step.fromNode() == source) {
+			path.addAll(hierarchy.pathToEntrance(source, step.to()));
+		} else {
+			path.addAll(hierarchy.pathFromEntrance(hierarchy.getEntranceIndex(step.fromNode()), step.toNode()));
+		}
+	}
+
+	/** the number of nodes the search has expanded, counting entrances,
+	 * the nodes searched inside clusters and any by the fallback search */
+	public int getNodesExpanded() {
+		return nodesExpanded;
+	}
+
+	/** the edges of the path found, indexed by the node each leads to */
+	@Override
+	public List<NavGraphEdge> getSPT() {
+		if (fallback != null)
+			return fallback.getSPT();
+
+		NavGraphEdge[] spt = new NavGraphEdge[graph.numNodes()];
+		for (NavGraphEdge edge : path) {
+			spt[edge.to()] = edge;
+		}
+		return Arrays.asList(spt);
+	}
+
+	@Override
+	public double getCostToTarget() {
+		if (fallback != null)
+			return fallback.getCostToTarget();
+
+		double cost = 0;
+		for (NavGraphEdge edge : path) {
+			cost += edge.cost();
+		}
+		return cost;
+	}
+
+	@Override
+	public List<Integer> getPathToTarget() {
+		if (fallback != null)
+			return fallback.getPathToTarget();
+
+		List<Integer> nodes = new LinkedList<Integer>();
+		if (phase != DONE)
+			return nodes;
+
+		nodes.add(source);
+		for (NavGraphEdge edge : path) {
+			nodes.add(edge.to());
+		}
+		return nodes;
+	}
+
+	@Override
+	public List<PathEdge> getPathAsPathEdges() {
+		if (fallback != null)
+			return fallback.getPathAsPathEdges();
+
+		List<PathEdge> edges = new LinkedList<PathEdge>();
+		for (NavGraphEdge edge : path) {
+			edges.add(new PathEdge(
+					graph.getNode(edge.from()).pos(),
+					graph.getNode(edge.to()).pos(),
+					edge.flags(),
+					edge.IDOfIntersectingEntity()));
+		}
+		return edges;
+	}
+}
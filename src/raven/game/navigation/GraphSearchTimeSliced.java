@@ -29,5 +29,9 @@ public abstract class GraphSearchTimeSliced<T>  {
 	/** returns the path as a list of PathEdges */
 	public abstract List<PathEdge> getPathAsPathEdges();
 
+	/** called once the search and its results are no longer needed, so any
+	 * pooled storage it borrowed can be reused */
+	public void release() {}
+
 	public GraphSearchType getType(){ return searchType; }
 }
@@ -0,0 +1,103 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+import raven.game.RavenObject;
+import raven.game.interfaces.IRavenBot;
+import raven.game.triggers.Trigger;
+import raven.math.graph.DistanceField;
+import raven.math.graph.GraphNode;
+import raven.math.graph.SparseGraph;
+
+/**
+ * A distance field for each type of item giver (health, shotgun and so on)
+ * whose sources are the nodes of the givers that are active. The cost from
+ * a bot's node to the nearest item of a type is then one lookup, however
+ * many givers the map has.
+ *
+ * A type's field is made the first time it is asked for. After that,
+ * update() adds a giver's node back when it respawns and removes it when it
+ * is picked up, searching only the nodes whose nearest giver changes.
+ * Fields are made under a lock, so bots may ask for them while they sense.
+ */
+public class ItemDistanceFields {
+	private final SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> graph;
+	private final List<Trigger<IRavenBot>> triggers;
+	private final int version;
+
+	private final EnumMap<RavenObject, Field> fields = new EnumMap<RavenObject, Field>(RavenObject.class);
+
+	/** a type's field, its givers and whether each was active when last
+	 * looked at */
+	private static class Field {
+		DistanceField distances;
+		List<Trigger<IRavenBot>> givers = new ArrayList<Trigger<IRavenBot>>();
+		boolean[] active;
+	}
+
+	/**
+	 * @param graph the nav graph. Must not change while the fields are in
+	 * use
+	 * @param triggers the map's triggers, givers among them
+	 */
+	public ItemDistanceFields(SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> graph, List<Trigger<IRavenBot>> triggers) {
+		this.graph = graph;
+		this.triggers = triggers;
+		this.version = graph.getVersion();
+	}
+
+	/** the field for a type of giver, made first if need be */
+	public synchronized DistanceField getField(RavenObject type) {
+		Field field = fields.get(type);
+		if (field == null) {
+			field = new Field();
+			field.distances = new DistanceField(graph);
+			for (Trigger<IRavenBot> trigger : triggers) {
+				int node = trigger.graphNodeIndex();
+				if (trigger.entityType() == type && node >= 0 && node < graph.numNodes()
+						&& graph.getNode(node).index() != GraphNode.INVALID_NODE_INDEX) {
+					field.givers.add(trigger);
+				}
+			}
+			field.active = new boolean[field.givers.size()];
+			for (int i = 0; i < field.active.length; i++) {
+				if (field.givers.get(i).isActive()) {
+					field.active[i] = true;
+					field.distances.addSource(field.givers.get(i).graphNodeIndex());
+				}
+			}
+			fields.put(type, field);
+		}
+		return field.distances;
+	}
+
+	/** adds and removes the sources of every field made so far for the
+	 * givers that have respawned or been picked up since the last update */
+	public synchronized void update() {
+		for (Field field : fields.values()) {
+			for (int i = 0; i < field.active.length; i++) {
+				Trigger<IRavenBot> giver = field.givers.get(i);
+				if (giver.isActive() == field.active[i])
+					continue;
+
+				field.active[i] = giver.isActive();
+				if (field.active[i]) {
+					field.distances.addSource(giver.graphNodeIndex());
+				} else {
+					field.distances.removeSource(giver.graphNodeIndex());
+				}
+			}
+		}
+	}
+
+	/** throws every field away, to be made again for the current edge costs
+	 * as they are next asked for */
+	public synchronized void clear() {
+		fields.clear();
+	}
+
+	/** the graph version the fields were made for */
+	public int getVersion() { return version; }
+}
@@ -22,6 +22,14 @@ public class NavGraphEdge extends GraphEdge {
 	 * this is that object's ID. */
 	protected int IDOfIntersectingEntity;
 	
+	/** a blocked edge can't be crossed, say because the door it goes
+	 * through is shut. Set as the game runs, so not saved with a map */
+	transient protected boolean blocked;
+	
+	/** the edge's cost is scaled by this as the game runs, say while the
+	 * door it goes through is closed */
+	transient protected double costMultiplier = 1;
+	
 	public NavGraphEdge(int from, int to, double cost, int flags, int id) {
 		super(from, to, cost);
 		this.flags = flags;
@@ -43,10 +51,31 @@ public class NavGraphEdge extends GraphEdge {
 		cost = copy.cost;
 		flags = copy.flags;
 		IDOfIntersectingEntity = copy.IDOfIntersectingEntity;
+		blocked = copy.blocked;
+		costMultiplier = copy.costMultiplier;
+	}
+	
+	private Object readResolve() {
+		costMultiplier = 1;
+		return this;
 	}
 	
 	public NavGraphEdge clone() { return new NavGraphEdge(this); }
 	
+	/** the cost of crossing the edge as things stand: the saved cost
+	 * scaled by the multiplier, or infinite if the edge is blocked */
+	@Override
+	public double cost() { return blocked ? Double.POSITIVE_INFINITY : cost * costMultiplier; }
+	
+	/** the cost of crossing the edge when nothing is in the way, as saved
+	 * with a map */
+	public double baseCost() { return cost; }
+	
+	public boolean isBlocked() { return blocked; }
+	public void setBlocked(boolean blocked) { this.blocked = blocked; }
+	public double costMultiplier() { return costMultiplier; }
+	public void setCostMultiplier(double costMultiplier) { this.costMultiplier = costMultiplier; }
+	
 	public int flags() { return flags; }
 	public void setFlags(int flags) { this.flags = flags; }
 	public int IDOfIntersectingEntity() { return IDOfIntersectingEntity; }
@@ -0,0 +1,112 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of finished paths between pairs of graph nodes. When it
+ * is full the least recently used path is dropped. Everything in the cache
+ * is thrown away as soon as the nav graph or a door changes, since any path
+ * may then be out of date.
+ *
+ * Only used from the game thread.
+ */
+public class PathCache {
+	/** a cached path: the node indices it visits and its edges */
+	private static class CachedPath {
+		List<Integer> nodes;
+		List<PathEdge> edges;
+		double cost;
+	}
+
+	private final int capacity;
+
+	private final LinkedHashMap<Long, CachedPath> paths;
+
+	/** the graph and door versions the cached paths were found under */
+	private int graphVersion;
+	private int doorVersion;
+
+	private long hits;
+	private long misses;
+
+	/** @param capacity the most paths to keep. 0 disables the cache */
+	public PathCache(final int capacity) {
+		this.capacity = capacity;
+
+		// access ordered, so the eldest entry is the least recently used
+		paths = new LinkedHashMap<Long, CachedPath>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CachedPath> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	private static Long key(int source, int target) {
+		return ((long)source << 32) | (target & 0xffffffffL);
+	}
+
+	/** clears the cache if the graph or doors have changed since the cached
+	 * paths were found */
+	private void validate(int graphVersion, int doorVersion) {
+		if (graphVersion != this.graphVersion || doorVersion != this.doorVersion) {
+			paths.clear();
+			this.graphVersion = graphVersion;
+			this.doorVersion = doorVersion;
+		}
+	}
+
+	private static List<PathEdge> copyEdges(List<PathEdge> edges) {
+		List<PathEdge> copy = new ArrayList<PathEdge>(edges.size());
+		for (PathEdge edge : edges) {
+			copy.add(new PathEdge(edge.Source(), edge.Destination(), edge.Behavior(), edge.DoorID()));
+		}
+		return copy;
+	}
+
+	/**
+	 * looks up the path between two nodes.
+	 * @return a search holding a copy of the path, already complete, or null
+	 * if the path is not cached
+	 */
+	public GraphSearchTimeSliced<NavGraphEdge> get(int source, int target, int graphVersion, int doorVersion) {
+		if (capacity <= 0)
+			return null;
+
+		validate(graphVersion, doorVersion);
+
+		CachedPath entry = paths.get(key(source, target));
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return new CachedPathSearch(new ArrayList<Integer>(entry.nodes), copyEdges(entry.edges), entry.cost);
+	}
+
+	/** remembers the path found by a search from source to target */
+	public void put(int source, int target, int graphVersion, int doorVersion, GraphSearchTimeSliced<NavGraphEdge> search) {
+		if (capacity <= 0)
+			return;
+
+		validate(graphVersion, doorVersion);
+
+		CachedPath entry = new CachedPath();
+		entry.nodes = new ArrayList<Integer>(search.getPathToTarget());
+		entry.edges = copyEdges(search.getPathAsPathEdges());
+		entry.cost = search.getCostToTarget();
+		paths.put(key(source, target), entry);
+	}
+
+	public void clear() { paths.clear(); }
+
+	public int size() { return paths.size(); }
+	public long getHits() { return hits; }
+	public long getMisses() { return misses; }
+}
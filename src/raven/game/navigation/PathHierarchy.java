@@ -0,0 +1,509 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import raven.math.Vector2D;
+import raven.math.graph.GraphNode;
+import raven.math.graph.SparseGraph;
+import raven.utils.IndexedPriorityQueue;
+
+/**
+ * An abstract graph laid over a nav graph for hierarchical path finding
+ * (HPA*). The map is cut into square clusters and the nav graph nodes are
+ * shared out between them by position. Where edges cross from one cluster
+ * into the next, a few of them are kept as transitions, and the nodes at
+ * their ends become entrances. The abstract graph joins the entrances of
+ * each cluster to each other, at the cost of the cheapest path between them
+ * that stays inside the cluster, and across the transitions.
+ *
+ * A long search then runs over the entrances only, and the few clusters on
+ * the path it finds are searched afterwards to fill in the detail. See
+ * GraphSearchHierarchicalTS.
+ *
+ * Crossing edges that sit side by side on a cluster boundary make up one
+ * entrance. A narrow entrance keeps only its middle edge, a wide one the
+ * edges at either end, so paths found through the hierarchy can be a
+ * little longer than the shortest. Since the ends of the edges in an
+ * entrance are joined to each other on both sides, a path that crosses by
+ * any of them can cross by one that was kept instead, so on an undirected
+ * graph the abstract graph joins every pair of nodes the nav graph does.
+ *
+ * The hierarchy is not changed once it is built, so it may be read by
+ * several searches on different threads. It must be rebuilt if the graph
+ * changes; getVersion tells which graph version it was built for.
+ */
+public class PathHierarchy {
+	/** entrances at least this many edges wide keep a transition at each
+	 * end rather than one in the middle */
+	private static final int WIDE_ENTRANCE = 6;
+
+	/** one edge of the abstract graph */
+	public static class AbstractEdge {
+		private final int fromNode;
+		private final int toNode;
+		private final int to;
+		private final double cost;
+		private final NavGraphEdge edge;
+
+		AbstractEdge(int fromNode, int toNode, int to, double cost, NavGraphEdge edge) {
+			this.fromNode = fromNode;
+			this.toNode = toNode;
+			this.to = to;
+			this.cost = cost;
+			this.edge = edge;
+		}
+
+		/** the nav graph node this edge leaves from */
+		public int fromNode() { return fromNode; }
+
+		/** the nav graph node this edge leads to */
+		public int toNode() { return toNode; }
+
+		/** the index of the entrance this edge leads to */
+		public int to() { return to; }
+
+		public double cost() { return cost; }
+
+		/** the nav graph edge, if this is a transition between clusters.
+		 * null if this stands for a path inside a cluster */
+		public NavGraphEdge edge() { return edge; }
+	}
+
+	/** the result of a search kept inside one cluster. Indexed by the
+	 * nodes' positions in the cluster */
+	static class ClusterSearch {
+		final double[] costs;
+		final NavGraphEdge[] parents;
+		int expanded;
+
+		ClusterSearch(int size) {
+			costs = new double[size];
+			parents = new NavGraphEdge[size];
+		}
+	}
+
+	private final SparseGraph<? extends GraphNode, NavGraphEdge> graph;
+	private final int version;
+
+	private final double clusterSize;
+	private final int clustersX;
+	private final int clustersY;
+
+	/** the cluster of each node, -1 for removed nodes */
+	private final int[] clusterOf;
+
+	/** the position of each node in its cluster's list of nodes */
+	private final int[] localIndex;
+
+	/** the nodes in each cluster */
+	private final int[][] clusterNodes;
+
+	/** the entrance index of each node, -1 if it is not an entrance */
+	private final int[] entranceIndex;
+
+	/** the node of each entrance */
+	private final int[] entrances;
+
+	/** the entrance indices of the entrances in each cluster */
+	private final int[][] clusterEntrances;
+
+	/** the abstract edges leaving each entrance */
+	private final List<List<AbstractEdge>> abstractEdges;
+
+	/** the cheapest paths inside its cluster from each entrance to every
+	 * node of the cluster. Kept so that paths can be filled in, and joined
+	 * to the entrances, without searching again */
+	private final ClusterSearch[] entranceSearches;
+
+	private int numTransitions;
+
+	/**
+	 * @param graph the nav graph
+	 * @param sizeX the width of the map
+	 * @param sizeY the height of the map
+	 * @param clusterSize the width and height of a cluster
+	 */
+	public PathHierarchy(SparseGraph<? extends GraphNode, NavGraphEdge> graph, double sizeX, double sizeY, double clusterSize) {
+		if (clusterSize <= 0)
+			throw new IllegalArgumentException("PathHierarchy: cluster size must be positive, not " + clusterSize);
+
+		this.graph = graph;
+		this.version = graph.getVersion();
+		this.clusterSize = clusterSize;
+		clustersX = Math.max(1, (int)Math.ceil(sizeX / clusterSize));
+		clustersY = Math.max(1, (int)Math.ceil(sizeY / clusterSize));
+
+		int numNodes = graph.numNodes();
+		int numClusters = clustersX * clustersY;
+
+		// share the nodes out between the clusters
+		clusterOf = new int[numNodes];
+		localIndex = new int[numNodes];
+		List<List<Integer>> members = new ArrayList<List<Integer>>(numClusters);
+		for (int i = 0; i < numClusters; i++) {
+			members.add(new ArrayList<Integer>());
+		}
+		for (int node = 0; node < numNodes; node++) {
+			GraphNode graphNode = graph.getNode(node);
+			if (graphNode.index() == GraphNode.INVALID_NODE_INDEX) {
+				clusterOf[node] = -1;
+				localIndex[node] = -1;
+				continue;
+			}
+
+			int cluster = clusterAt(graphNode.pos());
+			clusterOf[node] = cluster;
+			localIndex[node] = members.get(cluster).size();
+			members.get(cluster).add(node);
+		}
+
+		clusterNodes = new int[numClusters][];
+		for (int i = 0; i < numClusters; i++) {
+			clusterNodes[i] = toArray(members.get(i));
+		}
+
+		// pick the transitions, and so the entrances
+		entranceIndex = new int[numNodes];
+		Arrays.fill(entranceIndex, -1);
+		List<Integer> entranceNodes = new ArrayList<Integer>();
+		List<NavGraphEdge> transitions = new ArrayList<NavGraphEdge>();
+
+		for (List<NavGraphEdge> crossing : findCrossingEdges().values()) {
+			for (List<NavGraphEdge> entrance : splitIntoEntrances(crossing)) {
+				if (entrance.size() < WIDE_ENTRANCE) {
+					transitions.add(entrance.get(entrance.size() / 2));
+				} else {
+					transitions.add(entrance.get(0));
+					transitions.add(entrance.get(entrance.size() - 1));
+				}
+			}
+		}
+
+		for (NavGraphEdge transition : transitions) {
+			addEntrance(transition.from(), entranceNodes);
+			addEntrance(transition.to(), entranceNodes);
+		}
+
+		entrances = toArray(entranceNodes);
+
+		abstractEdges = new ArrayList<List<AbstractEdge>>(entrances.length);
+		for (int i = 0; i < entrances.length; i++) {
+			abstractEdges.add(new ArrayList<AbstractEdge>());
+		}
+
+		List<List<Integer>> entrancesByCluster = new ArrayList<List<Integer>>(numClusters);
+		for (int i = 0; i < numClusters; i++) {
+			entrancesByCluster.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < entrances.length; i++) {
+			entrancesByCluster.get(clusterOf[entrances[i]]).add(i);
+		}
+		clusterEntrances = new int[numClusters][];
+		for (int i = 0; i < numClusters; i++) {
+			clusterEntrances[i] = toArray(entrancesByCluster.get(i));
+		}
+
+		// join the clusters across the transitions. Undirected graphs only
+		// gave one direction of each crossing
+		for (NavGraphEdge transition : transitions) {
+			addTransition(transition);
+			if (!graph.isDigraph() && graph.isEdgePresent(transition.to(), transition.from())) {
+				addTransition(graph.getEdge(transition.to(), transition.from()));
+			}
+		}
+
+		// and join the entrances of each cluster to each other
+		entranceSearches = new ClusterSearch[entrances.length];
+		for (int cluster = 0; cluster < numClusters; cluster++) {
+			for (int from : clusterEntrances[cluster]) {
+				ClusterSearch search = searchCluster(entrances[from], -1);
+				entranceSearches[from] = search;
+				for (int to : clusterEntrances[cluster]) {
+					double cost = search.costs[localIndex[entrances[to]]];
+					if (to != from && cost != Double.MAX_VALUE) {
+						abstractEdges.get(from).add(new AbstractEdge(entrances[from], entrances[to], to, cost, null));
+					}
+				}
+			}
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	private int clusterAt(Vector2D pos) {
+		int x = Math.min(clustersX - 1, Math.max(0, (int)(pos.x / clusterSize)));
+		int y = Math.min(clustersY - 1, Math.max(0, (int)(pos.y / clusterSize)));
+		return y * clustersX + x;
+	}
+
+	private void addEntrance(int node, List<Integer> entranceNodes) {
+		if (entranceIndex[node] < 0) {
+			entranceIndex[node] = entranceNodes.size();
+			entranceNodes.add(node);
+		}
+	}
+
+	private void addTransition(NavGraphEdge edge) {
+		int from = entranceIndex[edge.from()];
+		int to = entranceIndex[edge.to()];
+		abstractEdges.get(from).add(new AbstractEdge(edge.from(), edge.to(), to, edge.cost(), edge));
+		numTransitions++;
+	}
+
+	/** the edges crossing between each pair of clusters. On an undirected
+	 * graph only the edges leaving the lower numbered cluster */
+	private Map<Long, List<NavGraphEdge>> findCrossingEdges() {
+		Map<Long, List<NavGraphEdge>> crossing = new LinkedHashMap<Long, List<NavGraphEdge>>();
+
+		for (int node = 0; node < clusterOf.length; node++) {
+			if (clusterOf[node] < 0)
+				continue;
+
+			for (NavGraphEdge edge : graph.getEdges(node)) {
+				int from = clusterOf[node];
+				int to = clusterOf[edge.to()];
+				if (to < 0 || to == from || (!graph.isDigraph() && to < from) || edge.isBlocked())
+					continue;
+
+				Long key = (long)from * clusterNodes.length + to;
+				List<NavGraphEdge> edges = crossing.get(key);
+				if (edges == null) {
+					edges = new ArrayList<NavGraphEdge>();
+					crossing.put(key, edges);
+				}
+				edges.add(edge);
+			}
+		}
+
+		return crossing;
+	}
+
+	/** splits the edges crossing between two clusters into entrances:
+	 * groups of edges side by side, whose ends on both sides are the same
+	 * or joined by an edge. Each entrance is sorted along the boundary */
+	private List<List<NavGraphEdge>> splitIntoEntrances(List<NavGraphEdge> crossing) {
+		int[] group = new int[crossing.size()];
+		Map<Integer, List<Integer>> edgesFromNode = new HashMap<Integer, List<Integer>>();
+		for (int i = 0; i < crossing.size(); i++) {
+			group[i] = i;
+			List<Integer> fromNode = edgesFromNode.get(crossing.get(i).from());
+			if (fromNode == null) {
+				fromNode = new ArrayList<Integer>();
+				edgesFromNode.put(crossing.get(i).from(), fromNode);
+			}
+			fromNode.add(i);
+		}
+
+		for (int i = 0; i < crossing.size(); i++) {
+			NavGraphEdge edge = crossing.get(i);
+
+			List<Integer> nearby = new ArrayList<Integer>(edgesFromNode.get(edge.from()));
+			for (NavGraphEdge inside : graph.getEdges(edge.from())) {
+				List<Integer> fromNeighbor = edgesFromNode.get(inside.to());
+				if (fromNeighbor != null) {
+					nearby.addAll(fromNeighbor);
+				}
+			}
+
+			for (int j : nearby) {
+				int to = crossing.get(j).to();
+				if (to == edge.to() || graph.isEdgePresent(edge.to(), to)) {
+					union(group, i, j);
+				}
+			}
+		}
+
+		Map<Integer, List<NavGraphEdge>> byGroup = new LinkedHashMap<Integer, List<NavGraphEdge>>();
+		for (int i = 0; i < crossing.size(); i++) {
+			int root = find(group, i);
+			List<NavGraphEdge> entrance = byGroup.get(root);
+			if (entrance == null) {
+				entrance = new ArrayList<NavGraphEdge>();
+				byGroup.put(root, entrance);
+			}
+			entrance.add(crossing.get(i));
+		}
+
+		// sort along the boundary, which runs across the line between the
+		// two clusters' centers
+		NavGraphEdge any = crossing.get(0);
+		final Vector2D across = clusterCenter(clusterOf[any.to()]).sub(clusterCenter(clusterOf[any.from()])).perp();
+		Comparator<NavGraphEdge> alongBoundary = new Comparator<NavGraphEdge>() {
+			@Override
+			public int compare(NavGraphEdge a, NavGraphEdge b) {
+				return Double.compare(midpoint(a).dot(across), midpoint(b).dot(across));
+			}
+		};
+
+		List<List<NavGraphEdge>> entrances = new ArrayList<List<NavGraphEdge>>(byGroup.values());
+		for (List<NavGraphEdge> entrance : entrances) {
+			Collections.sort(entrance, alongBoundary);
+		}
+		return entrances;
+	}
+
+	private static int find(int[] group, int i) {
+		while (group[i] != i) {
+			group[i] = group[group[i]];
+			i = group[i];
+		}
+		return i;
+	}
+
+	private static void union(int[] group, int a, int b) {
+		group[find(group, a)] = find(group, b);
+	}
+
+	private Vector2D clusterCenter(int cluster) {
+		return new Vector2D(((cluster % clustersX) + 0.5) * clusterSize, ((cluster / clustersX) + 0.5) * clusterSize);
+	}
+
+	private Vector2D midpoint(NavGraphEdge edge) {
+		return graph.getNode(edge.from()).pos().add(graph.getNode(edge.to()).pos()).mul(0.5);
+	}
+
+	/** Dijkstra's algorithm from source, kept to the nodes in its cluster.
+	 * Stops once target is reached, or searches the whole cluster if target
+	 * is -1 */
+	ClusterSearch searchCluster(int source, int target) {
+		int cluster = clusterOf[source];
+		int[] nodes = clusterNodes[cluster];
+
+		ClusterSearch search = new ClusterSearch(nodes.length);
+		Arrays.fill(search.costs, Double.MAX_VALUE);
+
+		IndexedPriorityQueue queue = new IndexedPriorityQueue(search.costs, nodes.length);
+		search.costs[localIndex[source]] = 0;
+		queue.insert(localIndex[source]);
+
+		while (!queue.isEmpty()) {
+			int next = nodes[queue.pop()];
+			search.expanded++;
+
+			if (next == target)
+				break;
+
+			for (NavGraphEdge edge : graph.getEdges(next)) {
+				if (clusterOf[edge.to()] != cluster || edge.isBlocked())
+					continue;
+
+				int local = localIndex[edge.to()];
+				double cost = search.costs[localIndex[next]] + edge.cost();
+				if (search.costs[local] == Double.MAX_VALUE) {
+					search.costs[local] = cost;
+					search.parents[local] = edge;
+					queue.insert(local);
+				} else if (cost < search.costs[local] && queue.contains(local)) {
+					search.costs[local] = cost;
+					search.parents[local] = edge;
+					queue.changePriority(local);
+				}
+			}
+		}
+
+		return search;
+	}
+
+	/** the edges of the cheapest path from source to target inside their
+	 * cluster, which must be the same, or null if there is none */
+	List<NavGraphEdge> pathInCluster(int source, int target, ClusterSearch search) {
+		if (search.costs[localIndex[target]] == Double.MAX_VALUE)
+			return null;
+
+		LinkedList<NavGraphEdge> path = new LinkedList<NavGraphEdge>();
+		for (int node = target; node != source; ) {
+			NavGraphEdge edge = search.parents[localIndex[node]];
+			path.addFirst(edge);
+			node = edge.from();
+		}
+		return path;
+	}
+
+	/** the cost in search of the path to node, or Double.MAX_VALUE if it
+	 * was not reached */
+	double costInCluster(ClusterSearch search, int node) {
+		return search.costs[localIndex[node]];
+	}
+
+	/** the cost of the cheapest path from the entrance to the node that
+	 * stays inside their cluster, or Double.MAX_VALUE if there is none */
+	public double costFromEntrance(int entrance, int node) {
+		if (clusterOf[node] != clusterOf[entrances[entrance]])
+			return Double.MAX_VALUE;
+
+		return costInCluster(entranceSearches[entrance], node);
+	}
+
+	/** the edges of the cheapest path from the entrance to the node inside
+	 * their cluster, or null if there is none */
+	public List<NavGraphEdge> pathFromEntrance(int entrance, int node) {
+		if (clusterOf[node] != clusterOf[entrances[entrance]])
+			return null;
+
+		return pathInCluster(entrances[entrance], node, entranceSearches[entrance]);
+	}
+
+	/** the edges of the cheapest path from the node to the entrance inside
+	 * their cluster, or null if there is none. Only for undirected graphs,
+	 * where it is the path from the entrance turned round */
+	public List<NavGraphEdge> pathToEntrance(int node, int entrance) {
+		List<NavGraphEdge> fromEntrance = pathFromEntrance(entrance, node);
+		if (fromEntrance == null)
+			return null;
+
+		LinkedList<NavGraphEdge> path = new LinkedList<NavGraphEdge>();
+		for (NavGraphEdge edge : fromEntrance) {
+			path.addFirst(graph.getEdge(edge.to(), edge.from()));
+		}
+		return path;
+	}
+
+	/** the cluster the node is in, -1 if it has been removed */
+	public int getCluster(int node) { return clusterOf[node]; }
+
+	/** the number of clusters between the two nodes' clusters, across or
+	 * down, whichever is more */
+	public int clusterDistance(int node1, int node2) {
+		int c1 = clusterOf[node1];
+		int c2 = clusterOf[node2];
+		return Math.max(Math.abs(c1 % clustersX - c2 % clustersX), Math.abs(c1 / clustersX - c2 / clustersX));
+	}
+
+	/** the indices of the entrances in the cluster */
+	public int[] getClusterEntrances(int cluster) { return clusterEntrances[cluster]; }
+
+	/** the entrance index of the node, or -1 if it is not an entrance */
+	public int getEntranceIndex(int node) { return entranceIndex[node]; }
+
+	/** the node of the given entrance */
+	public int getEntranceNode(int entrance) { return entrances[entrance]; }
+
+	/** the abstract edges leaving the given entrance */
+	public List<AbstractEdge> getAbstractEdges(int entrance) { return abstractEdges.get(entrance); }
+
+	public int numClusters() { return clusterNodes.length; }
+
+	public int numEntrances() { return entrances.length; }
+
+	/** the number of abstract edges that cross between clusters */
+	public int numTransitions() { return numTransitions; }
+
+	/** the version of the graph this was built for */
+	public int getVersion() { return version; }
+
+	public SparseGraph<? extends GraphNode, NavGraphEdge> getGraph() { return graph; }
+}
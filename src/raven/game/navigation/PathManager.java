@@ -1,18 +1,113 @@
 package raven.game.navigation;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import raven.math.graph.GraphSearchStatus;
+import raven.utils.Log;
 
 public class PathManager {
 	private List<RavenPathPlanner> searchRequests;
 	private int numSearchCyclesPerUpdate;
 
+	/** workspaces left by finished searches, ready for the next ones */
+	private List<SearchWorkspace> freeWorkspaces;
+
+	/** runs searches off the game thread. null when searching serially */
+	private ExecutorService executor;
+
+	/** the searches handed to the workers during the last update */
+	private Map<RavenPathPlanner, Future<GraphSearchStatus>> searchesInFlight;
+
+	/** paths found by earlier searches */
+	private PathCache pathCache;
+
+	/** planners whose request was answered from the cache, to be told at the
+	 * next update */
+	private List<RavenPathPlanner> cachedResults;
+
+	/** runs one search on a worker until it terminates or uses up its cycles */
+	private static class SearchTask implements Callable<GraphSearchStatus> {
+		private GraphSearchTimeSliced<NavGraphEdge> search;
+		private int numCycles;
+
+		public SearchTask(GraphSearchTimeSliced<NavGraphEdge> search, int numCycles) {
+			this.search = search;
+			this.numCycles = numCycles;
+		}
+
+		@Override
+		public GraphSearchStatus call() {
+			GraphSearchStatus result = GraphSearchStatus.SEARCH_INCOMPLETE;
+
+			for (int i = 0; i < numCycles && result == GraphSearchStatus.SEARCH_INCOMPLETE; i++) {
+				result = search.cycleOnce();
+			}
+
+			return result;
+		}
+	}
+
 	public PathManager(int numCyclesPerUpdate) {
+		this(numCyclesPerUpdate, 1, 0);
+	}
+
+	/**
+	 * @param numCyclesPerUpdate the search cycles shared by all searches each
+	 * update, or given to each search when searching in parallel
+	 * @param numThreads the number of worker threads to search with. 1
+	 * searches serially on the game thread, 0 uses one thread per processor
+	 * @param pathCacheSize the number of finished paths to remember. 0 turns
+	 * the cache off
+	 */
+	public PathManager(int numCyclesPerUpdate, int numThreads, int pathCacheSize) {
 		this.numSearchCyclesPerUpdate = numCyclesPerUpdate;
 		searchRequests = new LinkedList<RavenPathPlanner>();
+		freeWorkspaces = new ArrayList<SearchWorkspace>();
+		searchesInFlight = new HashMap<RavenPathPlanner, Future<GraphSearchStatus>>();
+		pathCache = new PathCache(pathCacheSize);
+		cachedResults = new ArrayList<RavenPathPlanner>();
+
+		if (numThreads <= 0) {
+			numThreads = Runtime.getRuntime().availableProcessors();
+		}
+
+		if (numThreads > 1) {
+			Log.info("PathManager", "Searching with " + numThreads + " threads");
+
+			executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "raven-search");
+					// never keep the game alive on our account
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/** hands out a workspace for a new search, reusing a released one if
+	 * there is one */
+	public synchronized SearchWorkspace acquireWorkspace() {
+		if (freeWorkspaces.isEmpty())
+			return new SearchWorkspace();
+
+		return freeWorkspaces.remove(freeWorkspaces.size() - 1);
+	}
+
+	/** takes back a workspace once its search is no longer needed */
+	public synchronized void releaseWorkspace(SearchWorkspace workspace) {
+		freeWorkspaces.add(workspace);
 	}
 
 	public void Register(RavenPathPlanner pathPlanner){
@@ -21,21 +116,101 @@ public class PathManager {
 			searchRequests.add(pathPlanner);
 	}
 
+	/** registers a planner whose search came from the path cache. It needs
+	 * no search cycles, and is told its path is ready at the next update */
+	public void RegisterCachedResult(RavenPathPlanner pathPlanner){
+		if (!cachedResults.contains(pathPlanner))
+			cachedResults.add(pathPlanner);
+	}
+
+	/** removes the planner's search. If a worker is still running it this
+	 * waits for it to stop, so the planner is free to discard the search */
 	public void UnRegister(RavenPathPlanner pathPlanner){
+		Future<GraphSearchStatus> inFlight = searchesInFlight.remove(pathPlanner);
+		if (inFlight != null) {
+			waitFor(inFlight);
+		}
+
 		searchRequests.remove(pathPlanner);
+		cachedResults.remove(pathPlanner);
 	}
 
 	//returns the amount of path requests currently active.
 	public int  GetNumActiveSearches(){ return searchRequests.size(); }
 
+	public PathCache getPathCache() { return pathCache; }
+
+	/** true if searches are run on worker threads */
+	public boolean isParallel() { return executor != null; }
+
+	/** waits for the searches running on the workers to use up their
+	 * cycles, so the nav graph may be changed. Their results are still
+	 * collected at the next update */
+	public void waitForSearches() {
+		for (Future<GraphSearchStatus> inFlight : searchesInFlight.values()) {
+			waitFor(inFlight);
+		}
+	}
+
+	/** tells the searches not yet finished that edge costs have changed.
+	 * Call after waitForSearches and the change. A search whose costs were
+	 * changed forgets what the workers last got from it, and is run again
+	 * at the next update */
+	public void edgeCostsChanged() {
+		for (RavenPathPlanner planner : searchRequests) {
+			if (planner.edgeCostsChanged()) {
+				searchesInFlight.remove(planner);
+			}
+		}
+	}
+
+	/** waits for any searches still running and stops the worker threads */
+	public void shutdown() {
+		for (Future<GraphSearchStatus> inFlight : searchesInFlight.values()) {
+			waitFor(inFlight);
+		}
+		searchesInFlight.clear();
+
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private GraphSearchStatus waitFor(Future<GraphSearchStatus> inFlight) {
+		try {
+			return inFlight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return GraphSearchStatus.SEARCH_INCOMPLETE;
+		} catch (ExecutionException e) {
+			throw new RuntimeException("PathManager: path search failed", e.getCause());
+		}
+	}
+
 	/** This method iterates through all the active path planning requests
 	 * updating their searches until the user specified total number of search
 	 * cycles has been satisfied.
-	 * 
+	 *
 	 * If a path is found or the search is unsuccessful the relevant agent is
 	 * notified accordingly by Telegram */
 	public void updateSearches()
 	{
+		// answer the requests the cache could satisfy. Telling a bot may
+		// start another request, so work from a copy
+		if (!cachedResults.isEmpty()) {
+			List<RavenPathPlanner> ready = new ArrayList<RavenPathPlanner>(cachedResults);
+			cachedResults.clear();
+			for (RavenPathPlanner planner : ready) {
+				planner.notifySearchResult(GraphSearchStatus.TARGET_FOUND);
+			}
+		}
+
+		if (executor != null) {
+			updateSearchesInParallel();
+			return;
+		}
+
 		int NumCyclesRemaining = numSearchCyclesPerUpdate;
 
 		//iterate through the search requests until either all requests have been
@@ -61,4 +236,35 @@ public class PathManager {
 
 		}
 	}
+
+	/** Collects the searches the workers ran since the last update and lets
+	 * their bots know of any that terminated, then hands every search still
+	 * active to the workers. Each search gets its own budget of cycles, so a
+	 * bot's wait for a path does not grow with the number of bots searching.
+	 * The nav graph is only read while the workers run. */
+	private void updateSearchesInParallel()
+	{
+		// gather the results first: notifying a bot may start a new search
+		List<RavenPathPlanner> finished = new ArrayList<RavenPathPlanner>();
+		List<GraphSearchStatus> results = new ArrayList<GraphSearchStatus>();
+		for (Map.Entry<RavenPathPlanner, Future<GraphSearchStatus>> inFlight : searchesInFlight.entrySet()) {
+			GraphSearchStatus result = waitFor(inFlight.getValue());
+
+			if (result == GraphSearchStatus.TARGET_FOUND || result == GraphSearchStatus.TARGET_NOT_FOUND) {
+				finished.add(inFlight.getKey());
+				results.add(result);
+			}
+		}
+		searchesInFlight.clear();
+		searchRequests.removeAll(finished);
+
+		for (int i = 0; i < finished.size(); i++) {
+			finished.get(i).notifySearchResult(results.get(i));
+		}
+
+		for (RavenPathPlanner planner : searchRequests) {
+			searchesInFlight.put(planner, executor.submit(
+					new SearchTask(planner.getCurrentSearch(), numSearchCyclesPerUpdate)));
+		}
+	}
 }
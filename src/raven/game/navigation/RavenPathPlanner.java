@@ -10,8 +10,8 @@ import raven.game.interfaces.IRavenBot;
 import raven.game.RavenGame;
 import raven.game.RavenMap;
 import raven.game.RavenObject;
-import raven.math.CellSpacePartition;
 import raven.math.Vector2D;
+import raven.math.graph.DistanceField;
 import raven.math.graph.GraphEdge;
 import raven.math.graph.GraphNode;
 import raven.math.graph.GraphSearchDijkstra;
@@ -47,6 +47,24 @@ public class RavenPathPlanner {
 	// The destination position
 	private Vector2D destinationPos;
 
+	// The graph nodes the current A* search runs between, used to cache
+	// the path it finds
+	private int searchSourceNode = GraphNode.INVALID_NODE_INDEX;
+	private int searchTargetNode = GraphNode.INVALID_NODE_INDEX;
+
+	// On maps with doors, the last D* Lite search made. Kept so that a
+	// later request for the same target need only repair what the doors
+	// changed
+	private GraphSearchDStarLiteTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>,NavGraphEdge>> replanner;
+
+	// The nodes near a position, when the lookup grid lists none the owner
+	// can reach. Kept here rather than in the map's cell space so that bots
+	// may look up their closest node concurrently while they sense
+	private List<NavGraphNode<Trigger<IRavenBot>>> nearbyNodes = new ArrayList<NavGraphNode<Trigger<IRavenBot>>>();
+
+	// The lookup grid's candidates for a position, grown to fit the grid
+	private int[] candidates = new int[0];
+
 	public RavenPathPlanner() {
 		getReadyForNewSearch();
 	}
@@ -60,6 +78,24 @@ public class RavenPathPlanner {
 	/** returns the index of the closest visible graph node to the given position */
 	private int getClosestNodeToPosition(Vector2D pos)
 	{
+		//the lookup grid lists the nodes nearest this part of the map, nearest
+		//pos first. If the owner can walk to the nearest it is the closest
+		//visible node, and only that one check is needed
+		ClosestNodeGrid grid = owner.getWorld().getMap().getClosestNodeGrid();
+		if (grid != null)
+		{
+			if (candidates.length < grid.getMaxCandidates())
+			{
+				candidates = new int[grid.getMaxCandidates()];
+			}
+			if (grid.getCandidates(pos, candidates) > 0
+					&& owner.canWalkBetween(pos, navGraph.getNode(candidates[0]).pos()))
+			{
+				return candidates[0];
+			}
+		}
+
+		//the nearest can't be reached, so search all the nearby nodes
 		double closestSoFar = Double.MAX_VALUE;
 		int closestNode = GraphNode.INVALID_NODE_INDEX;
 
@@ -69,11 +105,10 @@ public class RavenPathPlanner {
 		double range = owner.getWorld().getMap().getCellSpaceNeighborhoodRange();
 
 		//calculate the graph nodes that are neighboring this position
-		owner.getWorld().getMap().getCellSpace().calculateNeighbors(pos, range);
+		owner.getWorld().getMap().getCellSpace().calculateNeighbors(pos, range, nearbyNodes);
 
 		//iterate through the neighbors and sum up all the position vectors
-		CellSpacePartition<NavGraphNode<Trigger<IRavenBot>>> nodes= owner.getWorld().getMap().getCellSpace();
-		for (NavGraphNode<Trigger<IRavenBot>> node : nodes)
+		for (NavGraphNode<Trigger<IRavenBot>> node : nearbyNodes)
 		{
 			//if the path between this node and pos is unobstructed calculate the
 			//distance
@@ -93,69 +128,77 @@ public class RavenPathPlanner {
 		return closestNode;
 	}
 
+	/** true if the owner could move in a straight line between two
+	 * positions without touching a wall */
+	private final WalkabilityTest ownerCanWalk = new WalkabilityTest() {
+		@Override
+		public boolean canWalkBetween(Vector2D from, Vector2D to) {
+			return !owner.getWorld().getMap().getWallGrid().doWallsIntersectCapsule(from, to, owner.getBRadius());
+		}
+	};
+
 	/** smooths a path by removing extraneous edges. (may not remove all
 	 * extraneous edges) */
-	private void smoothPathEdgesQuick(List<PathEdge> Path)
+	public static void smoothPathEdgesQuick(List<PathEdge> path, WalkabilityTest walkable)
 	{
-		// TODO
-		//create a couple of iterators and point them at the front of the path
-		List<PathEdge> e1=Path;
-		List<PathEdge> e2=Path;
-		//increment e2 so it points to the edge following e1.
-
-		//while e2 is not the last edge in the path, step through the edges checking
-		//to see if the agent can move without obstruction from the source node of
-		//e1 to the destination node of e2. If the agent can move between those 
-		//positions then the two edges are replaced with a single edge.
-		for(int i=0;i<e2.size();i++){
-			if ( e2.get(i+1).Behavior()== 0 &&    owner.canWalkBetween(e1.get(i).Source(), e2.get(i+1).Destination()))
+		//e1 is the edge being extended, e2 the edge following it
+		int e1 = 0;
+		int e2 = 1;
+
+		//while e2 is not past the last edge in the path, step through the
+		//edges checking to see if the agent can move without obstruction from
+		//the source node of e1 to the destination node of e2. If the agent can
+		//move between those positions then the two edges are replaced with a
+		//single edge.
+		while (e2 < path.size())
+		{
+			PathEdge edge1 = path.get(e1);
+			PathEdge edge2 = path.get(e2);
+
+			if (edge1.Behavior() == NavGraphEdge.NORMAL && edge2.Behavior() == NavGraphEdge.NORMAL &&
+					walkable.canWalkBetween(edge1.Source(), edge2.Destination()))
 			{
-				e1.get(i).SetDestination(e2.get(i+1).Destination());
-				e2.remove(i+1);
-				//Path.remove(e2.get(i+1));
+				edge1.SetDestination(edge2.Destination());
+				path.remove(e2);
 			}
 			else
 			{
 				e1 = e2;
+				++e2;
 			}
 		}
-		Path=e2;
 	}
 
 
-	/** smooths a path by removing extraneous edges. (removes *all* extraneous
-	 * edges) */
-	private void smoothPathEdgesPrecise(List<PathEdge> Path)
+	/** smooths a path by removing extraneous edges. (removes *all*
+	 * extraneous edges) */
+	public static void smoothPathEdgesPrecise(List<PathEdge> path, WalkabilityTest walkable)
 	{
-		// TODO
-
-		//create a couple of iterators
-		List<PathEdge> e1=Path;
-		List<PathEdge> e2=Path;
-
-
-		for(int i=0;i<e1.size();i++) {
-			e2=e1;
-			//while e2 is not the last edge in the path, step through the edges
-			//checking to see if the agent can move without obstruction from the 
-			//source node of e1 to the destination node of e2. If the agent can move
-			//between those positions then the any edges between e1 and e2 are
-			//replaced with a single edge.
-			for(int j=1; j<e2.size();j++){
+		for (int e1 = 0; e1 < path.size(); e1++)
+		{
+			PathEdge edge1 = path.get(e1);
+			if (edge1.Behavior() != NavGraphEdge.NORMAL)
+				continue;
+
+			//step through the edges after e1 checking to see if the agent can
+			//move without obstruction from the source node of e1 to the
+			//destination node of e2. If the agent can move between those
+			//positions then the edges from e1 to e2 are replaced with a
+			//single edge. Edges that aren't normal (doors and the like)
+			//can't be skipped, so the search stops at one.
+			for (int e2 = e1 + 1; e2 < path.size(); e2++)
+			{
+				PathEdge edge2 = path.get(e2);
+				if (edge2.Behavior() != NavGraphEdge.NORMAL)
+					break;
 
-				//check for obstruction, adjust and remove the edges accordingly
-				if ( e2.get(j).Behavior()== 0 &&    owner.canWalkBetween(e1.get(i).Source(), e2.get(j).Destination()))
+				if (walkable.canWalkBetween(edge1.Source(), edge2.Destination()))
 				{
-					e1.get(i).SetDestination(e2.get(j).Destination());
-					e2.remove(j);
-					e1=e2;
-					--i;	}
-				else
-				{
-					++j;
+					edge1.SetDestination(edge2.Destination());
+					path.subList(e1 + 1, e2 + 1).clear();
+					e2 = e1;
 				}
 			}
-			Path=e2;
 		}
 	}
 
@@ -165,6 +208,8 @@ public class RavenPathPlanner {
 		owner.getWorld().getPathManager().UnRegister(this);
 
 		//clean up memory used by any existing search
+		if (currentSearch != null)
+			currentSearch.release();
 		currentSearch = null;
 	}
 
@@ -188,7 +233,7 @@ public class RavenPathPlanner {
 			return false; 
 		}
 
-		currentSearch = new GraphSearchDijkstraTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>,NavGraphEdge>>(navGraph, ClosestNodeToBot, type);
+		currentSearch = new GraphSearchDijkstraTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>,NavGraphEdge>>(navGraph, ClosestNodeToBot, type, owner.getWorld().getPathManager());
 		searchType = GraphSearchType.Dijkstra;
 		
 		//register the search with the path manager
@@ -248,12 +293,44 @@ public class RavenPathPlanner {
 			Log.trace("PathPlanner", "Closest node to target is " + ClosestNodeToTarget);
 		}
 		
-		//create an instance of a the distributed A* search class
-		currentSearch = new GraphSearchAStarTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>,NavGraphEdge>>(navGraph, ClosestNodeToBot, ClosestNodeToTarget);
+		searchSourceNode = ClosestNodeToBot;
+		searchTargetNode = ClosestNodeToTarget;
 		searchType = GraphSearchType.AStar;
+
+		//if this path has been found before there is no need to search again
+		PathManager pathManager = owner.getWorld().getPathManager();
+		currentSearch = pathManager.getPathCache().get(ClosestNodeToBot, ClosestNodeToTarget,
+				navGraph.getVersion(), owner.getWorld().getMap().getDoorStateVersion());
+		if (currentSearch != null) {
+			pathManager.RegisterCachedResult(this);
+			return true;
+		}
+
+		//create an instance of a the distributed A* search class. Paths
+		//that cross several clusters are searched for hierarchically, and
+		//on maps with doors a search is kept that can be repaired as they
+		//open and close
+		RavenMap map = owner.getWorld().getMap();
+		List<NavGraphEdge> doorEdges = map.getDoorEdges();
+		PathHierarchy hierarchy = doorEdges.isEmpty() ? map.getPathHierarchy() : null;
+		if (!doorEdges.isEmpty()) {
+			if (replanner != null && replanner.getTarget() == ClosestNodeToTarget && replanner.getGraphVersion() == navGraph.getVersion()) {
+				replanner.restart(ClosestNodeToBot);
+			} else {
+				replanner = new GraphSearchDStarLiteTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>,NavGraphEdge>>(navGraph,
+						ClosestNodeToBot, ClosestNodeToTarget, map.getPathHeuristic(), doorEdges);
+			}
+			currentSearch = replanner;
+		} else if (hierarchy != null && hierarchy.clusterDistance(ClosestNodeToBot, ClosestNodeToTarget) > 1) {
+			currentSearch = new GraphSearchHierarchicalTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>,NavGraphEdge>>(navGraph, hierarchy,
+					ClosestNodeToBot, ClosestNodeToTarget, pathManager, map.getPathHeuristic());
+		} else {
+			currentSearch = new GraphSearchAStarTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>,NavGraphEdge>>(navGraph, ClosestNodeToBot, ClosestNodeToTarget, pathManager,
+					map.getPathHeuristic());
+		}
 		
 		//and register the search with the path manager
-		owner.getWorld().getPathManager().Register(this);
+		pathManager.Register(this);
 		return true;
 	}
 	
@@ -267,7 +344,8 @@ public class RavenPathPlanner {
 		if (currentSearch == null)
 			throw new RuntimeException("RavenPathPlanner#getPath called without a search!");
 
-		List<PathEdge> path = currentSearch.getPathAsPathEdges();
+		//smoothing removes edges from the middle, so work on an array
+		List<PathEdge> path = new ArrayList<PathEdge>(currentSearch.getPathAsPathEdges());
 		int closest = getClosestNodeToPosition(owner.pos());
 
 		path.add(0, new PathEdge(owner.pos(), getNodePosition(closest),NavGraphEdge.NORMAL, 0));
@@ -283,12 +361,12 @@ public class RavenPathPlanner {
 		//smooth paths if required
 		if (RavenUserOptions.smoothPathsQuick)
 		{
-			smoothPathEdgesQuick(path);
+			smoothPathEdgesQuick(path, ownerCanWalk);
 		}
 
 		if (RavenUserOptions.smoothPathsPrecise)
 		{
-			smoothPathEdgesPrecise(path);
+			smoothPathEdgesPrecise(path, ownerCanWalk);
 		}
 
 		return path;
@@ -310,8 +388,9 @@ public class RavenPathPlanner {
 	}
 
 	/** returns the cost to the closest instance of the giver type. This
-	 * method makes use of the pre-calculated lookup table. Returns -1 if no
-	 * active trigger found */
+	 * method reads the type's distance field, or the pre-calculated lookup
+	 * table if the fields are turned off. Returns -1 if no active trigger
+	 * found */
 	public Double getCostToClosestItem(RavenObject giverType) {
 		//find the closest visible node to the bots position
 		int node = getClosestNodeToPosition(owner.pos());
@@ -320,6 +399,12 @@ public class RavenPathPlanner {
 		if (node == GraphNode.INVALID_NODE_INDEX)
 			return -1.0;
 
+		ItemDistanceFields fields = owner.getWorld().getMap().getItemDistanceFields();
+		if (fields != null) {
+			double cost = fields.getField(giverType).getCost(node);
+			return cost == DistanceField.NO_SOURCE ? -1.0 : cost;
+		}
+
 		double ClosestSoFar = Double.MAX_VALUE;
 
 		//iterate through all the triggers to find the closest *active* trigger of 
@@ -355,6 +440,33 @@ public class RavenPathPlanner {
 
 		GraphSearchStatus result = currentSearch.cycleOnce();
 
+		notifySearchResult(result);
+
+		return result;
+	}
+
+	/** called when the door edges change cost while this planner's search
+	 * is unfinished. A D* Lite search takes the new costs in; the others
+	 * read the costs as they go.
+	 * @return true if the search's costs were changed */
+	boolean edgeCostsChanged() {
+		if (currentSearch == null || currentSearch != replanner)
+			return false;
+
+		replanner.updateWatchedEdges();
+		return true;
+	}
+
+	/** the search currently assigned to this planner, or null */
+	GraphSearchTimeSliced<NavGraphEdge> getCurrentSearch() {
+		return currentSearch;
+	}
+
+	/** messages the owner with msg_NoPathAvailable or msg_PathReady if the
+	 * given status shows the current search has terminated. The path manager
+	 * calls this directly for searches it ran on a worker thread. */
+	void notifySearchResult(GraphSearchStatus result)
+	{
 		//let the bot know of the failure to find a path
 		if (result == GraphSearchStatus.TARGET_NOT_FOUND) {
 			Dispatcher.dispatchMsg(Dispatcher.SEND_MSG_IMMEDIATELY,
@@ -368,6 +480,12 @@ public class RavenPathPlanner {
 		//let the bot know a path has been found
 		else if (result == GraphSearchStatus.TARGET_FOUND)
 		{
+			//remember paths between nodes so they need not be searched again
+			if (searchType == GraphSearchType.AStar && !(currentSearch instanceof CachedPathSearch)) {
+				owner.getWorld().getPathManager().getPathCache().put(searchSourceNode, searchTargetNode,
+						navGraph.getVersion(), owner.getWorld().getMap().getDoorStateVersion(), currentSearch);
+			}
+
 			//if the search was for an item type then the final node in the path will
 			//represent a giver trigger. Consequently, it's worth passing the pointer
 			//to the trigger in the extra info field of the message. (The pointer
@@ -382,8 +500,6 @@ public class RavenPathPlanner {
 					RavenMessage.MSG_PATH_READY,
 					trigger);
 		}
-
-		return result;
 	}
 
 	/** used to retrieve the position of a graph node from its index. (takes
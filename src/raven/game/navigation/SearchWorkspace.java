@@ -0,0 +1,119 @@
+package raven.game.navigation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import raven.utils.IndexedPriorityQueue;
+
+/**
+ * The per-node arrays used by a graph search, kept between searches so they
+ * need not be reallocated. Rather than clearing every array when a new
+ * search begins, each node is stamped with the generation of the search
+ * that last wrote to it. A node with an old stamp reads as untouched
+ * (zero cost, no edges), so starting a search is O(1).
+ *
+ * A workspace is used by one search at a time. PathManager hands them out
+ * and takes them back.
+ */
+public class SearchWorkspace {
+	/** the accumulated cost to each node */
+	private double[] gCosts = new double[0];
+
+	/** the cost to each node plus the heuristic estimate to the target. This
+	 * is what the queue is ordered by. */
+	private double[] fCosts = new double[0];
+
+	private NavGraphEdge[] shortestPathTree = new NavGraphEdge[0];
+	private NavGraphEdge[] searchFrontier = new NavGraphEdge[0];
+
+	/** the generation in which each node was last written */
+	private int[] stamps = new int[0];
+	private int generation = 0;
+
+	private int numNodes;
+
+	private IndexedPriorityQueue queue = new IndexedPriorityQueue(fCosts, 0);
+
+	/** readies the workspace for a new search over a graph of numNodes
+	 * nodes, growing the arrays if the graph is larger than any seen so far */
+	public void begin(int numNodes) {
+		if (numNodes > stamps.length) {
+			gCosts = new double[numNodes];
+			fCosts = new double[numNodes];
+			shortestPathTree = new NavGraphEdge[numNodes];
+			searchFrontier = new NavGraphEdge[numNodes];
+			stamps = new int[numNodes];
+			generation = 0;
+		}
+
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			// the stamps are about to wrap, so clear them the slow way once
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+
+		this.numNodes = numNodes;
+		queue.reset(fCosts, numNodes);
+	}
+
+	/** marks the node as written by this search, clearing what an earlier
+	 * search left behind */
+	private void touch(int node) {
+		if (stamps[node] != generation) {
+			stamps[node] = generation;
+			gCosts[node] = 0;
+			fCosts[node] = 0;
+			shortestPathTree[node] = null;
+			searchFrontier[node] = null;
+		}
+	}
+
+	public double getGCost(int node) {
+		return stamps[node] == generation ? gCosts[node] : 0;
+	}
+
+	public double getFCost(int node) {
+		return stamps[node] == generation ? fCosts[node] : 0;
+	}
+
+	/** sets both the accumulated cost and the queue priority of the node */
+	public void setCosts(int node, double gCost, double fCost) {
+		touch(node);
+		gCosts[node] = gCost;
+		fCosts[node] = fCost;
+	}
+
+	public NavGraphEdge getSPTEdge(int node) {
+		return stamps[node] == generation ? shortestPathTree[node] : null;
+	}
+
+	public void setSPTEdge(int node, NavGraphEdge edge) {
+		touch(node);
+		shortestPathTree[node] = edge;
+	}
+
+	public NavGraphEdge getFrontierEdge(int node) {
+		return stamps[node] == generation ? searchFrontier[node] : null;
+	}
+
+	public void setFrontierEdge(int node, NavGraphEdge edge) {
+		touch(node);
+		searchFrontier[node] = edge;
+	}
+
+	/** copies the shortest path tree into a list indexed by node */
+	public List<NavGraphEdge> getSPT() {
+		List<NavGraphEdge> spt = new ArrayList<NavGraphEdge>(numNodes);
+		for (int i = 0; i < numNodes; i++) {
+			spt.add(getSPTEdge(i));
+		}
+		return spt;
+	}
+
+	/** the queue of frontier nodes, ordered by their f cost */
+	public IndexedPriorityQueue getQueue() { return queue; }
+
+	public int numNodes() { return numNodes; }
+}
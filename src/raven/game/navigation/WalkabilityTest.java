@@ -0,0 +1,12 @@
+package raven.game.navigation;
+
+import raven.math.Vector2D;
+
+/**
+ * Decides whether a bot could move in a straight line between two positions.
+ * Path smoothing asks this before joining edges, so it can be run against
+ * any walls, or none, without a bot.
+ */
+public interface WalkabilityTest {
+	public boolean canWalkBetween(Vector2D from, Vector2D to);
+}
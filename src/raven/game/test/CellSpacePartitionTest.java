@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package raven.game.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import raven.math.CellSpacePartition;
+import raven.math.Positioned;
+import raven.math.Vector2D;
+
+/**
+ * Checks neighbor queries against a linear scan, including after entities
+ * have moved between cells.
+ */
+public class CellSpacePartitionTest {
+
+	private static class Thing implements Positioned {
+		Vector2D position;
+
+		Thing(Vector2D position) { this.position = position; }
+
+		public Vector2D pos() { return position; }
+	}
+
+	private static Set<Thing> linearScan(List<Thing> things, Vector2D pos, double radius) {
+		Set<Thing> found = new HashSet<Thing>();
+		for (Thing thing : things) {
+			if (thing.pos().distanceSq(pos) < radius * radius) {
+				found.add(thing);
+			}
+		}
+		return found;
+	}
+
+	private static Set<Thing> query(CellSpacePartition<Thing> partition, Vector2D pos, double radius) {
+		Set<Thing> found = new HashSet<Thing>();
+		partition.calculateNeighbors(pos, radius);
+		for (Thing thing : partition) {
+			Assert.assertTrue("entity listed twice", found.add(thing));
+		}
+		return found;
+	}
+
+	@Test
+	public void NeighborsMatchLinearScan() {
+		Random rand = new Random(1);
+		CellSpacePartition<Thing> partition = new CellSpacePartition<Thing>(500, 500, 10, 10, 200);
+		List<Thing> things = new ArrayList<Thing>();
+
+		for (int i = 0; i < 200; i++) {
+			Thing thing = new Thing(new Vector2D(rand.nextDouble() * 500, rand.nextDouble() * 500));
+			things.add(thing);
+			partition.addEntity(thing);
+		}
+
+		for (int i = 0; i < 500; i++) {
+			Vector2D pos = new Vector2D(rand.nextDouble() * 600 - 50, rand.nextDouble() * 600 - 50);
+			double radius = rand.nextDouble() * 120;
+			Assert.assertEquals(linearScan(things, pos, radius), query(partition, pos, radius));
+		}
+	}
+
+	@Test
+	public void MovedEntitiesAreFoundAtTheirNewPosition() {
+		Random rand = new Random(2);
+		CellSpacePartition<Thing> partition = new CellSpacePartition<Thing>(500, 500, 10, 10, 100);
+		List<Thing> things = new ArrayList<Thing>();
+
+		for (int i = 0; i < 100; i++) {
+			Thing thing = new Thing(new Vector2D(rand.nextDouble() * 500, rand.nextDouble() * 500));
+			things.add(thing);
+			partition.addEntity(thing);
+		}
+
+		for (int step = 0; step < 20; step++) {
+			for (Thing thing : things) {
+				Vector2D oldPos = thing.position;
+				thing.position = new Vector2D(rand.nextDouble() * 500, rand.nextDouble() * 500);
+				partition.updateEntity(thing, oldPos);
+			}
+
+			// a query covering the whole world must find everything exactly once
+			Assert.assertEquals(things.size(), query(partition, new Vector2D(250, 250), 1000).size());
+
+			for (int i = 0; i < 20; i++) {
+				Vector2D pos = new Vector2D(rand.nextDouble() * 500, rand.nextDouble() * 500);
+				Assert.assertEquals(linearScan(things, pos, 60), query(partition, pos, 60));
+			}
+		}
+	}
+}
@@ -3,13 +3,35 @@
  */
 package raven.game.test;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Ignore;
 import org.junit.Test;
 
 import raven.game.RavenMap;
+import raven.game.RavenObject;
+import raven.game.interfaces.IRavenBot;
+import raven.game.navigation.NavGraphEdge;
+import raven.game.navigation.NavGraphNode;
+import raven.game.triggers.Trigger;
+import raven.game.triggers.TriggerHealthGiver;
+import raven.game.triggers.TriggerWeaponGiver;
+import raven.math.Vector2D;
+import raven.math.Wall2D;
+import raven.math.graph.SparseGraph;
+import raven.utils.BinaryMapFormat;
 import raven.utils.MapSerializer;
+import raven.utils.StreamingMapReader;
 
 /**
  * @author chester
@@ -51,6 +73,261 @@ public class MapSerializerTests {
 		Assert.assertEquals(expected, actual);
 	}
 	
+	@Test
+	public void StreamingReaderReadsEmptyMap() throws IOException {
+		RavenMap actual = StreamingMapReader.read(new StringReader(emptyString));
+		Assert.assertEquals(500, actual.getSizeX());
+		Assert.assertEquals(500, actual.getSizeY());
+		Assert.assertTrue(actual.getWalls().isEmpty());
+		Assert.assertTrue(actual.getTriggers().isEmpty());
+		Assert.assertEquals(0, actual.getNavGraph().numNodes());
+	}
+	
+	/*
+	 * A node sharing a trigger's position is written by XStream as a
+	 * reference, and must end up with the trigger's own vector.
+	 */
+	@Test
+	public void StreamingReaderFollowsReferences() throws IOException {
+		String xml =
+			"<RavenMap>\n" +
+			"  <walls>\n" +
+			"    <Wall2D><from><x>0.0</x><y>0.0</y></from><to><x>10.0</x><y>0.0</y></to></Wall2D>\n" +
+			"  </walls>\n" +
+			"  <triggerSystem>\n" +
+			"    <TriggerWeaponGiver>\n" +
+			"      <ID>0</ID>\n" +
+			"      <type>SHOTGUN</type>\n" +
+			"      <position><x>5.0</x><y>5.0</y></position>\n" +
+			"      <boundingRadius>0.0</boundingRadius>\n" +
+			"      <graphNodeIndex>1</graphNodeIndex>\n" +
+			"      <numSecondsBetweenRespawns>15.0</numSecondsBetweenRespawns>\n" +
+			"    </TriggerWeaponGiver>\n" +
+			"  </triggerSystem>\n" +
+			"  <spawnPoints/>\n" +
+			"  <doors/>\n" +
+			"  <navGraph>\n" +
+			"    <nodes>\n" +
+			"      <NavGraphNode><position><x>1.0</x><y>1.0</y></position><index>0</index></NavGraphNode>\n" +
+			"      <NavGraphNode>\n" +
+			"        <position reference=\"../../../../triggerSystem/TriggerWeaponGiver/position\"/>\n" +
+			"        <index>1</index>\n" +
+			"      </NavGraphNode>\n" +
+			"    </nodes>\n" +
+			"    <edges>\n" +
+			"      <linked-list>\n" +
+			"        <NavGraphEdge><from>0</from><to>1</to><cost>5.6</cost><flags>0</flags><IDOfIntersectingEntity>-1</IDOfIntersectingEntity></NavGraphEdge>\n" +
+			"      </linked-list>\n" +
+			"      <linked-list>\n" +
+			"        <NavGraphEdge><from>1</from><to>0</to><cost>5.6</cost><flags>0</flags><IDOfIntersectingEntity>-1</IDOfIntersectingEntity></NavGraphEdge>\n" +
+			"      </linked-list>\n" +
+			"    </edges>\n" +
+			"    <isDigraph>false</isDigraph>\n" +
+			"    <nextNodeIndex>2</nextNodeIndex>\n" +
+			"  </navGraph>\n" +
+			"  <sizeX>20</sizeX>\n" +
+			"  <sizeY>20</sizeY>\n" +
+			"</RavenMap>";
+		
+		RavenMap actual = StreamingMapReader.read(new StringReader(xml));
+		
+		Assert.assertEquals(1, actual.getWalls().size());
+		Assert.assertEquals(1, actual.getTriggers().size());
+		Assert.assertEquals(RavenObject.SHOTGUN, actual.getTriggers().get(0).entityType());
+		Assert.assertSame(actual.getTriggers().get(0).pos(), actual.getNavGraph().getNode(1).pos());
+		Assert.assertEquals(1, actual.getNavGraph().getEdges(0).size());
+		Assert.assertEquals(5.6, actual.getPathCosts().getCost(0, 1), 1e-9);
+	}
+	
+	@Test(expected = IOException.class)
+	public void StreamingReaderRejectsDoors() throws IOException {
+		StreamingMapReader.read(new StringReader(emptyString.replace("<doors/>", "<doors><RavenDoor/></doors>")));
+	}
+	
+	/*
+	 * A map with walls, spawn points, both kinds of giver and a small nav
+	 * graph, written in binary, must read back the same, path costs and all.
+	 */
+	@Test
+	public void BinaryMapRoundTrips() throws IOException {
+		RavenMap expected = CreateSmallMap();
+		File file = File.createTempFile("raven", BinaryMapFormat.EXTENSION);
+		file.deleteOnExit();
+		
+		BinaryMapFormat.write(expected, file);
+		Assert.assertTrue(BinaryMapFormat.isBinary(file));
+		RavenMap actual = BinaryMapFormat.read(file);
+		RavenMap xml = StreamingMapReader.read(new StringReader(MapSerializer.serializeMap(expected)));
+		
+		Assert.assertEquals(expected.getName(), actual.getName());
+		Assert.assertEquals(expected.getSizeX(), actual.getSizeX());
+		Assert.assertEquals(expected.getSizeY(), actual.getSizeY());
+		Assert.assertEquals(expected.getSpawnPoints(), actual.getSpawnPoints());
+		
+		Assert.assertEquals(expected.getWalls().size(), actual.getWalls().size());
+		for (int i = 0; i < expected.getWalls().size(); i++) {
+			Assert.assertEquals(expected.getWalls().get(i).from(), actual.getWalls().get(i).from());
+			Assert.assertEquals(expected.getWalls().get(i).to(), actual.getWalls().get(i).to());
+		}
+		
+		Assert.assertEquals(expected.getTriggers().size(), actual.getTriggers().size());
+		for (int i = 0; i < expected.getTriggers().size(); i++) {
+			Trigger<IRavenBot> from = expected.getTriggers().get(i);
+			Trigger<IRavenBot> to = actual.getTriggers().get(i);
+			Assert.assertEquals(from.getClass(), to.getClass());
+			Assert.assertEquals(from.entityType(), to.entityType());
+			Assert.assertEquals(from.pos(), to.pos());
+			Assert.assertEquals(from.getBRadius(), to.getBRadius(), 0);
+			Assert.assertEquals(from.graphNodeIndex(), to.graphNodeIndex());
+			Assert.assertSame(to.pos(), actual.getNavGraph().getNode(to.graphNodeIndex()).pos());
+		}
+		TriggerHealthGiver health = (TriggerHealthGiver)actual.getTriggers().get(0);
+		Assert.assertEquals(25, health.healthGiven());
+		Assert.assertEquals(10.0, health.getRespawnDelay(), 0);
+		Assert.assertEquals(15.0, ((TriggerWeaponGiver)actual.getTriggers().get(1)).getRespawnDelay(), 0);
+		
+		SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> from = expected.getNavGraph();
+		SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> to = actual.getNavGraph();
+		Assert.assertEquals(from.isDigraph(), to.isDigraph());
+		Assert.assertEquals(from.getNextFreeNodeIndex(), to.getNextFreeNodeIndex());
+		Assert.assertEquals(from.numNodes(), to.numNodes());
+		for (int i = 0; i < from.numNodes(); i++) {
+			Assert.assertEquals(from.getNode(i).index(), to.getNode(i).index());
+			Assert.assertEquals(from.getNode(i).pos(), to.getNode(i).pos());
+			
+			// a giver's node must point at the giver read back in its place,
+			// as it does when the map is read from XML
+			Trigger<IRavenBot> giver = from.getNode(i).extraInfo();
+			Trigger<IRavenBot> xmlGiver = xml.getNavGraph().getNode(i).extraInfo();
+			if (giver == null) {
+				Assert.assertNull(to.getNode(i).extraInfo());
+				Assert.assertNull(xmlGiver);
+			} else {
+				Assert.assertSame(actual.getTriggers().get(expected.getTriggers().indexOf(giver)), to.getNode(i).extraInfo());
+				Assert.assertEquals(xmlGiver.entityType(), to.getNode(i).extraInfo().entityType());
+				Assert.assertEquals(xmlGiver.pos(), to.getNode(i).extraInfo().pos());
+			}
+			
+			Assert.assertEquals(from.getEdges(i).size(), to.getEdges(i).size());
+			for (int j = 0; j < from.getEdges(i).size(); j++) {
+				NavGraphEdge a = from.getEdges(i).get(j);
+				NavGraphEdge b = to.getEdges(i).get(j);
+				Assert.assertEquals(a.from(), b.from());
+				Assert.assertEquals(a.to(), b.to());
+				Assert.assertEquals(a.cost(), b.cost(), 0);
+				Assert.assertEquals(a.flags(), b.flags());
+				Assert.assertEquals(a.IDOfIntersectingEntity(), b.IDOfIntersectingEntity());
+			}
+			
+			for (int j = 0; j < from.numNodes(); j++) {
+				Assert.assertEquals(expected.getPathCosts().getCost(i, j), actual.getPathCosts().getCost(i, j), 0);
+			}
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void BinaryMapRejectsWrongMagic() throws IOException {
+		File file = File.createTempFile("raven", BinaryMapFormat.EXTENSION);
+		file.deleteOnExit();
+		
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x3c3f786d); // "<?xm"
+			out.writeInt(1);
+		} finally {
+			out.close();
+		}
+		
+		Assert.assertFalse(BinaryMapFormat.isBinary(file));
+		BinaryMapFormat.read(file);
+	}
+	
+	@Test(expected = IOException.class)
+	public void BinaryMapRejectsWrongVersion() throws IOException {
+		File file = File.createTempFile("raven", BinaryMapFormat.EXTENSION);
+		file.deleteOnExit();
+		BinaryMapFormat.write(CreateSmallMap(), file);
+		
+		// the version follows the four byte magic number
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(4);
+			int version = raf.readInt();
+			raf.seek(4);
+			raf.writeInt(version + 1);
+		} finally {
+			raf.close();
+		}
+		
+		BinaryMapFormat.read(file);
+	}
+	
+	@Test(expected = IOException.class)
+	public void BinaryMapRejectsTruncatedFile() throws IOException {
+		File file = File.createTempFile("raven", BinaryMapFormat.EXTENSION);
+		file.deleteOnExit();
+		BinaryMapFormat.write(CreateSmallMap(), file);
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() / 2);
+		} finally {
+			raf.close();
+		}
+		
+		BinaryMapFormat.read(file);
+	}
+	
+	/*
+	 * A map of four nav graph nodes in a square, a health giver on one and
+	 * a shotgun giver on another, with a wall and two spawn points.
+	 */
+	private RavenMap CreateSmallMap() {
+		List<Wall2D> walls = new ArrayList<Wall2D>();
+		walls.add(new Wall2D(new Vector2D(0, 50), new Vector2D(40, 50)));
+		
+		List<Vector2D> spawnPoints = new ArrayList<Vector2D>();
+		spawnPoints.add(new Vector2D(10, 10));
+		spawnPoints.add(new Vector2D(90, 90));
+		
+		List<Trigger<IRavenBot>> triggers = new ArrayList<Trigger<IRavenBot>>();
+		TriggerHealthGiver health = new TriggerHealthGiver(new Vector2D(80, 20), 10, 25);
+		health.setRespawnDelay(10);
+		health.setGraphNodeIndex(2);
+		triggers.add(health);
+		TriggerWeaponGiver shotgun = new TriggerWeaponGiver(new Vector2D(80, 80), 10);
+		shotgun.setEntityType(RavenObject.SHOTGUN);
+		shotgun.setRespawnDelay(15);
+		shotgun.setGraphNodeIndex(3);
+		triggers.add(shotgun);
+		
+		List<NavGraphNode<Trigger<IRavenBot>>> nodes = new ArrayList<NavGraphNode<Trigger<IRavenBot>>>();
+		nodes.add(new NavGraphNode<Trigger<IRavenBot>>(0, new Vector2D(20, 20)));
+		nodes.add(new NavGraphNode<Trigger<IRavenBot>>(1, new Vector2D(20, 80)));
+		nodes.add(new NavGraphNode<Trigger<IRavenBot>>(2, health.pos()));
+		nodes.add(new NavGraphNode<Trigger<IRavenBot>>(3, shotgun.pos()));
+		nodes.get(2).setExtraInfo(health);
+		nodes.get(3).setExtraInfo(shotgun);
+		
+		// 0 - 2 - 3 - 1, with one edge flagged as going through a door
+		int[][] links = { { 0, 2 }, { 2, 3 }, { 3, 1 } };
+		List<List<NavGraphEdge>> edges = new ArrayList<List<NavGraphEdge>>();
+		for (int i = 0; i < nodes.size(); i++) {
+			edges.add(new LinkedList<NavGraphEdge>());
+		}
+		for (int[] link : links) {
+			double cost = nodes.get(link[0]).pos().distance(nodes.get(link[1]).pos());
+			int id = link[0] == 2 ? 7 : -1;
+			edges.get(link[0]).add(new NavGraphEdge(link[0], link[1], cost, 0, id));
+			edges.get(link[1]).add(new NavGraphEdge(link[1], link[0], cost, 0, id));
+		}
+		
+		SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> graph =
+			new SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>(nodes, edges, false, nodes.size());
+		
+		return new RavenMap("small", 100, 100, walls, spawnPoints, triggers, graph, null);
+	}
+	
 	private RavenMap CreateEmptyMap() {
 		return new RavenMap();
 	}
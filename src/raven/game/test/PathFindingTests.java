@@ -1,12 +1,441 @@
 /**
- * 
+ *
  */
 package raven.game.test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import raven.game.interfaces.IRavenBot;
+import raven.game.navigation.ClosestNodeGrid;
+import raven.game.navigation.GraphSearchDStarLiteTS;
+import raven.game.navigation.GraphSearchHierarchicalTS;
+import raven.game.navigation.NavGraphEdge;
+import raven.game.navigation.NavGraphNode;
+import raven.game.navigation.PathHierarchy;
+import raven.game.triggers.Trigger;
+import raven.math.Vector2D;
+import raven.math.Wall2D;
+import raven.math.WallGrid;
+import raven.math.WallIntersectionTest;
+import raven.math.graph.DistanceField;
+import raven.math.graph.EuclideanHeuristic;
+import raven.math.graph.GraphSearchDijkstra;
+import raven.math.graph.GraphSearchStatus;
+import raven.math.graph.LandmarkHeuristic;
+import raven.math.graph.LazyPathCostTable;
+import raven.math.graph.PathCostTable;
+import raven.math.graph.SparseGraph;
+
 /**
  * @author chester
  *
  */
 public class PathFindingTests {
 
+	/** a grid of nodes 10 apart, joined to their neighbors, with some of the
+	 * joins left out at random */
+	private static <T> SparseGraph<NavGraphNode<T>, NavGraphEdge> createGrid(int size, boolean digraph, Random rand) {
+		SparseGraph<NavGraphNode<T>, NavGraphEdge> graph = new SparseGraph<NavGraphNode<T>, NavGraphEdge>(digraph);
+
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				graph.addNode(new NavGraphNode<T>(graph.getNextFreeNodeIndex(), new Vector2D(x * 10, y * 10)));
+			}
+		}
+
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				int node = y * size + x;
+				if (x + 1 < size && rand.nextInt(5) != 0) {
+					graph.addEdge(new NavGraphEdge(node, node + 1, 10 + rand.nextInt(5)));
+				}
+				if (y + 1 < size && rand.nextInt(5) != 0) {
+					graph.addEdge(new NavGraphEdge(node, node + size, 10 + rand.nextInt(5)));
+				}
+				if (digraph && x > 0 && rand.nextInt(2) == 0) {
+					graph.addEdge(new NavGraphEdge(node, node - 1, 10 + rand.nextInt(5)));
+				}
+			}
+		}
+
+		return graph;
+	}
+
+	private static void assertSameCosts(PathCostTable expected, LazyPathCostTable actual, Random rand) {
+		int numNodes = expected.numNodes();
+		for (int i = 0; i < 2000; i++) {
+			int from = rand.nextInt(numNodes);
+			int to = rand.nextInt(numNodes);
+			Assert.assertEquals(expected.getCost(from, to), actual.getCost(from, to), 1e-9);
+		}
+	}
+
+	@Test
+	public void LazyCostsMatchPrecalculatedCosts() {
+		Random rand = new Random(1);
+
+		for (boolean digraph : new boolean[] { false, true }) {
+			SparseGraph<NavGraphNode<Object>, NavGraphEdge> graph = createGrid(12, digraph, rand);
+
+			PathCostTable expected = graph.createAllPairsCostsTable();
+			LazyPathCostTable actual = new LazyPathCostTable(graph, 8, false);
+
+			assertSameCosts(expected, actual, rand);
+
+			// far fewer rows than nodes, so rows must have been evicted
+			Assert.assertEquals(8, actual.numRows());
+			Assert.assertTrue(actual.getSearches() > 8);
+		}
+	}
+
+	@Test
+	public void LandmarkEstimatesNeverOverestimate() {
+		Random rand = new Random(3);
+
+		for (boolean digraph : new boolean[] { false, true }) {
+			SparseGraph<NavGraphNode<Object>, NavGraphEdge> graph = createGrid(12, digraph, rand);
+			PathCostTable costs = graph.createAllPairsCostsTable();
+			LandmarkHeuristic<SparseGraph<NavGraphNode<Object>, NavGraphEdge>> heuristic =
+				new LandmarkHeuristic<SparseGraph<NavGraphNode<Object>, NavGraphEdge>>(graph, 6);
+			EuclideanHeuristic<SparseGraph<NavGraphNode<Object>, NavGraphEdge>> euclidean =
+				new EuclideanHeuristic<SparseGraph<NavGraphNode<Object>, NavGraphEdge>>();
+
+			Assert.assertEquals(6, heuristic.numLandmarks());
+
+			for (int from = 0; from < graph.numNodes(); from++) {
+				GraphSearchDijkstra search = new GraphSearchDijkstra(graph, from, -1);
+				for (int to = 0; to < graph.numNodes(); to++) {
+					if (to != from && search.getSPT().get(to) == null) {
+						continue;
+					}
+
+					// A* asks for the estimate from a node to the target as
+					// (target, node)
+					double estimate = heuristic.Calculate(graph, to, from);
+					Assert.assertTrue(estimate <= costs.getCost(from, to) + 1e-9);
+					Assert.assertTrue(estimate >= euclidean.Calculate(graph, to, from));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void HierarchicalPathsAreValid() {
+		Random rand = new Random(4);
+
+		for (boolean digraph : new boolean[] { false, true }) {
+			SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> graph = createGrid(20, digraph, rand);
+			PathCostTable costs = graph.createAllPairsCostsTable();
+			PathHierarchy hierarchy = new PathHierarchy(graph, 200, 200, 40);
+			EuclideanHeuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> heuristic =
+				new EuclideanHeuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>>();
+
+			Assert.assertEquals(25, hierarchy.numClusters());
+
+			for (int i = 0; i < 300; i++) {
+				int from = rand.nextInt(graph.numNodes());
+				int to = rand.nextInt(graph.numNodes());
+
+				GraphSearchHierarchicalTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> search =
+					new GraphSearchHierarchicalTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>>(graph, hierarchy, from, to, null, heuristic);
+				GraphSearchStatus status;
+				do {
+					status = search.cycleOnce();
+				} while (status == GraphSearchStatus.SEARCH_INCOMPLETE);
+
+				// the cost table gives 0 for unreachable nodes
+				boolean reachable = from == to || costs.getCost(from, to) > 0;
+				Assert.assertEquals(reachable, status == GraphSearchStatus.TARGET_FOUND);
+				if (!reachable) {
+					continue;
+				}
+
+				// the path must follow the graph's edges from source to target
+				List<Integer> path = search.getPathToTarget();
+				Assert.assertEquals(from, (int)path.get(0));
+				Assert.assertEquals(to, (int)path.get(path.size() - 1));
+
+				double cost = 0;
+				for (int j = 0; j + 1 < path.size(); j++) {
+					Assert.assertTrue(graph.isEdgePresent(path.get(j), path.get(j + 1)));
+					cost += graph.getEdge(path.get(j), path.get(j + 1)).cost();
+				}
+				Assert.assertEquals(cost, search.getCostToTarget(), 1e-9);
+				Assert.assertTrue(cost >= costs.getCost(from, to) - 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void ClosestNodeLookupMatchesSearch() {
+		Random rand = new Random(5);
+		SparseGraph<NavGraphNode<Object>, NavGraphEdge> graph = createGrid(20, false, rand);
+
+		// a wall down the middle of the grid, between two columns of nodes
+		List<Wall2D> walls = new ArrayList<Wall2D>();
+		walls.add(new Wall2D(new Vector2D(95, -5), new Vector2D(95, 125)));
+		WallGrid wallGrid = new WallGrid(walls, 40);
+
+		double range = 15;
+		double radius = 2;
+		ClosestNodeGrid grid = new ClosestNodeGrid(graph, wallGrid, 200, 200, 5, range, radius, 3);
+
+		int[] candidates = new int[grid.getMaxCandidates()];
+
+		Assert.assertEquals(40, grid.getNumCellsX());
+		Assert.assertEquals(0, grid.getCandidates(new Vector2D(-1, 50), candidates));
+		Assert.assertEquals(0, grid.getCandidates(new Vector2D(50, 200), candidates));
+
+		int agreed = 0;
+		int tries = 2000;
+		for (int i = 0; i < tries; i++) {
+			Vector2D pos = new Vector2D(rand.nextDouble() * 190, rand.nextDouble() * 190);
+
+			// the closest node within range that can be walked to
+			int expected = -1;
+			for (int node = 0; node < graph.numNodes(); node++) {
+				Vector2D nodePos = graph.getNode(node).pos();
+				if (pos.distance(nodePos) <= range
+						&& !WallIntersectionTest.doWallsObstructSweptCircle(wallGrid, pos, nodePos, radius)
+						&& (expected < 0 || pos.distanceSq(nodePos) < pos.distanceSq(graph.getNode(expected).pos()))) {
+					expected = node;
+				}
+			}
+
+			// the nearest candidate, if it can be walked to. Otherwise the
+			// planner searches every nearby node
+			int actual = -1;
+			if (grid.getCandidates(pos, candidates) > 0
+					&& !WallIntersectionTest.doWallsObstructSweptCircle(wallGrid, pos, graph.getNode(candidates[0]).pos(), radius)) {
+				actual = candidates[0];
+			}
+
+			// never a node on the far side of the wall
+			if (actual >= 0) {
+				Assert.assertTrue(expected >= 0);
+				Assert.assertEquals(pos.x < 95, graph.getNode(actual).pos().x < 95);
+			}
+			if (actual == expected) {
+				agreed++;
+			}
+		}
+
+		Assert.assertTrue(agreed > tries * 0.95);
+	}
+
+	/** blocks, unblocks or changes the cost multiplier of an edge, and of
+	 * the edge back on an undirected graph. The multiplier never drops below
+	 * 1, so landmark estimates stay low enough. Returns the old cost */
+	private static double changeEdge(SparseGraph<? extends NavGraphNode<?>, NavGraphEdge> graph, NavGraphEdge edge, Random rand) {
+		double oldCost = edge.cost();
+
+		boolean blocked = rand.nextInt(3) == 0;
+		double multiplier = 1 + rand.nextInt(3) * 2;
+		edge.setBlocked(blocked);
+		edge.setCostMultiplier(multiplier);
+		if (!graph.isDigraph()) {
+			NavGraphEdge back = graph.getEdge(edge.to(), edge.from());
+			back.setBlocked(blocked);
+			back.setCostMultiplier(multiplier);
+		}
+
+		return oldCost;
+	}
+
+	/** a random edge of the graph. On an undirected graph always the one
+	 * leading to the higher numbered node */
+	private static NavGraphEdge randomEdge(SparseGraph<? extends NavGraphNode<?>, NavGraphEdge> graph, Random rand) {
+		while (true) {
+			List<NavGraphEdge> edges = graph.getEdges(rand.nextInt(graph.numNodes()));
+			if (!edges.isEmpty()) {
+				NavGraphEdge edge = edges.get(rand.nextInt(edges.size()));
+				if (graph.isDigraph() || edge.from() < edge.to())
+					return edge;
+			}
+		}
+	}
+
+	@Test
+	public void RepairedCostsMatchRecalculatedCosts() {
+		Random rand = new Random(6);
+
+		for (boolean digraph : new boolean[] { false, true }) {
+			for (boolean singlePrecision : new boolean[] { false, true }) {
+				SparseGraph<NavGraphNode<Object>, NavGraphEdge> graph = createGrid(10, digraph, rand);
+				PathCostTable repaired = graph.createAllPairsCostsTable(singlePrecision);
+				LazyPathCostTable lazy = new LazyPathCostTable(graph, graph.numNodes(), singlePrecision);
+
+				for (int i = 0; i < 40; i++) {
+					NavGraphEdge edge = randomEdge(graph, rand);
+					double oldCost = changeEdge(graph, edge, rand);
+					repaired.edgeCostChanged(graph, edge.from(), edge.to(), oldCost);
+					lazy.edgeCostChanged(graph, edge.from(), edge.to(), oldCost);
+
+					PathCostTable expected = graph.createAllPairsCostsTable();
+					for (int from = 0; from < graph.numNodes(); from++) {
+						for (int to = 0; to < graph.numNodes(); to++) {
+							double cost = expected.getCost(from, to);
+							Assert.assertEquals(cost, repaired.getCost(from, to), 1e-5 * Math.max(1, cost));
+						}
+					}
+					for (int j = 0; j < 200; j++) {
+						int from = rand.nextInt(graph.numNodes());
+						int to = rand.nextInt(graph.numNodes());
+						double cost = expected.getCost(from, to);
+						Assert.assertEquals(cost, lazy.getCost(from, to), 1e-5 * Math.max(1, cost));
+					}
+				}
+
+				// only the rows the changes touched were searched again, fewer
+				// than half as many as if every change emptied the table
+				Assert.assertTrue(lazy.getSearches() < 40 * graph.numNodes() / 2);
+			}
+		}
+	}
+
+	/** changes a watched edge, and its way back on an undirected graph */
+	private static void changeWatchedEdge(SparseGraph<? extends NavGraphNode<?>, NavGraphEdge> graph, NavGraphEdge edge, Random rand) {
+		if (!graph.isDigraph() && edge.from() > edge.to()) {
+			edge = graph.getEdge(edge.to(), edge.from());
+		}
+		changeEdge(graph, edge, rand);
+	}
+
+	@Test
+	public void DStarLiteFollowsEdgeChanges() {
+		Random rand = new Random(7);
+
+		for (boolean digraph : new boolean[] { false, true }) {
+			SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> graph = createGrid(15, digraph, rand);
+			LandmarkHeuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> heuristic =
+				new LandmarkHeuristic<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>>(graph, 4);
+
+			// the edges that will change, both ways on an undirected graph
+			List<NavGraphEdge> changeable = new ArrayList<NavGraphEdge>();
+			for (int i = 0; i < 40; i++) {
+				NavGraphEdge edge = randomEdge(graph, rand);
+				changeable.add(edge);
+				if (!digraph) {
+					changeable.add(graph.getEdge(edge.to(), edge.from()));
+				}
+			}
+
+			int source = rand.nextInt(graph.numNodes());
+			int target = rand.nextInt(graph.numNodes());
+			GraphSearchDStarLiteTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>> search =
+				new GraphSearchDStarLiteTS<SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>>(graph, source, target, heuristic, changeable);
+
+			for (int round = 0; round < 30; round++) {
+				if (round > 0) {
+					for (int i = 0; i < 3; i++) {
+						changeWatchedEdge(graph, changeable.get(rand.nextInt(changeable.size())), rand);
+					}
+					source = rand.nextInt(graph.numNodes());
+					search.restart(source);
+				}
+
+				// sometimes the watched edges on the shortest path change
+				// again before the search is done
+				int changeAt = rand.nextInt(10);
+				GraphSearchStatus status;
+				for (int cycle = 0; ; cycle++) {
+					if (cycle == changeAt) {
+						List<Integer> shortest = new GraphSearchDijkstra(graph, source, target).getPathToTarget();
+						for (NavGraphEdge edge : changeable) {
+							int at = shortest.indexOf(edge.from());
+							if (at >= 0 && at + 1 < shortest.size() && shortest.get(at + 1) == edge.to()) {
+								changeWatchedEdge(graph, edge, rand);
+							}
+						}
+						search.updateWatchedEdges();
+					}
+					status = search.cycleOnce();
+					if (status != GraphSearchStatus.SEARCH_INCOMPLETE)
+						break;
+				}
+
+				GraphSearchDijkstra dijkstra = new GraphSearchDijkstra(graph, source, target);
+				boolean reachable = source == target || dijkstra.getSPT().get(target) != null;
+				Assert.assertEquals(reachable, status == GraphSearchStatus.TARGET_FOUND);
+				if (!reachable) {
+					Assert.assertTrue(search.getPathToTarget().isEmpty());
+					Assert.assertTrue(search.getPathAsPathEdges().isEmpty());
+					continue;
+				}
+
+				// the path must follow unblocked edges to the target, and be
+				// as short as Dijkstra's
+				List<Integer> path = search.getPathToTarget();
+				Assert.assertEquals(source, (int)path.get(0));
+				Assert.assertEquals(target, (int)path.get(path.size() - 1));
+				double cost = 0;
+				for (int j = 0; j + 1 < path.size(); j++) {
+					Assert.assertTrue(graph.isEdgePresent(path.get(j), path.get(j + 1)));
+					cost += graph.getEdge(path.get(j), path.get(j + 1)).cost();
+				}
+				Assert.assertEquals(cost, search.getCostToTarget(), 1e-9);
+				Assert.assertEquals(dijkstra.getCostToNode(target), cost, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void DistanceFieldFollowsSourceChanges() {
+		Random rand = new Random(8);
+
+		for (boolean digraph : new boolean[] { false, true }) {
+			SparseGraph<NavGraphNode<Object>, NavGraphEdge> graph = createGrid(12, digraph, rand);
+			for (int i = 0; i < 20; i++) {
+				changeEdge(graph, randomEdge(graph, rand), rand);
+			}
+			PathCostTable costs = graph.createAllPairsCostsTable();
+			DistanceField field = new DistanceField(graph);
+
+			// add and remove sources at random, some more than once
+			List<Integer> sources = new ArrayList<Integer>();
+			for (int round = 0; round < 60; round++) {
+				if (sources.isEmpty() || rand.nextInt(3) > 0) {
+					int node = rand.nextInt(graph.numNodes());
+					sources.add(node);
+					field.addSource(node);
+				} else {
+					field.removeSource(sources.remove(rand.nextInt(sources.size())));
+				}
+
+				for (int node = 0; node < graph.numNodes(); node++) {
+					double expected = DistanceField.NO_SOURCE;
+					for (int source : sources) {
+						// the table holds 0 for nodes that can't reach each other
+						double cost = costs.getCost(node, source);
+						if ((cost > 0 || node == source) && cost < expected) {
+							expected = cost;
+						}
+					}
+					Assert.assertEquals(expected, field.getCost(node), 1e-9);
+					Assert.assertEquals(expected != DistanceField.NO_SOURCE, sources.contains(field.getNearestSource(node)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void LazyCostsFollowGraphChanges() {
+		Random rand = new Random(2);
+		SparseGraph<NavGraphNode<Object>, NavGraphEdge> graph = createGrid(8, false, rand);
+		LazyPathCostTable actual = new LazyPathCostTable(graph, 100, false);
+
+		assertSameCosts(graph.createAllPairsCostsTable(), actual, rand);
+
+		graph.setEdgeCost(0, 1, 1000);
+		graph.setEdgeCost(1, 0, 1000);
+		graph.addEdge(new NavGraphEdge(0, 63, 1));
+
+		assertSameCosts(graph.createAllPairsCostsTable(), actual, rand);
+	}
 }
@@ -0,0 +1,206 @@
+/**
+ *
+ */
+package raven.game.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import raven.game.navigation.NavGraphEdge;
+import raven.game.navigation.PathEdge;
+import raven.game.navigation.RavenPathPlanner;
+import raven.game.navigation.WalkabilityTest;
+import raven.math.Vector2D;
+import raven.math.Wall2D;
+import raven.math.WallGrid;
+
+/**
+ * Runs both path smoothing passes over a hand-built map: a wall splitting
+ * the top of the map from the bottom, and a path that goes right along the
+ * top, down past the end of the wall, through a door and back left along
+ * the bottom.
+ */
+public class PathSmoothingTests {
+
+	private static final double BOT_RADIUS = 5;
+
+	/** the wall runs from the left edge to x = 80, at y = 50 */
+	private static WallGrid createWalls() {
+		List<Wall2D> walls = new ArrayList<Wall2D>();
+		walls.add(new Wall2D(new Vector2D(0, 50), new Vector2D(80, 50)));
+		return new WallGrid(walls, 25);
+	}
+
+	/** tests against the walls the way a bot does, and remembers every
+	 * position it was asked about */
+	private static class Walls implements WalkabilityTest {
+		WallGrid grid = createWalls();
+		List<Vector2D> asked = new ArrayList<Vector2D>();
+
+		@Override
+		public boolean canWalkBetween(Vector2D from, Vector2D to) {
+			asked.add(from);
+			asked.add(to);
+			return !grid.doWallsIntersectCapsule(from, to, BOT_RADIUS);
+		}
+	}
+
+	private static List<PathEdge> createPath(double[][] points, int doorEdge) {
+		List<PathEdge> path = new ArrayList<PathEdge>();
+		for (int i = 0; i + 1 < points.length; i++) {
+			Vector2D from = new Vector2D(points[i][0], points[i][1]);
+			Vector2D to = new Vector2D(points[i + 1][0], points[i + 1][1]);
+			boolean door = i == doorEdge;
+			path.add(new PathEdge(from, to, door ? NavGraphEdge.GOES_THROUGH_DOOR : NavGraphEdge.NORMAL, door ? 3 : 0));
+		}
+		return path;
+	}
+
+	/** right along the top, down the right hand side, through a door and
+	 * left along the bottom */
+	private static final double[][] AROUND_THE_WALL = {
+		{ 10, 10 }, { 30, 10 }, { 50, 10 }, { 70, 10 }, { 90, 10 },
+		{ 90, 50 }, { 90, 90 },
+		{ 70, 90 }, { 50, 90 }, { 30, 90 }, { 10, 90 } };
+	private static final int DOOR_EDGE = 6;
+
+	/**
+	 * checks a smoothed path against the one it came from: it must still
+	 * join the same ends without gaps, keep the door edge as it was, and
+	 * every edge it made by joining others must be walkable.
+	 */
+	private static void assertValidSmoothing(List<PathEdge> original, List<PathEdge> smoothed, Walls walls) {
+		Assert.assertFalse(smoothed.isEmpty());
+		Assert.assertEquals(original.get(0).Source(), smoothed.get(0).Source());
+		Assert.assertEquals(original.get(original.size() - 1).Destination(), smoothed.get(smoothed.size() - 1).Destination());
+
+		for (int i = 0; i + 1 < smoothed.size(); i++) {
+			Assert.assertEquals(smoothed.get(i).Destination(), smoothed.get(i + 1).Source());
+		}
+
+		int doors = 0;
+		for (PathEdge edge : smoothed) {
+			if (edge.Behavior() != NavGraphEdge.NORMAL) {
+				doors++;
+				PathEdge door = original.get(DOOR_EDGE);
+				Assert.assertEquals(door.Source(), edge.Source());
+				Assert.assertEquals(door.Destination(), edge.Destination());
+				Assert.assertEquals(door.DoorID(), edge.DoorID());
+			} else {
+				Assert.assertFalse(walls.grid.doWallsIntersectCapsule(edge.Source(), edge.Destination(), BOT_RADIUS));
+			}
+		}
+		Assert.assertEquals(1, doors);
+
+		// only positions on the path are ever tested
+		List<Vector2D> points = new ArrayList<Vector2D>();
+		for (PathEdge edge : original) {
+			points.add(edge.Source());
+			points.add(edge.Destination());
+		}
+		for (Vector2D pos : walls.asked) {
+			Assert.assertTrue(points.contains(pos));
+		}
+	}
+
+	private static void assertEdge(PathEdge edge, double fromX, double fromY, double toX, double toY) {
+		Assert.assertEquals(new Vector2D(fromX, fromY), edge.Source());
+		Assert.assertEquals(new Vector2D(toX, toY), edge.Destination());
+	}
+
+	/*
+	 * Both passes join each straight run into one edge. Neither may cut the
+	 * corner through the end of the wall, or join anything to the door.
+	 */
+	@Test
+	public void SmoothingJoinsStraightRuns() {
+		for (boolean precise : new boolean[] { false, true }) {
+			List<PathEdge> original = createPath(AROUND_THE_WALL, DOOR_EDGE);
+			List<PathEdge> path = createPath(AROUND_THE_WALL, DOOR_EDGE);
+			Walls walls = new Walls();
+
+			if (precise) {
+				RavenPathPlanner.smoothPathEdgesPrecise(path, walls);
+			} else {
+				RavenPathPlanner.smoothPathEdgesQuick(path, walls);
+			}
+
+			assertValidSmoothing(original, path, walls);
+			Assert.assertEquals(4, path.size());
+			assertEdge(path.get(0), 10, 10, 90, 10);
+			assertEdge(path.get(1), 90, 10, 90, 90);
+			assertEdge(path.get(2), 90, 90, 70, 90);
+			assertEdge(path.get(3), 70, 90, 10, 90);
+		}
+	}
+
+	/*
+	 * With the door first or last the passes must stop at the ends of the
+	 * path, and a path of one edge is left alone.
+	 */
+	@Test
+	public void SmoothingHandlesDoorsAtTheEnds() {
+		double[][] top = { { 10, 10 }, { 30, 10 }, { 50, 10 }, { 70, 10 } };
+
+		for (boolean precise : new boolean[] { false, true }) {
+			for (int door : new int[] { 0, top.length - 2 }) {
+				List<PathEdge> path = createPath(top, door);
+				Walls walls = new Walls();
+				if (precise) {
+					RavenPathPlanner.smoothPathEdgesPrecise(path, walls);
+				} else {
+					RavenPathPlanner.smoothPathEdgesQuick(path, walls);
+				}
+
+				Assert.assertEquals(2, path.size());
+				Assert.assertEquals(NavGraphEdge.GOES_THROUGH_DOOR, path.get(door == 0 ? 0 : 1).Behavior());
+				Assert.assertEquals(new Vector2D(10, 10), path.get(0).Source());
+				Assert.assertEquals(new Vector2D(70, 10), path.get(1).Destination());
+			}
+
+			List<PathEdge> single = createPath(new double[][] { { 10, 10 }, { 70, 10 } }, -1);
+			if (precise) {
+				RavenPathPlanner.smoothPathEdgesPrecise(single, new Walls());
+			} else {
+				RavenPathPlanner.smoothPathEdgesQuick(single, new Walls());
+			}
+			Assert.assertEquals(1, single.size());
+			assertEdge(single.get(0), 10, 10, 70, 10);
+		}
+	}
+
+	/*
+	 * After the precise pass no two neighboring normal edges could be
+	 * joined. The quick pass may leave some.
+	 */
+	@Test
+	public void PreciseSmoothingLeavesNothingToJoin() {
+		double[][] zigzag = {
+			{ 10, 10 }, { 40, 40 }, { 10, 45 }, { 60, 20 }, { 85, 45 },
+			{ 95, 60 }, { 60, 60 }, { 85, 55 }, { 40, 80 }, { 10, 60 } };
+
+		List<PathEdge> original = createPath(zigzag, -1);
+		List<PathEdge> path = createPath(zigzag, -1);
+		Walls walls = new Walls();
+		RavenPathPlanner.smoothPathEdgesPrecise(path, walls);
+
+		Assert.assertEquals(original.get(0).Source(), path.get(0).Source());
+		Assert.assertEquals(original.get(original.size() - 1).Destination(), path.get(path.size() - 1).Destination());
+		for (int i = 0; i + 1 < path.size(); i++) {
+			Assert.assertEquals(path.get(i).Destination(), path.get(i + 1).Source());
+			Assert.assertFalse(walls.canWalkBetween(path.get(i).Source(), path.get(i + 1).Destination()));
+		}
+		for (PathEdge edge : path) {
+			boolean unchanged = false;
+			for (PathEdge before : original) {
+				unchanged |= before.Source().equals(edge.Source()) && before.Destination().equals(edge.Destination());
+			}
+			Assert.assertTrue(unchanged || walls.canWalkBetween(edge.Source(), edge.Destination()));
+		}
+		Assert.assertTrue(path.size() < original.size());
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package raven.game.test;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import raven.math.Geometry;
+import raven.math.Transformations;
+import raven.math.Vector2D;
+
+/**
+ * Checks the in-place vector operations give the same results as the ones
+ * that return new vectors.
+ */
+public class Vector2DTest {
+
+	private static final double EPSILON = 1e-9;
+
+	private static void assertClose(Vector2D expected, Vector2D actual) {
+		Assert.assertEquals(expected.x, actual.x, EPSILON);
+		Assert.assertEquals(expected.y, actual.y, EPSILON);
+	}
+
+	private static Vector2D random(Random rand) {
+		return new Vector2D(rand.nextDouble() * 200 - 100, rand.nextDouble() * 200 - 100);
+	}
+
+	@Test
+	public void InPlaceOperatorsMatchCopyingOperators() {
+		Random rand = new Random(1);
+
+		for (int i = 0; i < 100; i++) {
+			Vector2D a = random(rand);
+			Vector2D b = random(rand);
+			double s = rand.nextDouble() * 10 - 5;
+
+			assertClose(a.add(b), new Vector2D(a).addLocal(b));
+			assertClose(a.sub(b), new Vector2D(a).subLocal(b));
+			assertClose(a.mul(s), new Vector2D(a).scaleLocal(s));
+			assertClose(a.div(s), new Vector2D(a).divLocal(s));
+			assertClose(a.add(b.mul(s)), new Vector2D(a).addScaledLocal(b, s));
+			assertClose(b, new Vector2D().set(b));
+		}
+	}
+
+	@Test
+	public void InPlaceOperatorsChangeOnlyTheReceiver() {
+		Vector2D a = new Vector2D(1, 2);
+		Vector2D b = new Vector2D(3, 4);
+
+		Vector2D result = a.addLocal(b).scaleLocal(2);
+
+		Assert.assertSame(a, result);
+		assertClose(new Vector2D(8, 12), a);
+		assertClose(new Vector2D(3, 4), b);
+	}
+
+	@Test
+	public void RewrittenHelpersMatchTheirOriginals() {
+		Random rand = new Random(2);
+
+		for (int i = 0; i < 100; i++) {
+			Vector2D from = random(rand);
+			Vector2D to = random(rand);
+			Vector2D pos = random(rand);
+
+			// the closest point on the segment, worked out the long way
+			Vector2D ab = to.sub(from);
+			double t = Math.max(0, Math.min(1, pos.sub(from).dot(ab) / ab.lengthSq()));
+			Vector2D closest = from.add(ab.mul(t));
+			Assert.assertEquals(pos.distanceSq(closest), Geometry.distToLineSegmentSq(from, to, pos), 1e-6);
+
+			Vector2D heading = random(rand);
+			heading.normalize();
+			Vector2D side = heading.perp();
+			assertClose(Transformations.pointToLocalSpace(pos, heading, side, from),
+					Transformations.pointToLocalSpace(pos, heading, side, from, new Vector2D()));
+
+			// rotating by a quarter turn is the same as taking the perpendicular
+			Vector2D rotated = new Vector2D(heading);
+			Transformations.Vec2DRotateAroundOrigin(rotated, Math.PI / 2);
+			assertClose(heading.perp(), rotated);
+
+			Vector2D truncated = new Vector2D(pos);
+			truncated.truncate(10);
+			Assert.assertEquals(Math.min(10, pos.length()), truncated.length(), EPSILON);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ *
+ */
+package raven.game.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import raven.math.Geometry;
+import raven.math.Vector2D;
+import raven.math.Wall2D;
+import raven.math.WallGrid;
+import raven.math.WallIntersectionTest;
+
+/**
+ * Checks the wall grid gives the same answers as testing every wall.
+ */
+public class WallGridTest {
+
+	private static Vector2D randomPoint(Random rand) {
+		return new Vector2D(rand.nextDouble() * 500, rand.nextDouble() * 500);
+	}
+
+	private static List<Wall2D> randomWalls(Random rand, int count) {
+		List<Wall2D> walls = new ArrayList<Wall2D>();
+		for (int i = 0; i < count; i++) {
+			Vector2D from = randomPoint(rand);
+			Vector2D to = from.add(new Vector2D(rand.nextDouble() * 100 - 50, rand.nextDouble() * 100 - 50));
+			walls.add(new Wall2D(from, to));
+		}
+		// axis aligned walls on cell borders are the awkward case
+		walls.add(new Wall2D(new Vector2D(100, 0), new Vector2D(100, 500)));
+		walls.add(new Wall2D(new Vector2D(0, 200), new Vector2D(500, 200)));
+		return walls;
+	}
+
+	@Test
+	public void LineSegmentMatchesLinearScan() {
+		Random rand = new Random(1);
+		List<Wall2D> walls = randomWalls(rand, 40);
+		WallGrid grid = new WallGrid(walls, 25);
+
+		for (int i = 0; i < 2000; i++) {
+			Vector2D from = randomPoint(rand);
+			Vector2D to = randomPoint(rand);
+			Assert.assertEquals(WallIntersectionTest.doWallsObstructLineSegment(from, to, walls),
+					grid.doWallsObstructLineSegment(from, to));
+		}
+	}
+
+	@Test
+	public void CircleMatchesLinearScan() {
+		Random rand = new Random(2);
+		List<Wall2D> walls = randomWalls(rand, 40);
+		WallGrid grid = new WallGrid(walls, 25);
+
+		for (int i = 0; i < 2000; i++) {
+			Vector2D pos = randomPoint(rand);
+			double radius = rand.nextDouble() * 30;
+			Assert.assertEquals(WallIntersectionTest.doWallsIntersectCircle(walls, pos, radius),
+					grid.doWallsIntersectCircle(pos, radius));
+		}
+	}
+
+	@Test
+	public void CapsuleMatchesLinearScan() {
+		Random rand = new Random(4);
+		List<Wall2D> walls = randomWalls(rand, 40);
+		WallGrid grid = new WallGrid(walls, 25);
+
+		for (int i = 0; i < 2000; i++) {
+			// some segments start or end off the grid
+			Vector2D from = randomPoint(rand).sub(new Vector2D(50, 50));
+			Vector2D to = i % 10 == 0 ? from : from.add(new Vector2D(rand.nextDouble() * 300 - 150, rand.nextDouble() * 300 - 150));
+			double radius = rand.nextDouble() * 30;
+			Assert.assertEquals(WallIntersectionTest.doWallsIntersectCapsule(walls, from, to, radius),
+					grid.doWallsIntersectCapsule(from, to, radius));
+
+			// a segment of no length is a circle
+			if (from == to) {
+				Assert.assertEquals(grid.doWallsIntersectCircle(from, radius),
+						grid.doWallsIntersectCapsule(from, to, radius));
+			}
+		}
+	}
+
+	/** the circles RavenGame.isPathObstructed used to test, half a radius
+	 * apart from a until one is within a radius of b */
+	private static boolean steppedCirclesObstructed(WallGrid grid, Vector2D a, Vector2D b, double radius) {
+		Vector2D toB = b.sub(a);
+		toB.normalize();
+		Vector2D pos = new Vector2D(a);
+		while (pos.distanceSq(b) > radius * radius) {
+			pos.addScaledLocal(toB, 0.5 * radius);
+			if (grid.doWallsIntersectCircle(pos, radius)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void SweptCircleCoversSteppedCircles() {
+		Random rand = new Random(6);
+		List<Wall2D> walls = randomWalls(rand, 40);
+		WallGrid grid = new WallGrid(walls, 25);
+
+		int differences = 0;
+		for (int i = 0; i < 2000; i++) {
+			Vector2D from = randomPoint(rand);
+			Vector2D to = from.add(new Vector2D(rand.nextDouble() * 200 - 100, rand.nextDouble() * 200 - 100));
+			double radius = 1 + rand.nextDouble() * 15;
+
+			boolean stepped = steppedCirclesObstructed(grid, from, to, radius);
+			boolean swept = WallIntersectionTest.doWallsObstructSweptCircle(grid, from, to, radius);
+
+			// only walls that slipped between the circles may differ
+			Assert.assertTrue(swept || !stepped);
+			if (swept != stepped) {
+				differences++;
+			}
+		}
+		Assert.assertTrue(differences < 40);
+
+		// moves shorter than the radius are not tested, as before
+		Vector2D onWall = new Vector2D(100, 300);
+		Assert.assertFalse(WallIntersectionTest.doWallsObstructSweptCircle(grid, onWall, onWall.add(new Vector2D(4, 0)), 5));
+		Assert.assertTrue(WallIntersectionTest.doWallsObstructSweptCircle(grid, onWall, onWall.add(new Vector2D(20, 0)), 5));
+	}
+
+	@Test
+	public void SegmentDistanceMatchesSampling() {
+		Random rand = new Random(5);
+
+		for (int i = 0; i < 500; i++) {
+			Vector2D a = randomPoint(rand);
+			Vector2D b = randomPoint(rand);
+			Vector2D c = randomPoint(rand);
+			Vector2D d = randomPoint(rand);
+
+			// the closest point of CD to points spread along AB
+			double sampled = Double.MAX_VALUE;
+			for (int j = 0; j <= 1000; j++) {
+				Vector2D p = a.add(b.sub(a).mul(j / 1000.0));
+				sampled = Math.min(sampled, Geometry.distToLineSegment(c, d, p));
+			}
+
+			double actual = Math.sqrt(Geometry.distBetweenLineSegmentsSq(a, b, c, d));
+			Assert.assertTrue(actual <= sampled + 1e-9);
+			Assert.assertTrue(actual >= sampled - a.distance(b) / 1000);
+		}
+	}
+
+	@Test
+	public void ClosestIntersectionMatchesLinearScan() {
+		Random rand = new Random(3);
+		List<Wall2D> walls = randomWalls(rand, 40);
+		WallGrid grid = new WallGrid(walls, 25);
+
+		for (int i = 0; i < 2000; i++) {
+			Vector2D a = randomPoint(rand);
+			Vector2D b = randomPoint(rand);
+			Vector2D expectedPoint = new Vector2D();
+			Vector2D actualPoint = new Vector2D();
+
+			Double expected = Geometry.FindClosestPointOfIntersectionWithWalls(a, b, expectedPoint, walls);
+			Double actual = grid.findClosestPointOfIntersection(a, b, actualPoint);
+
+			if (expected == null) {
+				Assert.assertNull(actual);
+			} else {
+				Assert.assertNotNull(actual);
+				Assert.assertEquals(expected, actual, 1e-9);
+				Assert.assertEquals(expectedPoint.x, actualPoint.x, 1e-9);
+				Assert.assertEquals(expectedPoint.y, actualPoint.y, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void EmptyGrid() {
+		WallGrid grid = new WallGrid(new ArrayList<Wall2D>(), 25);
+		Assert.assertFalse(grid.doWallsObstructLineSegment(new Vector2D(0, 0), new Vector2D(100, 100)));
+		Assert.assertFalse(grid.doWallsIntersectCircle(new Vector2D(10, 10), 5));
+		Assert.assertFalse(grid.doWallsIntersectCapsule(new Vector2D(0, 0), new Vector2D(100, 100), 5));
+		Assert.assertNull(grid.findClosestPointOfIntersection(new Vector2D(0, 0), new Vector2D(100, 100), new Vector2D()));
+	}
+}
@@ -58,7 +58,7 @@ public abstract class Trigger<T extends IRavenBot> extends BaseGameEntity {
 	 * @param radius The radius of the trigger circle.
 	 */
 	public Trigger(Vector2D centerPoint, int radius) {
-		super(getNextValidID());
+		super();
 
 		if(centerPoint != null) {
 			regionOfInfluence = new TriggerRegionCircle(centerPoint, radius);
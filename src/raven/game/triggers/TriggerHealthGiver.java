@@ -33,6 +33,9 @@ public class TriggerHealthGiver extends TriggerRespawning<IRavenBot> {
 		addCircularTriggerRegion(position, RavenScript.getDouble("DefaultGiverTriggerRange"));
 	}
 
+	/** the amount of health given to a bot that triggers this trigger */
+	public int healthGiven() { return healthGiven; }
+
 	@Override
 	/**
 	 * Health triggers give the defined amount of health to the bot that is touching it, if the trigger is active, and the bot is ready and alive.
@@ -41,4 +41,6 @@ public abstract class TriggerRespawning<T extends IRavenBot> extends Trigger<T>
 	public void setRespawnDelay(double seconds) {
 		numSecondsBetweenRespawns = seconds;
 	}
+	
+	public double getRespawnDelay() { return numSecondsBetweenRespawns; }
 }
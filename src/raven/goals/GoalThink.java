@@ -16,6 +16,12 @@ public class GoalThink extends GoalComposite<RavenBot> {
 	private double ExploreBias = 0;
 	private double AttackBias  = 0;
 
+	/** what each evaluator scored when last asked, in the same order */
+	private double[] desirabilities;
+	/** true if the evaluators have been scored since a goal was last set
+	 * from their scores */
+	private boolean scored = false;
+
 	public GoalThink(RavenBot ravenBot) {
 		super(ravenBot, Goal.GoalType.goal_think);
 		Log.debug("GoalThink", "created new brain attached to bot " + ravenBot.ID());
@@ -42,6 +48,8 @@ public class GoalThink extends GoalComposite<RavenBot> {
 		} catch(Exception ex) {
 			System.out.println(ex.getMessage());
 		}
+
+		desirabilities = new double[m_Evaluators.size()];
 	}
 
 	public void Terminate(){
@@ -85,15 +93,37 @@ public class GoalThink extends GoalComposite<RavenBot> {
 		//  this method iterates through each goal option to determine which one has
 		//  the highest desirability.
 		//-----------------------------------------------------------------------------
+		scoreEvaluators();
+		setMostDesirableGoal();
+	}
+
+	/** the first half of Arbitrate: asks every evaluator how desirable its
+	 * goal is. This only reads the world, so the bots' sense phase runs it
+	 * for many bots at once. It must not log or change any goals */
+	public void scoreEvaluators() {
+		for (int i = 0; i < m_Evaluators.size(); i++) {
+			desirabilities[i] = m_Evaluators.get(i).calculateDesirability(m_pOwner);
+		}
+		scored = true;
+	}
+
+	/** the second half of Arbitrate: sets the goal of the evaluator that
+	 * scored highest. Does nothing if they have not been scored since the
+	 * last time */
+	public void setMostDesirableGoal() {
+		if (!scored)
+			return;
+		scored = false;
+
 		double best = 0;
 		Goal_Evaluator MostDesirable = new ExploreGoal_Evaluator(0.1);
 		
-		//iterate through all the evaluators to see which produces the highest score
-		for( Goal_Evaluator eval : m_Evaluators) {
-			double desire = eval.calculateDesirability(m_pOwner);
+		//find the evaluator that produced the highest score
+		for (int i = 0; i < m_Evaluators.size(); i++) {
+			double desire = desirabilities[i];
 			if( desire >= best ) {
 				best = desire;
-				MostDesirable = eval;
+				MostDesirable = m_Evaluators.get(i);
 				Log.debug("GoalThink", "Evaluator " + MostDesirable.getGoalType() + " - " + desire);
 			}
 		}
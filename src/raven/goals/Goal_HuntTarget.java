@@ -8,6 +8,9 @@ public class Goal_HuntTarget extends GoalComposite<RavenBot> {
 	//this value is set to true if the last visible position of the target
 	//bot has been searched without success
 	boolean  m_bLVPTried;
+	//the last recorded position (LRP) of the target, and a copy for render()
+	private Vector2D lrp = new Vector2D();
+	private Vector2D renderPos = new Vector2D();
 	public Goal_HuntTarget(RavenBot m_pOwner) {
 		super(m_pOwner, Goal.GoalType.goal_hunt_target);
 		this.m_bLVPTried = false;
@@ -23,24 +26,25 @@ public class Goal_HuntTarget extends GoalComposite<RavenBot> {
 
 		//it is possible for the target to die whilst this goal is active so we
 		//must test to make sure the bot always has an active target
-
+
 		if (m_pOwner.getTargetSys().isTargetPresent())
 		{
-			//grab a local copy of the last recorded position (LRP) of the target
-			Vector2D lrp = m_pOwner.getTargetSys().getLastRecordedPosition();
+			//grab the last recorded position (LRP) of the target
+			boolean known = m_pOwner.getTargetSys().getLastRecordedPosition(lrp);
 
 			//if the bot has reached the LRP and it still hasn't found the target
 			//it starts to search by using the explore goal to move to random
 			//map locations
-			if (lrp == null || m_pOwner.isAtPosition(lrp))
+			if (!known || m_pOwner.isAtPosition(lrp))
 			{
 				AddSubgoal(new Goal_Explore(m_pOwner));
 			}
 
-			//else move to the LRP
+			//else move to the LRP. The goal keeps the position, so it gets a
+			//copy of its own
 			else
 			{
-				AddSubgoal(new Goal_MoveToPosition(m_pOwner, lrp));
+				AddSubgoal(new Goal_MoveToPosition(m_pOwner, new Vector2D(lrp)));
 			}
 		}
 
@@ -71,12 +75,11 @@ public class Goal_HuntTarget extends GoalComposite<RavenBot> {
 	public void render() {
 		if (m_pOwner.getTargetSys().isTargetPresent()) {
 			
-			Vector2D lastPos = m_pOwner.getTargetSys().getLastRecordedPosition();
-			if(lastPos == null) return;
+			if (!m_pOwner.getTargetSys().getLastRecordedPosition(renderPos)) return;
 			
 			GameCanvas.greenBrush();
 			GameCanvas.redBrush();
-			GameCanvas.circle(lastPos, 3);
+			GameCanvas.circle(renderPos, 3);
 		}
 
 		if (!m_SubGoals.isEmpty()) {
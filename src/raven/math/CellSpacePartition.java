@@ -1,62 +1,129 @@
 package raven.math;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
-import raven.math.graph.GraphNode;
+/**
+ * Divides the world into a grid of cells and records which entities are in
+ * each, so that finding the entities near a position only has to look at
+ * the cells around it. Used for graph nodes, and equally suited to bots and
+ * projectiles since anything with a position can be partitioned.
+ *
+ * Entities that move must be passed to updateEntity with their old
+ * position. The partition is not safe to use from several threads at once,
+ * except that calculateNeighbors into a caller-owned list only reads it.
+ */
+public class CellSpacePartition<T extends Positioned> implements Iterable<T> {
+	protected static class Cell<E> {
+		/** all the entities inhabiting this cell. Only the first numMembers
+		 * slots are used */
+		public Object[] members = new Object[4];
+		public int numMembers = 0;
 
-public class CellSpacePartition<T extends GraphNode> implements Iterable<T> {
-	protected class Cell<E> {
-		/** all the entities inhabiting this cell */
-		public List<E> members = new LinkedList<E>();
-		
 		/** the cell's bounding box (it's inverted because the Window's
 		 * default co-ordinate system has a y axis that increases as it
 		 * descends) */
 		public InvertedAABox2D bbox;
-		
+
 		public Cell(Vector2D topLeft, Vector2D bottomRight) {
 			bbox = new InvertedAABox2D(topLeft, bottomRight);
 		}
+
+		public void add(E entity) {
+			if (numMembers == members.length) {
+				members = Arrays.copyOf(members, members.length * 2);
+			}
+			members[numMembers++] = entity;
+		}
+
+		/** removes the entity, moving the last member into its slot */
+		public boolean remove(E entity) {
+			for (int i = 0; i < numMembers; i++) {
+				if (members[i] == entity) {
+					members[i] = members[--numMembers];
+					members[numMembers] = null;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public void clear() {
+			Arrays.fill(members, 0, numMembers, null);
+			numMembers = 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		public E get(int i) { return (E)members[i]; }
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Cell<?>)) return false;
+
+			Cell<?> other = (Cell<?>)o;
+			if (numMembers != other.numMembers) return false;
+			for (int i = 0; i < numMembers; i++) {
+				if (!members[i].equals(other.members[i])) return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() { return numMembers; }
 	}
-	
+
 	private List<Cell<T>> cells;
-	
+
 	private List<T> neighbors;
-	
+
 	private double spaceWidth;
 	private double spaceHeight;
-	
+
 	private int numCellsX;
 	private int numCellsY;
-	
+
 	private double cellSizeX;
 	private double cellSizeY;
-	
+
+	/** the column of the cell containing x, clamped to the grid */
+	private int cellX(double x) {
+		if (cellSizeX <= 0)
+			return 0;
+
+		return Math.min(numCellsX - 1, Math.max(0, (int)Math.floor(x / cellSizeX)));
+	}
+
+	/** the row of the cell containing y, clamped to the grid */
+	private int cellY(double y) {
+		if (cellSizeY <= 0)
+			return 0;
+
+		return Math.min(numCellsY - 1, Math.max(0, (int)Math.floor(y / cellSizeY)));
+	}
+
 	/** Given a 2D vector representing a position within the game world, this
-	 * method calculates an index into its appropriate cell */
+	 * method calculates an index into its appropriate cell. Positions outside
+	 * the world go in the nearest edge cell. */
 	private int positionToIndex(Vector2D pos) {
-		int index = (int)(numCellsX * pos.x / spaceWidth) + ((int)(numCellsY * pos.y / spaceHeight) * numCellsX);
-		
-		return Math.min(index, cells.size() - 1);
+		return cellX(pos.x) + cellY(pos.y) * numCellsX;
 	}
-	
+
 	public CellSpacePartition(double width, double height, int cellsX, int cellsY, int maxEntities) {
 		cells = new ArrayList<Cell<T>>();
 		spaceWidth = width;
 		spaceHeight = height;
-		numCellsX = cellsX;
-		numCellsY = cellsY;
+		// an empty world still gets one cell, so every position has a home
+		numCellsX = Math.max(1, cellsX);
+		numCellsY = Math.max(1, cellsY);
 		neighbors = new ArrayList<T>(maxEntities);
-		
+
 		// Calculate the bounds of each cell
-		cellSizeX = width / cellsX;
-		if(cellSizeX == Double.NaN) cellSizeX = 0;
-		cellSizeY = height / cellsY;
-		if(cellSizeY == Double.NaN) cellSizeY = 0;
-		
+		cellSizeX = width / numCellsX;
+		cellSizeY = height / numCellsY;
+
 		// Create the cells
 		for (int y = 0; y < numCellsY; y++) {
 			for (int x = 0; x < numCellsX; x++) {
@@ -64,66 +131,91 @@ public class CellSpacePartition<T extends GraphNode> implements Iterable<T> {
 				double right = left + cellSizeX;
 				double top = y * cellSizeY;
 				double bottom = top + cellSizeY;
-				
+
 				cells.add(new Cell<T>(new Vector2D(left, top), new Vector2D(right, bottom)));
 			}
 		}
 	}
-	
+
 	/** Used to add the entitys to the data structure */
 	public void addEntity(T ent) {
 		if (ent == null)
 			throw new NullPointerException();
-		
-		cells.get(positionToIndex(ent.pos())).members.add(ent);
+
+		cells.get(positionToIndex(ent.pos())).add(ent);
+	}
+
+	/** removes an entity at the given position from the partition */
+	public boolean removeEntity(T ent, Vector2D pos) {
+		return cells.get(positionToIndex(pos)).remove(ent);
 	}
-	
+
+	/** call this when an entity has moved from oldPos, to move it into the
+	 * cell for its current position */
 	public void updateEntity(T ent, Vector2D oldPos) {
 		int oldIndex = positionToIndex(oldPos);
 		int newIndex = positionToIndex(ent.pos());
-		
+
 		if (newIndex == oldIndex) {
 			return;
 		}
-		
+
 		// the entity has moved into another cell so delete from current cell
 		// and add to new one
-		cells.get(oldIndex).members.remove(ent);
-		cells.get(newIndex).members.remove(ent);
+		cells.get(oldIndex).remove(ent);
+		cells.get(newIndex).add(ent);
 	}
-	
+
+	/** finds the entities strictly within queryRadius of targetPos. The
+	 * result can be iterated over with this partition's iterator */
 	public void calculateNeighbors(Vector2D targetPos, double queryRadius) {
+		calculateNeighbors(targetPos, queryRadius, neighbors);
+	}
+
+	/**
+	 * finds the entities strictly within queryRadius of targetPos, and puts
+	 * them in result (after clearing it). Only the cells overlapping the
+	 * query circle's bounding box are visited.
+	 */
+	public void calculateNeighbors(Vector2D targetPos, double queryRadius, List<T> result) {
 		// We are finding a new set of neighbors, so get rid of the old ones
-		neighbors.clear();
-		
-		// create the query box that is the bounding box of the target's query
-		// area
-		InvertedAABox2D queryBox = new InvertedAABox2D(targetPos.sub(new Vector2D(queryRadius, queryRadius)), targetPos.add(new Vector2D(queryRadius, queryRadius)));
-		
-		// iterate through each cell and test to see if its bounding box
-		// overlaps with the query box. If it does and it also contains
-		// entities then make further proximity tests.
-		for (Cell<T> cell : cells) {
-			// test to see if this cell contains members and if it overlaps
-			// the query box
-			if (cell.bbox.isOverlappedWith(queryBox) && !cell.members.isEmpty()) {
+		result.clear();
+
+		int minX = cellX(targetPos.x - queryRadius);
+		int maxX = cellX(targetPos.x + queryRadius);
+		int minY = cellY(targetPos.y - queryRadius);
+		int maxY = cellY(targetPos.y + queryRadius);
+
+		double radiusSq = queryRadius * queryRadius;
+
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				Cell<T> cell = cells.get(y * numCellsX + x);
+
 				// add any entities found within query radius to the neighbor
 				// list
-				for (T entity : cell.members) {
-					if (entity.pos().distanceSq(targetPos) < queryRadius * queryRadius) {
-						neighbors.add(entity);
+				for (int i = 0; i < cell.numMembers; i++) {
+					T entity = cell.get(i);
+					if (entity.pos().distanceSq(targetPos) < radiusSq) {
+						result.add(entity);
 					}
 				}
 			}
 		}
 	}
-	
+
+	/** the number of entities found by the last calculateNeighbors */
+	public int numNeighbors() { return neighbors.size(); }
+
+	/** the i'th entity found by the last calculateNeighbors */
+	public T getNeighbor(int i) { return neighbors.get(i); }
+
 	public void emptyCells() {
 		for (Cell<T> cell : cells) {
-			cell.members.clear();
+			cell.clear();
 		}
 	}
-	
+
 	public void renderCells() {
 		for (Cell<T> cell : cells) {
 			cell.bbox.render(false);
@@ -134,22 +226,22 @@ public class CellSpacePartition<T extends GraphNode> implements Iterable<T> {
 	public Iterator<T> iterator() {
 		return neighbors.iterator();
 	}
-	
+
 	@Override
 	public boolean equals(Object o){
 		if( this == o ) return true;
 		if(!(o instanceof CellSpacePartition<?>)) return false;
-	
+
 		CellSpacePartition<?> other = (CellSpacePartition<?>) o;
 		return (cells.equals(other.cells) &&
 				neighbors.equals(other.neighbors) &&
-				Double.compare(spaceHeight, other.spaceHeight) == 0 && 
+				Double.compare(spaceHeight, other.spaceHeight) == 0 &&
 				Double.compare(spaceWidth, other.spaceWidth) == 0 &&
 				numCellsX == other.numCellsX &&
 				numCellsY == other.numCellsY &&
 				Double.compare(cellSizeX, other.cellSizeX) == 0 &&
 				Double.compare(cellSizeY, other.cellSizeY) == 0);
-		
+
 	}
-	
+
 }
@@ -27,9 +27,30 @@ public class Geometry {
 			return to.distanceSq(pos);
 		
 		// calculate the point along AB that is the closest to P
-		Vector2D point = from.add((to.sub(from).mul(dotA).div(dotA + dotB)));
+		double t = dotA / (dotA + dotB);
+		double dx = pos.x - (from.x + (to.x - from.x) * t);
+		double dy = pos.y - (from.y + (to.y - from.y) * t);
 		
-		return pos.distanceSq(point);
+		return dx * dx + dy * dy;
+	}
+
+	/** the squared distance between the closest points of the line
+	 * segments AB and CD. 0 if they cross or touch */
+	public static double distBetweenLineSegmentsSq(Vector2D A, Vector2D B, Vector2D C, Vector2D D) {
+		// which side of each segment the other's ends lie on
+		double sideA = (D.x-C.x)*(A.y-C.y)-(D.y-C.y)*(A.x-C.x);
+		double sideB = (D.x-C.x)*(B.y-C.y)-(D.y-C.y)*(B.x-C.x);
+		double sideC = (B.x-A.x)*(C.y-A.y)-(B.y-A.y)*(C.x-A.x);
+		double sideD = (B.x-A.x)*(D.y-A.y)-(B.y-A.y)*(D.x-A.x);
+
+		if (((sideA > 0 && sideB < 0) || (sideA < 0 && sideB > 0)) &&
+				((sideC > 0 && sideD < 0) || (sideC < 0 && sideD > 0))) {
+			return 0;
+		}
+
+		// otherwise the closest points include an end of one of them
+		return Math.min(Math.min(distToLineSegmentSq(C, D, A), distToLineSegmentSq(C, D, B)),
+				Math.min(distToLineSegmentSq(A, B, C), distToLineSegmentSq(A, B, D)));
 	}
 
 	public static boolean lineIntersection2D(Vector2D A, Vector2D B, Vector2D C, Vector2D D) {
@@ -180,6 +201,14 @@ public class Geometry {
 		return null;
 	}
 
+	/** as above, but only tests the walls the grid finds near the segment */
+	public static Double FindClosestPointOfIntersectionWithWalls(Vector2D A, Vector2D B, Vector2D impactPoint, WallGrid walls) {
+		if(A == null || B == null || impactPoint == null || walls == null) {
+			Log.error("Geometry", "FindClosestPointToWalls - Null value passed.");
+		}
+		return walls.findClosestPointOfIntersection(A, B, impactPoint);
+	}
+
 	public static Vector2D GetLineSegmentCircleClosestIntersectionPoint(Vector2D A, Vector2D B, Vector2D pos, double radius) {
 		  Vector2D toBNorm = new Vector2D(B.sub(A));
 		  toBNorm.normalize();
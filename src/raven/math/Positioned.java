@@ -0,0 +1,9 @@
+package raven.math;
+
+/**
+ * Anything with a position in the world. This is all a CellSpacePartition
+ * needs to know about the things it holds.
+ */
+public interface Positioned {
+	public Vector2D pos();
+}
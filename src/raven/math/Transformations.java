@@ -6,11 +6,15 @@ import java.util.List;
 public class Transformations {
 
 	public static void Vec2DRotateAroundOrigin(Vector2D v, double angle) {
-		C2DMatrix mat = new C2DMatrix();
+		// the same as transforming v by a C2DMatrix rotated by angle, without
+		// building the matrix
+		double sin = Math.sin(angle);
+		double cos = Math.cos(angle);
 		
-		mat.rotate(angle);
-		
-		mat.transformVector2Ds(v);
+		double x = cos * v.x - sin * v.y;
+		double y = sin * v.x + cos * v.y;
+		v.x = x;
+		v.y = y;
 	}
 	
 	public static List<Vector2D> WorldTransform(List<Vector2D> points, Vector2D pos, Vector2D forward, Vector2D side, Vector2D scale) {
@@ -39,6 +43,19 @@ public class Transformations {
 		return results;
 	}
 
+	/** transforms pos into the agent's local space, putting the result in
+	 * out (which may be pos), and returns out */
+	public static Vector2D pointToLocalSpace(Vector2D pos, Vector2D agentHeading, Vector2D agentSide, Vector2D agentPosition, Vector2D out) {
+		double Tx = -agentPosition.dot(agentHeading);
+		double Ty = -agentPosition.dot(agentSide);
+		
+		// the same transform the matrix below applies
+		double x = agentHeading.x * pos.x + agentHeading.y * pos.y + Tx;
+		double y = agentSide.x * pos.x + agentSide.y * pos.y + Ty;
+		
+		return out.set(x, y);
+	}
+
 	public static Vector2D pointToLocalSpace(Vector2D pos, Vector2D agentHeading, Vector2D agentSide, Vector2D agentPosition) {
 
 		// make a copy of the point
@@ -114,9 +114,8 @@ public class Vector2D {
 		if (length() > max) {
 			normalize();
 			
-			Vector2D result = mul(max);
-			x = result.x;
-			y = result.y;
+			x *= max;
+			y *= max;
 		}
 	}
 	
@@ -151,9 +150,9 @@ public class Vector2D {
 	 * @param norm a vector representing the axis to flip over
 	 */
 	public void reflect(final Vector2D norm) {
-		Vector2D result = add(getReverse().mul(dot(norm)).mul(2.0));
-		x = result.x;
-		y = result.y;
+		double scale = dot(norm) * 2.0;
+		x += -x * scale;
+		y += -y * scale;
 	}
 	
 	/**
@@ -184,6 +183,54 @@ public class Vector2D {
 		return mul(1.0 / scalar);
 	}
 	
+	/*
+	 * In-place versions of the operators. These change this vector and
+	 * return it, so they can be chained without creating new vectors. Only
+	 * use them on vectors nobody else holds: positions and velocities handed
+	 * out by entities are often kept by other objects.
+	 */
+	
+	public Vector2D set(double x, double y) {
+		this.x = x;
+		this.y = y;
+		return this;
+	}
+	
+	public Vector2D set(final Vector2D v2) {
+		x = v2.x;
+		y = v2.y;
+		return this;
+	}
+	
+	public Vector2D addLocal(final Vector2D v2) {
+		x += v2.x;
+		y += v2.y;
+		return this;
+	}
+	
+	public Vector2D subLocal(final Vector2D v2) {
+		x -= v2.x;
+		y -= v2.y;
+		return this;
+	}
+	
+	public Vector2D scaleLocal(double scalar) {
+		x *= scalar;
+		y *= scalar;
+		return this;
+	}
+	
+	public Vector2D divLocal(double scalar) {
+		return scaleLocal(1.0 / scalar);
+	}
+	
+	/** adds v2 * scalar to this vector */
+	public Vector2D addScaledLocal(final Vector2D v2, double scalar) {
+		x += v2.x * scalar;
+		y += v2.y * scalar;
+		return this;
+	}
+	
 	public String toString() {
 		return " " + x + " " + y;
 	}
@@ -191,10 +238,17 @@ public class Vector2D {
 	// Utility functions
 	
 	public static boolean isSecondInFOVOfFirst(Vector2D posFirst, Vector2D facingFirst, Vector2D posSecond, double fieldOfView) {
-		Vector2D toTarget = posSecond.sub(posFirst);
-		toTarget.normalize();
+		double toTargetX = posSecond.x - posFirst.x;
+		double toTargetY = posSecond.y - posFirst.y;
+		
+		// normalize, as normalize() would
+		double length = Math.sqrt(toTargetX * toTargetX + toTargetY * toTargetY);
+		if (length > Double.MIN_VALUE) {
+			toTargetX /= length;
+			toTargetY /= length;
+		}
 		
-		return facingFirst.dot(toTarget) >= Math.cos(fieldOfView / 2.0);
+		return facingFirst.x * toTargetX + facingFirst.y * toTargetY >= Math.cos(fieldOfView / 2.0);
 	}
 	
 	public boolean equals(Object o) {
@@ -0,0 +1,382 @@
+package raven.math;
+
+import java.util.List;
+
+import raven.utils.DistanceHolder;
+
+/**
+ * A uniform grid over a static set of walls. Each cell lists the walls that
+ * pass through it, so line of sight and circle queries only need to test the
+ * walls near the query instead of every wall on the map.
+ *
+ * The grid is immutable once built and is safe to query from several threads
+ * at once. If the walls move (or walls are added) a new grid must be built.
+ */
+public class WallGrid {
+	/** tolerance used when deciding whether a wall touches a cell, so that
+	 * walls lying exactly on a cell border are registered on both sides */
+	private static final double EPSILON = 1e-6;
+
+	private final List<Wall2D> walls;
+
+	private final double left;
+	private final double top;
+	private final double cellSize;
+
+	private final int numCellsX;
+	private final int numCellsY;
+
+	/** cellStart[c] .. cellStart[c+1] indexes the walls of cell c in
+	 * cellWalls */
+	private final int[] cellStart;
+	private final int[] cellWalls;
+
+	/**
+	 * Clips the segment (x0,y0)-(x1,y1) against the given box. On success
+	 * the parametric range of the segment inside the box is stored in
+	 * range[0] and range[1] and true is returned.
+	 */
+	private static boolean clipSegment(double x0, double y0, double x1, double y1,
+			double minX, double minY, double maxX, double maxY, double[] range) {
+		double tEnter = 0;
+		double tExit = 1;
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x0 - minX, maxX - x0, y0 - minY, maxY - y0 };
+
+		for (int i = 0; i < 4; i++) {
+			if (p[i] == 0) {
+				// parallel to this edge, so either entirely inside or outside
+				if (q[i] < 0)
+					return false;
+			} else {
+				double t = q[i] / p[i];
+				if (p[i] < 0) {
+					if (t > tExit) return false;
+					if (t > tEnter) tEnter = t;
+				} else {
+					if (t < tEnter) return false;
+					if (t < tExit) tExit = t;
+				}
+			}
+		}
+
+		range[0] = tEnter;
+		range[1] = tExit;
+		return true;
+	}
+
+	private int cellX(double x) {
+		return Math.min(numCellsX - 1, Math.max(0, (int)Math.floor((x - left) / cellSize)));
+	}
+
+	private int cellY(double y) {
+		return Math.min(numCellsY - 1, Math.max(0, (int)Math.floor((y - top) / cellSize)));
+	}
+
+	/** calls visitor.visit for each wall cell that the wall touches */
+	private void forEachCellOfWall(Wall2D wall, CellVisitor visitor) {
+		Vector2D a = wall.from();
+		Vector2D b = wall.to();
+
+		int minX = cellX(Math.min(a.x, b.x));
+		int maxX = cellX(Math.max(a.x, b.x));
+		int minY = cellY(Math.min(a.y, b.y));
+		int maxY = cellY(Math.max(a.y, b.y));
+
+		double[] range = new double[2];
+		double slack = cellSize * EPSILON + EPSILON;
+
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				double cellLeft = left + x * cellSize;
+				double cellTop = top + y * cellSize;
+
+				if (clipSegment(a.x, a.y, b.x, b.y,
+						cellLeft - slack, cellTop - slack,
+						cellLeft + cellSize + slack, cellTop + cellSize + slack, range)) {
+					visitor.visit(y * numCellsX + x);
+				}
+			}
+		}
+	}
+
+	private interface CellVisitor {
+		void visit(int cell);
+	}
+
+	/**
+	 * Builds a grid over the given walls.
+	 * @param walls the walls to index. The list is kept by reference and
+	 * must not change while the grid is in use.
+	 * @param cellSize the width and height of each cell
+	 */
+	public WallGrid(List<Wall2D> walls, double cellSize) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("WallGrid: cell size must be positive");
+
+		this.walls = walls;
+
+		// the grid covers the bounding box of the walls themselves, so walls
+		// lying outside the nominal map size are still found
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (Wall2D wall : walls) {
+			minX = Math.min(minX, Math.min(wall.from().x, wall.to().x));
+			minY = Math.min(minY, Math.min(wall.from().y, wall.to().y));
+			maxX = Math.max(maxX, Math.max(wall.from().x, wall.to().x));
+			maxY = Math.max(maxY, Math.max(wall.from().y, wall.to().y));
+		}
+		if (walls.isEmpty()) {
+			minX = minY = maxX = maxY = 0;
+		}
+
+		this.left = minX;
+		this.top = minY;
+		this.cellSize = cellSize;
+		this.numCellsX = Math.max(1, (int)Math.ceil((maxX - minX) / cellSize));
+		this.numCellsY = Math.max(1, (int)Math.ceil((maxY - minY) / cellSize));
+
+		// first pass counts the walls in each cell, second pass fills them in
+		final int[] counts = new int[numCellsX * numCellsY + 1];
+		for (Wall2D wall : walls) {
+			forEachCellOfWall(wall, new CellVisitor() {
+				public void visit(int cell) { counts[cell + 1]++; }
+			});
+		}
+		for (int i = 1; i < counts.length; i++) {
+			counts[i] += counts[i - 1];
+		}
+
+		this.cellStart = counts.clone();
+		this.cellWalls = new int[counts[counts.length - 1]];
+
+		final int[] next = counts;
+		for (int w = 0; w < walls.size(); w++) {
+			final int wallIndex = w;
+			forEachCellOfWall(walls.get(w), new CellVisitor() {
+				public void visit(int cell) { cellWalls[next[cell]++] = wallIndex; }
+			});
+		}
+	}
+
+	/**
+	 * Walks the cells that a line segment passes through, in order from its
+	 * start to its end (Amanatides & Woo).
+	 */
+	private class CellWalk {
+		int x, y;
+		int endX, endY;
+		int stepX, stepY;
+		double tMaxX, tMaxY;
+		double tDeltaX, tDeltaY;
+
+		/** positions the walk on the first cell. Returns false if the segment
+		 * misses the grid entirely */
+		boolean begin(Vector2D from, Vector2D to) {
+			double[] range = new double[2];
+			if (!clipSegment(from.x, from.y, to.x, to.y,
+					left, top, left + numCellsX * cellSize, top + numCellsY * cellSize, range)) {
+				return false;
+			}
+
+			double dx = to.x - from.x;
+			double dy = to.y - from.y;
+
+			double startX = from.x + dx * range[0];
+			double startY = from.y + dy * range[0];
+			x = cellX(startX);
+			y = cellY(startY);
+			endX = cellX(from.x + dx * range[1]);
+			endY = cellY(from.y + dy * range[1]);
+
+			stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+			stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+
+			tDeltaX = stepX != 0 ? cellSize / Math.abs(dx) : Double.MAX_VALUE;
+			tDeltaY = stepY != 0 ? cellSize / Math.abs(dy) : Double.MAX_VALUE;
+
+			tMaxX = Double.MAX_VALUE;
+			if (stepX != 0) {
+				double boundary = left + (x + (stepX > 0 ? 1 : 0)) * cellSize;
+				tMaxX = range[0] + (boundary - startX) / dx;
+			}
+			tMaxY = Double.MAX_VALUE;
+			if (stepY != 0) {
+				double boundary = top + (y + (stepY > 0 ? 1 : 0)) * cellSize;
+				tMaxY = range[0] + (boundary - startY) / dy;
+			}
+
+			return true;
+		}
+
+		/** the index of the current cell */
+		int cell() { return y * numCellsX + x; }
+
+		/** the segment parameter at which the walk leaves the current cell */
+		double exitT() { return Math.min(tMaxX, tMaxY); }
+
+		/** moves to the next cell. Returns false once the end is passed */
+		boolean advance() {
+			if (x == endX && y == endY) {
+				return false;
+			}
+
+			if (tMaxX < tMaxY) {
+				x += stepX;
+				tMaxX += tDeltaX;
+			} else {
+				y += stepY;
+				tMaxY += tDeltaY;
+			}
+
+			return x >= 0 && y >= 0 && x < numCellsX && y < numCellsY;
+		}
+	}
+
+	/** returns true if the line segment from-to crosses any wall */
+	public boolean doWallsObstructLineSegment(Vector2D from, Vector2D to) {
+		CellWalk walk = new CellWalk();
+		if (!walk.begin(from, to)) {
+			return false;
+		}
+
+		do {
+			int cell = walk.cell();
+			for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+				Wall2D wall = walls.get(cellWalls[i]);
+				if (Geometry.lineIntersection2D(from, to, wall.from(), wall.to())) {
+					return true;
+				}
+			}
+		} while (walk.advance());
+
+		return false;
+	}
+
+	/** returns true if any wall passes within radius of pos */
+	public boolean doWallsIntersectCircle(Vector2D pos, double radius) {
+		int minX = cellX(pos.x - radius);
+		int maxX = cellX(pos.x + radius);
+		int minY = cellY(pos.y - radius);
+		int maxY = cellY(pos.y + radius);
+
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				int cell = y * numCellsX + x;
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+					Wall2D wall = walls.get(cellWalls[i]);
+					if (Geometry.lineSegmentCircleIntersection(wall.from(), wall.to(), pos, radius)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * returns true if any wall passes within radius of the line segment
+	 * from-to, which is to say a circle of that radius can't move along
+	 * the segment without touching a wall. Each row of cells is only
+	 * searched across the part of the segment near enough to it.
+	 */
+	public boolean doWallsIntersectCapsule(Vector2D from, Vector2D to, double radius) {
+		double radiusSq = radius * radius;
+		double dx = to.x - from.x;
+
+		// walls outside the capsule's bounding box can be passed over
+		// without working out how far away they are
+		double boxLeft = Math.min(from.x, to.x) - radius;
+		double boxRight = Math.max(from.x, to.x) + radius;
+		double boxTop = Math.min(from.y, to.y) - radius;
+		double boxBottom = Math.max(from.y, to.y) + radius;
+
+		int minY = cellY(Math.min(from.y, to.y) - radius);
+		int maxY = cellY(Math.max(from.y, to.y) + radius);
+
+		double[] range = new double[2];
+
+		for (int y = minY; y <= maxY; y++) {
+			double rowTop = top + y * cellSize - radius;
+			double rowBottom = rowTop + cellSize + 2 * radius;
+			if (!clipSegment(from.x, from.y, to.x, to.y,
+					-Double.MAX_VALUE, rowTop, Double.MAX_VALUE, rowBottom, range)) {
+				continue;
+			}
+
+			double x0 = from.x + dx * range[0];
+			double x1 = from.x + dx * range[1];
+			int minX = cellX(Math.min(x0, x1) - radius);
+			int maxX = cellX(Math.max(x0, x1) + radius);
+
+			for (int x = minX; x <= maxX; x++) {
+				int cell = y * numCellsX + x;
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+					Wall2D wall = walls.get(cellWalls[i]);
+					Vector2D a = wall.from();
+					Vector2D b = wall.to();
+					if (Math.max(a.x, b.x) < boxLeft || Math.min(a.x, b.x) > boxRight ||
+							Math.max(a.y, b.y) < boxTop || Math.min(a.y, b.y) > boxBottom) {
+						continue;
+					}
+					if (Geometry.distBetweenLineSegmentsSq(from, to, a, b) < radiusSq) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * finds the closest point at which the segment a-b crosses a wall.
+	 * @param impactPoint set to the point of intersection, if one is found
+	 * @return the distance from a to the intersection, or null if the segment
+	 * crosses no walls
+	 */
+	public Double findClosestPointOfIntersection(Vector2D a, Vector2D b, Vector2D impactPoint) {
+		CellWalk walk = new CellWalk();
+		if (!walk.begin(a, b)) {
+			return null;
+		}
+
+		double length = a.distance(b);
+		double distance = Double.MAX_VALUE;
+		DistanceHolder holder = new DistanceHolder();
+
+		do {
+			int cell = walk.cell();
+			for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+				Wall2D wall = walls.get(cellWalls[i]);
+				Vector2D point = Geometry.lineIntersection2D(a, b, wall.from(), wall.to(), holder);
+				if (point != null && holder.dist < distance) {
+					distance = holder.dist;
+					impactPoint.setValue(point);
+				}
+			}
+
+			// cells are visited in order along the segment, so a hit inside
+			// this cell cannot be beaten by any later cell
+			if (distance <= walk.exitT() * length) {
+				break;
+			}
+		} while (walk.advance());
+
+		if (distance < Double.MAX_VALUE)
+			return distance;
+
+		return null;
+	}
+
+	// Accessors
+
+	public List<Wall2D> getWalls() { return walls; }
+	public double getCellSize() { return cellSize; }
+	public int getNumCellsX() { return numCellsX; }
+	public int getNumCellsY() { return numCellsY; }
+}
@@ -24,5 +24,54 @@ public class WallIntersectionTest {
 		return false;
 	}
 
+	/** returns true if any wall passes within radius of the segment from-to */
+	public static boolean doWallsIntersectCapsule(List<Wall2D> walls, Vector2D from, Vector2D to, double radius) {
+		for (Wall2D wall : walls) {
+			if (Geometry.distBetweenLineSegmentsSq(from, to, wall.from(), wall.to()) < radius * radius) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+
+	public static boolean doWallsObstructLineSegment(Vector2D from, Vector2D to, WallGrid walls) {
+		return walls.doWallsObstructLineSegment(from, to);
+	}
+
+	public static boolean doWallsIntersectCircle(WallGrid walls, Vector2D pos, double radius) {
+		return walls.doWallsIntersectCircle(pos, radius);
+	}
+
+	public static boolean doWallsIntersectCapsule(WallGrid walls, Vector2D from, Vector2D to, double radius) {
+		return walls.doWallsIntersectCapsule(from, to, radius);
+	}
+
+	/**
+	 * returns true if a circle of the given radius can't move from a to b
+	 * without touching a wall. The move is tested as one capsule of that
+	 * radius, running from half a radius past a to the first half-radius
+	 * step that is within a radius of b. Moves no longer than the radius
+	 * are always clear, and a radius of 0 tests the bare line.
+	 *
+	 * The capsule covers every circle placed each half radius along the
+	 * same stretch, so it flags every move those stepped circles flag, and
+	 * also any wall passing between them. On the default map 165 of 200,000
+	 * random moves differ from the stepped circles (see WallGridTest).
+	 */
+	public static boolean doWallsObstructSweptCircle(WallGrid walls, Vector2D a, Vector2D b, double radius) {
+		double distance = a.distance(b);
+		if (distance <= radius)
+			return false;
+
+		if (radius <= 0)
+			return walls.doWallsObstructLineSegment(a, b);
+
+		double step = 0.5 * radius;
+		double last = Math.ceil((distance - radius) / step) * step;
+
+		Vector2D toB = b.sub(a).div(distance);
+		return walls.doWallsIntersectCapsule(a.add(toB.mul(step)), a.add(toB.mul(last)), radius);
+	}
 
 }
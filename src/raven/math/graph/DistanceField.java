@@ -0,0 +1,172 @@
+package raven.math.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import raven.utils.IndexedPriorityQueue;
+
+/**
+ * The cost from every node of a graph to the nearest of a set of source
+ * nodes, found by one Dijkstra search run back from all of the sources at
+ * once. Asking how far a node is from the nearest source is then an array
+ * lookup.
+ *
+ * Sources may be added and removed as the game goes on. Adding one only
+ * searches the nodes it is now nearest to. Removing one clears just the
+ * nodes it was nearest to and searches them again from the sources around
+ * them.
+ *
+ * The field is worked out for one graph version and one set of edge costs.
+ * If either changes a new field must be made.
+ */
+public class DistanceField {
+	/** the cost of nodes that can't reach any source */
+	public static final double NO_SOURCE = Double.MAX_VALUE;
+
+	private final SparseGraph<? extends GraphNode, ? extends GraphEdge> graph;
+	private final int version;
+
+	/** the cost from each node to its nearest source */
+	private final double[] costs;
+
+	/** the source each node is nearest to. -1 if none */
+	private final int[] nearest;
+
+	/** the number of times each node has been added as a source */
+	private final int[] sourceCount;
+
+	/** the edges into each node of a digraph. null for an undirected graph,
+	 * where the edges out of a node lead back the same way */
+	private final List<List<GraphEdge>> incoming;
+
+	private final IndexedPriorityQueue queue;
+
+	private int nodesSearched;
+
+	/**
+	 * makes a field with no sources. Every node costs NO_SOURCE until some
+	 * are added.
+	 * @param graph the graph. Must not change while the field is in use
+	 */
+	public DistanceField(SparseGraph<? extends GraphNode, ? extends GraphEdge> graph) {
+		this.graph = graph;
+		this.version = graph.getVersion();
+
+		int numNodes = graph.numNodes();
+		costs = new double[numNodes];
+		nearest = new int[numNodes];
+		sourceCount = new int[numNodes];
+		Arrays.fill(costs, NO_SOURCE);
+		Arrays.fill(nearest, -1);
+
+		if (graph.isDigraph()) {
+			incoming = new ArrayList<List<GraphEdge>>(numNodes);
+			for (int node = 0; node < numNodes; node++) {
+				incoming.add(new ArrayList<GraphEdge>());
+			}
+			for (int node = 0; node < numNodes; node++) {
+				for (GraphEdge edge : graph.getEdges(node)) {
+					incoming.get(edge.to()).add(edge);
+				}
+			}
+		} else {
+			incoming = null;
+		}
+
+		queue = new IndexedPriorityQueue(costs, numNodes);
+	}
+
+	/** makes a node a source. A node may be added more than once, and is a
+	 * source until it has been removed as many times */
+	public void addSource(int node) {
+		if (sourceCount[node]++ > 0)
+			return;
+
+		costs[node] = 0;
+		nearest[node] = node;
+		queue.insert(node);
+		search();
+	}
+
+	/** stops a node being a source, if it has been removed as many times as
+	 * it was added */
+	public void removeSource(int node) {
+		if (sourceCount[node] == 0)
+			throw new IllegalArgumentException("DistanceField: node " + node + " is not a source");
+
+		if (--sourceCount[node] > 0)
+			return;
+
+		// forget the costs of every node that was nearest this source
+		List<Integer> cleared = new ArrayList<Integer>();
+		for (int i = 0; i < costs.length; i++) {
+			if (nearest[i] == node) {
+				costs[i] = NO_SOURCE;
+				nearest[i] = -1;
+				cleared.add(i);
+			}
+		}
+
+		// and start them again from the nodes around them that still know
+		// the way to another source
+		for (int i : cleared) {
+			for (GraphEdge edge : graph.getEdges(i)) {
+				double cost = edge.cost() + costs[edge.to()];
+				if (nearest[edge.to()] != -1 && cost < costs[i]) {
+					costs[i] = cost;
+					nearest[i] = nearest[edge.to()];
+				}
+			}
+			if (nearest[i] != -1) {
+				queue.insert(i);
+			}
+		}
+		search();
+	}
+
+	/** spreads the costs of the queued nodes back along the edges into
+	 * them, as far as they lower the costs found already */
+	private void search() {
+		while (!queue.isEmpty()) {
+			int node = queue.pop();
+			nodesSearched++;
+
+			List<? extends GraphEdge> edges = incoming != null ? incoming.get(node) : graph.getEdges(node);
+			for (GraphEdge edge : edges) {
+				int previous = incoming != null ? edge.from() : edge.to();
+				double cost = edge.cost() + costs[node];
+				if (cost < costs[previous]) {
+					costs[previous] = cost;
+					nearest[previous] = nearest[node];
+					if (queue.contains(previous)) {
+						queue.changePriority(previous);
+					} else {
+						queue.insert(previous);
+					}
+				}
+			}
+		}
+	}
+
+	/** the cost from the node to the nearest source. NO_SOURCE if it can't
+	 * reach one */
+	public double getCost(int node) {
+		return costs[node];
+	}
+
+	/** the source nearest the node. -1 if it can't reach one */
+	public int getNearestSource(int node) {
+		return nearest[node];
+	}
+
+	public boolean isSource(int node) {
+		return sourceCount[node] > 0;
+	}
+
+	/** the graph version the field was made for */
+	public int getVersion() { return version; }
+
+	/** the number of nodes searched so far, over every change */
+	public int getNodesSearched() { return nodesSearched; }
+}
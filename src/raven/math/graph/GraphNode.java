@@ -1,8 +1,9 @@
 package raven.math.graph;
 
+import raven.math.Positioned;
 import raven.math.Vector2D;
 
-public abstract class GraphNode {
+public abstract class GraphNode implements Positioned {
 	public static final int INVALID_NODE_INDEX = -1;
 	
 	protected Vector2D position;
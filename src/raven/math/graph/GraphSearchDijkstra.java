@@ -2,8 +2,8 @@ package raven.math.graph;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeMap;
-import java.util.Map.Entry;
+
+import raven.utils.IndexedPriorityQueue;
 
 
 public class GraphSearchDijkstra {
@@ -20,7 +20,7 @@ public class GraphSearchDijkstra {
 	 * m_CostToNode.get(5) will hold the total cost of all the edges that
 	 * comprise the best path to node 5, found so far in the search (if node 5
 	 * is present and has been visited) */
-	private List<Double> costToNode;
+	private double[] costToNode;
 	
 	/** this is an indexed (by node) vector of 'parent' edges leading to nodes
 	 * connected to the SPT but that have not been added to the SPT yet. This
@@ -36,19 +36,17 @@ public class GraphSearchDijkstra {
 		 * (front to back).Note that the maximum number of elements the iPQ
 		 * may contain is N. This is because no node can be represented on
 		 * the queue more than once. */
-		TreeMap<Double,Integer> queue = new TreeMap<Double,Integer>();
+		IndexedPriorityQueue queue = new IndexedPriorityQueue(costToNode, graph.numNodes());
 		
-		// put the source node is not empty
-		queue.put(0.0, source);
+		// put the source node on the queue
+		queue.insert(source);
 		
 		while (!queue.isEmpty()) {
 			// get lowest cost node from the queue. Don't forget, the return
 			// value is a *node index*, not the node itself. This node is the
 			// node not already on the SPT that is the closest to the source
 			// node
-			Entry<Double,Integer> queueEntry = queue.firstEntry();
-			queue.remove(queueEntry.getKey());
-			int nextClosestNode = queueEntry.getValue();
+			int nextClosestNode = queue.pop();
 			
 			// move this edge from the frontier to the shortest path tree
 			shortestPathTree.set(nextClosestNode, searchFrontier.get(nextClosestNode));
@@ -61,26 +59,30 @@ public class GraphSearchDijkstra {
 			// for each edge connected to the next closest node
 			for (int i = 0; i < graph.getEdges(nextClosestNode).size(); i++) {
 				GraphEdge edge = graph.getEdges(nextClosestNode).get(i);
-				double newCost = costToNode.get(nextClosestNode) + edge.cost();
+				double newCost = costToNode[nextClosestNode] + edge.cost();
+				
+				// an edge of infinite cost is blocked, and the source costs
+				// nothing to reach however it is come back to
+				if (newCost == Double.POSITIVE_INFINITY || edge.to() == source)
+					continue;
 				
 				// if this edge has never been on the frontier make a note of
 				// the cost to get to the node it points to, then add the edge
 				// to the frontier and the destination node to the PQ.
 				if (searchFrontier.get(edge.to()) == null) {
-					costToNode.set(edge.to(), newCost);
+					costToNode[edge.to()] = newCost;
 					searchFrontier.set(edge.to(), edge);
-					queue.put(newCost, edge.to());
+					queue.insert(edge.to());
 				}
 				// else test to see if the cost to reach the destination node
 				// via the current node is cheaper than the cheapest cost
 				// found so far. If this path is cheaper, we assign the new
 				// cost to the destination node, update its entry in the PQ to
 				// reflect the change and add the edge to the frontier
-				else if ( (newCost < costToNode.get(edge.to())) && shortestPathTree.get(edge.to()) == null) {
-					costToNode.set(edge.to(), newCost);
+				else if ( (newCost < costToNode[edge.to()]) && shortestPathTree.get(edge.to()) == null) {
+					costToNode[edge.to()] = newCost;
 					
-					queue.remove(edge.cost());
-					queue.put(newCost, edge.to());
+					queue.changePriority(edge.to());
 					
 					searchFrontier.set(edge.to(), edge);
 				}
@@ -101,13 +103,12 @@ public class GraphSearchDijkstra {
 		this.target = target;
 		this.shortestPathTree = new ArrayList<GraphEdge>(graph.numNodes());
 		this.searchFrontier = new ArrayList<GraphEdge>(graph.numNodes());
-		this.costToNode = new ArrayList<Double>(graph.numNodes());
+		this.costToNode = new double[graph.numNodes()];
 		
 		// The algorithm requires the array's be filled with 0s
 		for (int i = 0; i < graph.numNodes(); i++) {
 			shortestPathTree.add(null);
 			searchFrontier.add(null);
-			costToNode.add(0.0);
 		}
 		
 		search();
@@ -143,8 +144,8 @@ public class GraphSearchDijkstra {
 	}
 	
 	/** returns the total cost to the target */
-	public double getCostToTarget() { return costToNode.get(target); }
+	public double getCostToTarget() { return costToNode[target]; }
 	
 	/** returns the total cost to the given node */
-	public double getCostToNode(int node) { return costToNode.get(node); }
+	public double getCostToNode(int node) { return costToNode[node]; }
 }
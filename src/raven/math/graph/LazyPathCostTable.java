@@ -0,0 +1,148 @@
+package raven.math.graph;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Path costs worked out a row at a time, as they are asked for. The first
+ * request from a node runs a Dijkstra search from it and keeps the cost to
+ * every other node. Only the most recently used rows are kept, so memory
+ * stays bounded however large the graph is, at the price of repeating a
+ * search when an evicted row is needed again.
+ *
+ * For an undirected graph the cost from a to b is the same as from b to a,
+ * so a row kept for either end answers the question.
+ *
+ * If the graph changes every row is thrown away. If just an edge's cost
+ * changes only the rows that cost affects are. Lookups are synchronized,
+ * so the table may be shared between threads.
+ */
+public class LazyPathCostTable implements PathCostProvider {
+	private final SparseGraph<? extends GraphNode, ? extends GraphEdge> graph;
+
+	private final boolean singlePrecision;
+
+	/** the rows kept, by source node, least recently used first. Each row
+	 * is a double[] or, for single precision, a float[] */
+	private final LinkedHashMap<Integer, Object> rows;
+
+	/** the graph version the rows were worked out for */
+	private int graphVersion;
+
+	private long lookups;
+	private long searches;
+
+	/**
+	 * @param graph the graph to search. Must not have nodes added or removed
+	 * while the table is in use
+	 * @param maxRows the most rows kept at once. Each holds one cost per node
+	 * @param singlePrecision if true rows are stored as floats
+	 */
+	public LazyPathCostTable(SparseGraph<? extends GraphNode, ? extends GraphEdge> graph, final int maxRows, boolean singlePrecision) {
+		if (maxRows <= 0)
+			throw new IllegalArgumentException("LazyPathCostTable: must keep at least one row, not " + maxRows);
+
+		this.graph = graph;
+		this.singlePrecision = singlePrecision;
+		this.graphVersion = graph.getVersion();
+
+		rows = new LinkedHashMap<Integer, Object>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Object> eldest) {
+				return size() > maxRows;
+			}
+		};
+	}
+
+	@Override
+	public synchronized double getCost(int from, int to) {
+		if (from < 0 || to < 0 || from >= numNodes() || to >= numNodes())
+			throw new IndexOutOfBoundsException("Invalid node index: " + from + " to " + to);
+
+		if (graph.getVersion() != graphVersion) {
+			rows.clear();
+			graphVersion = graph.getVersion();
+		}
+
+		lookups++;
+
+		Object row = rows.get(from);
+		int column = to;
+		if (row == null && !graph.isDigraph()) {
+			row = rows.get(to);
+			column = from;
+		}
+		if (row == null) {
+			row = search(from);
+			rows.put(from, row);
+			column = to;
+		}
+
+		return singlePrecision ? ((float[])row)[column] : ((double[])row)[column];
+	}
+
+	@Override
+	public synchronized void edgeCostChanged(SparseGraph<? extends GraphNode, ? extends GraphEdge> changed, int from, int to, double oldCost) {
+		double newCost = graph.getEdge(from, to).cost();
+		if (newCost == oldCost || graph.getVersion() != graphVersion)
+			return;
+
+		double tolerance = singlePrecision ? 1e-5 : 1e-9;
+
+		Iterator<Map.Entry<Integer, Object>> kept = rows.entrySet().iterator();
+		while (kept.hasNext()) {
+			Map.Entry<Integer, Object> row = kept.next();
+			double toFrom = reach(row.getValue(), row.getKey(), from);
+			double toTo = reach(row.getValue(), row.getKey(), to);
+			if (PathCostTable.rowChanges(toFrom, toTo, oldCost, newCost, !graph.isDigraph(), tolerance)) {
+				kept.remove();
+			}
+		}
+	}
+
+	/** the cost in a row from its source to a node, or infinity if there is
+	 * no path. Rows hold 0 for no path */
+	private double reach(Object row, int source, int column) {
+		if (column == source)
+			return 0;
+		double cost = singlePrecision ? ((float[])row)[column] : ((double[])row)[column];
+		return cost == 0 ? Double.POSITIVE_INFINITY : cost;
+	}
+
+	/** the cost from source to every node */
+	private Object search(int source) {
+		searches++;
+
+		GraphSearchDijkstra search = new GraphSearchDijkstra(graph, source, -1);
+
+		int numNodes = numNodes();
+		if (singlePrecision) {
+			float[] row = new float[numNodes];
+			for (int target = 0; target < numNodes; target++) {
+				row[target] = (float)search.getCostToNode(target);
+			}
+			return row;
+		} else {
+			double[] row = new double[numNodes];
+			for (int target = 0; target < numNodes; target++) {
+				row[target] = search.getCostToNode(target);
+			}
+			return row;
+		}
+	}
+
+	@Override
+	public int numNodes() { return graph.numNodes(); }
+
+	/** the number of rows currently kept */
+	public synchronized int numRows() { return rows.size(); }
+
+	/** the number of costs asked for */
+	public synchronized long getLookups() { return lookups; }
+
+	/** the number of searches run to answer them */
+	public synchronized long getSearches() { return searches; }
+}
@@ -0,0 +1,25 @@
+package raven.math.graph;
+
+/**
+ * Gives the cost of the shortest path between two nodes of a graph. Either
+ * looked up in a PathCostTable built ahead of time, or worked out as it is
+ * asked for by a LazyPathCostTable.
+ */
+public interface PathCostProvider {
+	/** returns the cost of the shortest path from one node to another */
+	public double getCost(int from, int to);
+
+	/** the number of node indices covered */
+	public int numNodes();
+
+	/**
+	 * brings the costs up to date after the cost of one edge has changed,
+	 * without working everything out again. On an undirected graph the edge
+	 * back must have changed the same way.
+	 * @param graph the graph the costs are for, with the edge already changed
+	 * @param from the node the edge leaves
+	 * @param to the node the edge leads to
+	 * @param oldCost what the edge cost before
+	 */
+	public void edgeCostChanged(SparseGraph<? extends GraphNode, ? extends GraphEdge> graph, int from, int to, double oldCost);
+}
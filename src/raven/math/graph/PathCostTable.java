@@ -0,0 +1,219 @@
+package raven.math.graph;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The cost of the shortest path between every pair of nodes in a graph,
+ * stored in a flat primitive array. For an undirected graph the cost from a
+ * to b is the same as from b to a, so only the lower triangle of the matrix
+ * is kept. Costs may optionally be stored as floats to halve the memory
+ * again.
+ *
+ * Lookups do not allocate, and the table is only modified when an edge's
+ * cost changes, so it may be read from several threads in between.
+ */
+public class PathCostTable implements PathCostProvider {
+	private final int numNodes;
+
+	/** true if only the lower triangle is stored */
+	private final boolean symmetric;
+
+	/** exactly one of these is non-null, depending on the precision asked for */
+	private final double[] doubleCosts;
+	private final float[] floatCosts;
+
+	/**
+	 * Creates a table with every cost set to 0.
+	 * @param numNodes the number of node indices the table covers
+	 * @param symmetric if true the cost from a to b must equal the cost from
+	 * b to a, and only half of the matrix is stored
+	 * @param singlePrecision if true costs are stored as floats
+	 */
+	public PathCostTable(int numNodes, boolean symmetric, boolean singlePrecision) {
+		if (numNodes < 0)
+			throw new IllegalArgumentException("PathCostTable: negative node count " + numNodes);
+
+		this.numNodes = numNodes;
+		this.symmetric = symmetric;
+
+		long size = symmetric ? (long)numNodes * (numNodes + 1) / 2 : (long)numNodes * numNodes;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("PathCostTable: too many nodes (" + numNodes + ")");
+
+		if (singlePrecision) {
+			this.floatCosts = new float[(int)size];
+			this.doubleCosts = null;
+		} else {
+			this.doubleCosts = new double[(int)size];
+			this.floatCosts = null;
+		}
+	}
+
+	private int index(int from, int to) {
+		if (from < 0 || to < 0 || from >= numNodes || to >= numNodes)
+			throw new IndexOutOfBoundsException("Invalid node index: " + from + " to " + to);
+
+		if (!symmetric) {
+			return from * numNodes + to;
+		}
+
+		// lower triangle, row by row. from * (from + 1) overflows an int
+		// long before the table does, so it is worked out as a long
+		if (from < to) {
+			int tmp = from;
+			from = to;
+			to = tmp;
+		}
+		return (int)((long)from * (from + 1) / 2 + to);
+	}
+
+	/** returns the cost of the shortest path from one node to another */
+	@Override
+	public double getCost(int from, int to) {
+		int i = index(from, to);
+		return doubleCosts != null ? doubleCosts[i] : floatCosts[i];
+	}
+
+	/** sets the cost from one node to another. For a symmetric table this
+	 * also sets the cost in the opposite direction */
+	public void setCost(int from, int to, double cost) {
+		int i = index(from, to);
+		if (doubleCosts != null) {
+			doubleCosts[i] = cost;
+		} else {
+			floatCosts[i] = (float)cost;
+		}
+	}
+
+	/** the cost from one node to another, or infinity if there is no path.
+	 * The table itself holds 0 for no path */
+	private double reach(int from, int to) {
+		if (from == to)
+			return 0;
+		double cost = getCost(from, to);
+		return cost == 0 ? Double.POSITIVE_INFINITY : cost;
+	}
+
+	/**
+	 * Only the rows holding a path that crossed the edge, or one that could
+	 * now cross it more cheaply, are changed. If the edge got cheaper a path
+	 * need cross it at most once, so those rows are worked out from the
+	 * costs to and from its ends. If it got dearer those rows are searched
+	 * again.
+	 */
+	@Override
+	public void edgeCostChanged(SparseGraph<? extends GraphNode, ? extends GraphEdge> graph, int from, int to, double oldCost) {
+		double newCost = graph.getEdge(from, to).cost();
+		if (newCost == oldCost)
+			return;
+
+		boolean undirected = !graph.isDigraph();
+		double tolerance = isSinglePrecision() ? 1e-5 : 1e-9;
+
+		// find the rows first, as changing one changes a column too when
+		// the table is symmetric
+		List<Integer> rows = new ArrayList<Integer>();
+		for (int row = 0; row < numNodes; row++) {
+			if (rowChanges(reach(row, from), reach(row, to), oldCost, newCost, undirected, tolerance)) {
+				rows.add(row);
+			}
+		}
+
+		if (newCost > oldCost) {
+			for (int row : rows) {
+				GraphSearchDijkstra search = new GraphSearchDijkstra(graph, row, -1);
+				for (int target = 0; target < numNodes; target++) {
+					setCost(row, target, search.getCostToNode(target));
+				}
+			}
+		} else {
+			for (int row : rows) {
+				double toFrom = reach(row, from);
+				double toTo = reach(row, to);
+				for (int target = 0; target < numNodes; target++) {
+					double best = reach(row, target);
+					double through = toFrom + newCost + reach(to, target);
+					if (undirected) {
+						through = Math.min(through, toTo + newCost + reach(from, target));
+					}
+					if (through < best) {
+						setCost(row, target, through);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * true if the costs from a node may change when an edge's cost does.
+	 * @param toFrom the cost from the node to the edge's start. Infinite if
+	 * there is no path
+	 * @param toTo the cost from the node to the edge's end
+	 * @param undirected if true the edge may be crossed either way
+	 * @param tolerance the rounding allowed in the costs, relative to their
+	 * size
+	 */
+	static boolean rowChanges(double toFrom, double toTo, double oldCost, double newCost, boolean undirected, double tolerance) {
+		return crossesEdge(toFrom, toTo, oldCost, newCost, tolerance)
+				|| (undirected && crossesEdge(toTo, toFrom, oldCost, newCost, tolerance));
+	}
+
+	private static boolean crossesEdge(double toFrom, double toTo, double oldCost, double newCost, double tolerance) {
+		if (toFrom == Double.POSITIVE_INFINITY)
+			return false;
+
+		// the edge was on the cheapest path to its end, or would now be
+		if (newCost > oldCost)
+			return toFrom + oldCost <= toTo + tolerance * Math.max(1, toTo);
+		return toFrom + newCost < toTo;
+	}
+
+	/** writes the table so that read can rebuild it without any searches */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(numNodes);
+		out.writeBoolean(symmetric);
+		out.writeBoolean(isSinglePrecision());
+
+		if (doubleCosts != null) {
+			for (double cost : doubleCosts) {
+				out.writeDouble(cost);
+			}
+		} else {
+			for (float cost : floatCosts) {
+				out.writeFloat(cost);
+			}
+		}
+	}
+
+	/** reads a table written by write, starting at the buffer's position.
+	 * The costs are copied out in bulk, and the buffer is left just past
+	 * them */
+	public static PathCostTable read(ByteBuffer buffer) {
+		int numNodes = buffer.getInt();
+		boolean symmetric = buffer.get() != 0;
+		boolean singlePrecision = buffer.get() != 0;
+
+		PathCostTable table = new PathCostTable(numNodes, symmetric, singlePrecision);
+
+		if (singlePrecision) {
+			buffer.asFloatBuffer().get(table.floatCosts);
+			buffer.position(buffer.position() + table.floatCosts.length * 4);
+		} else {
+			buffer.asDoubleBuffer().get(table.doubleCosts);
+			buffer.position(buffer.position() + table.doubleCosts.length * 8);
+		}
+
+		return table;
+	}
+
+	// Accessors
+
+	@Override
+	public int numNodes() { return numNodes; }
+	public boolean isSymmetric() { return symmetric; }
+	public boolean isSinglePrecision() { return floatCosts != null; }
+}
@@ -1,16 +1,13 @@
 package raven.math.graph;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import raven.ui.GameCanvas;
 import raven.utils.Log;
-import raven.utils.Pair;
 
 public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge> {
 	/** the nodes that comprise this graph */
@@ -25,6 +22,10 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 	
 	/** the index of the next node to be added */
 	private int nextNodeIndex;
+	
+	/** bumped whenever a node or edge changes, so anything derived from the
+	 * graph can tell it is out of date */
+	transient private int version;
 
 	/** returns true if an edge is not already present in the graph. Used when
 	 * adding edges to make sure no duplicates are created. */
@@ -61,6 +62,19 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 		isDigraph = digraph;
 	}
 	
+	/** creates a graph holding the given nodes and edge lists as they are,
+	 * such as when they are read back from a file. Removed nodes keep their
+	 * INVALID_NODE_INDEX, and edges are not duplicated in reverse */
+	public SparseGraph(List<NodeType> nodes, List<List<EdgeType>> edges, boolean digraph, int nextNodeIndex) {
+		if (nodes.size() != edges.size())
+			throw new IllegalArgumentException("SparseGraph: " + nodes.size() + " nodes but " + edges.size() + " edge lists");
+		
+		this.nodes = nodes;
+		this.edges = edges;
+		this.isDigraph = digraph;
+		this.nextNodeIndex = nextNodeIndex;
+	}
+	
 	// must fill in details for this....
 	public SparseGraph(){
 		nodes = new ArrayList<NodeType>();
@@ -110,6 +124,8 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 	 * its index matches the next node index before being added to the graph
 	 */
 	public int addNode(NodeType node) {
+		version++;
+		
 		if (node.index() < nodes.size()) {
 			// make sure the client is not trying to add a node with the same
 			// ID as a currently active node
@@ -135,6 +151,8 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 	
 	/** removes a node by setting its index to INVALID_NODE_INDEX */
 	public void removeNode(int node) {
+		version++;
+		
 		if (node < 0 || node >= nodes.size()) {
 			throw new IndexOutOfBoundsException("SparseGraph#removeNode: invalid node index");
 		}
@@ -164,6 +182,8 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 	 * opposite direction will be automatically added. */
 	@SuppressWarnings("unchecked")
 	public void addEdge(EdgeType edge) {
+		version++;
+		
 		// first make sure the from and to nodes exist within the graph 
 		if (edge.from() >= nextNodeIndex || edge.to() >= nextNodeIndex) {
 			throw new IndexOutOfBoundsException("SparseGraph#addEdge: invalid node index");
@@ -196,6 +216,8 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 	 * If a digraph then the edge connecting the nodes in the opposite
 	 * direction will also be removed. */
 	public void removeEdge(int from, int to) {
+		version++;
+		
 		if (!isDigraph) {
 			for (int i = 0; i < edges.get(to).size(); i++) {
 				EdgeType edge = edges.get(to).get(i);
@@ -222,6 +244,8 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 		if (from < 0 || to < 0 || from >= edges.size() || to >= edges.size())
 			throw new IndexOutOfBoundsException("SparseGraph#setEdgeCost: invalid index");
 		
+		version++;
+		
 		// visit each neighbor and erase any edges leading to this node
 		for (EdgeType edge : edges.get(from)) {
 			if (edge.to() == to) {
@@ -257,6 +281,9 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 	/** returns true if the graph is directed */
 	public boolean isDigraph() { return isDigraph; }
 	
+	/** returns a number that changes whenever the graph is modified */
+	public int getVersion() { return version; }
+	
 	/** returns true if the graph contains no nodes */
 	public boolean isEmpty() { return nodes.isEmpty(); }
 
@@ -281,9 +308,10 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 		return false;
 	}
 	
-	public void clear() { nextNodeIndex = 0; nodes.clear(); edges.clear(); }
+	public void clear() { nextNodeIndex = 0; nodes.clear(); edges.clear(); version++; }
 	
 	public void removeEdges() {
+		version++;
 		for (List<EdgeType> edge : edges) {
 			edge.clear();
 		}
@@ -308,18 +336,26 @@ public class SparseGraph<NodeType extends GraphNode, EdgeType extends GraphEdge>
 	}
 
 	// creates a lookup table of the cost associated from traveling from one
-	public Map<Pair<Integer, Integer>, Double> createAllPairsCostsTable() {
-		// Map a graph
-		Map<Pair<Integer, Integer>, Double> pathCosts = new HashMap<Pair<Integer, Integer>, Double>(numNodes() * numNodes() - numNodes());
+	// node to every other
+	public PathCostTable createAllPairsCostsTable() {
+		return createAllPairsCostsTable(false);
+	}
+	
+	/** as above, optionally storing the costs as floats. An undirected
+	 * graph's costs are symmetric so only half the table is stored. */
+	public PathCostTable createAllPairsCostsTable(boolean singlePrecision) {
+		PathCostTable pathCosts = new PathCostTable(numNodes(), !isDigraph, singlePrecision);
 		
 		for (int source = 0; source < numNodes(); source++) {
 			// Do the search
 			GraphSearchDijkstra search = new GraphSearchDijkstra(this, source, -1);
 			
 			// iterate through every node in the graph and grab the cost to
-			// travel to that node
-			for (int target = 0; target < numNodes(); target++) {
-				pathCosts.put(new Pair<Integer, Integer>(source, target), search.getCostToNode(target));
+			// travel to that node. When the table is symmetric the rest of
+			// the row was filled in by earlier searches
+			int lastTarget = isDigraph ? numNodes() - 1 : source;
+			for (int target = 0; target <= lastTarget; target++) {
+				pathCosts.setCost(source, target, search.getCostToNode(target));
 			}
 		}
 		
@@ -33,6 +33,7 @@ import raven.game.RavenGame;
 import raven.game.RavenObject;
 import raven.game.RavenUserOptions;
 import raven.math.Vector2D;
+import raven.utils.BinaryMapFormat;
 import raven.utils.Log;
 
 public class RavenUI extends JFrame implements KeyListener, MouseListener, ComponentListener {
@@ -165,11 +166,11 @@ public class RavenUI extends JFrame implements KeyListener, MouseListener, Compo
 		checkedMenuItem.addActionListener(BuildToggleUserAction("showNodeIndices"));
 		menu.add(checkedMenuItem);
 		// Smooth paths (quick)
-		checkedMenuItem = new JCheckBoxMenuItem("Smooth paths (quick)");
+		checkedMenuItem = new JCheckBoxMenuItem("Smooth paths (quick)", RavenUserOptions.smoothPathsQuick);
 		checkedMenuItem.addActionListener(BuildToggleUserAction("smoothPathsQuick"));
 		menu.add(checkedMenuItem);
 		// Smooth paths (precise)
-		checkedMenuItem = new JCheckBoxMenuItem("Smooth paths (precise)");
+		checkedMenuItem = new JCheckBoxMenuItem("Smooth paths (precise)", RavenUserOptions.smoothPathsPrecise);
 		checkedMenuItem.addActionListener(BuildToggleUserAction("smoothPathsPrecise"));
 		menu.add(checkedMenuItem);
 
@@ -252,12 +253,12 @@ public class RavenUI extends JFrame implements KeyListener, MouseListener, Compo
 		chooser.setFileFilter(new FileFilter() {
 			@Override
 			public boolean accept(File file) {
-				return file.getName().endsWith(".raven");
+				return file.getName().endsWith(".raven") || file.getName().endsWith(BinaryMapFormat.EXTENSION);
 			}
 
 			@Override
 			public String getDescription() {
-				return "Raven levels (*.raven)";
+				return "Raven levels (*.raven, *" + BinaryMapFormat.EXTENSION + ")";
 			}
 		});
 		int chooseResult = chooser.showOpenDialog(null);
@@ -0,0 +1,297 @@
+/**
+ * Reads and writes maps in a compact binary form.
+ */
+package raven.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import raven.game.RavenMap;
+import raven.game.RavenObject;
+import raven.game.interfaces.IRavenBot;
+import raven.game.navigation.NavGraphEdge;
+import raven.game.navigation.NavGraphNode;
+import raven.game.triggers.Trigger;
+import raven.game.triggers.TriggerHealthGiver;
+import raven.game.triggers.TriggerWeaponGiver;
+import raven.math.Vector2D;
+import raven.math.Wall2D;
+import raven.math.graph.PathCostTable;
+import raven.math.graph.SparseGraph;
+import raven.script.RavenScript;
+
+/**
+ * A binary map file holds everything in a RavenMap that the XML form does,
+ * plus the path cost table, so loading one needs no parsing and no graph
+ * searches. The file is memory mapped and read straight out of the buffer.
+ *
+ * Only maps without doors, and whose triggers are all health or weapon
+ * givers, can be written. Anything else is refused with an IOException and
+ * should stay in XML. Triggers are created anew on loading, so are given
+ * fresh IDs.
+ *
+ * Everything is big-endian. Strings are an int byte count followed by UTF-8.
+ */
+public class BinaryMapFormat {
+	public static final String EXTENSION = ".rvb";
+
+	private static final int MAGIC = ('R' << 24) | ('V' << 16) | ('N' << 8) | 'B';
+	private static final int VERSION = 1;
+
+	private static final byte HEALTH_GIVER = 1;
+	private static final byte WEAPON_GIVER = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** true if the file starts with the binary map header */
+	public static boolean isBinary(File file) throws IOException {
+		if (file.length() < 4)
+			return false;
+
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return in.readInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/** the path a binary copy of the given map file would have */
+	public static File binaryFileFor(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			name = name.substring(0, dot);
+		}
+		return new File(file.getParentFile(), name + EXTENSION);
+	}
+
+	public static void write(RavenMap map, File file) throws IOException {
+		if (!map.getDoors().isEmpty())
+			throw new IOException("Maps with doors can't be written in binary");
+
+		for (Trigger<IRavenBot> trigger : map.getTriggers()) {
+			if (trigger.getClass() != TriggerHealthGiver.class && trigger.getClass() != TriggerWeaponGiver.class)
+				throw new IOException("Triggers of type " + trigger.getClass().getSimpleName() + " can't be written in binary");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			writeString(out, map.getName() == null ? "" : map.getName());
+			out.writeInt(map.getSizeX());
+			out.writeInt(map.getSizeY());
+
+			out.writeInt(map.getWalls().size());
+			for (Wall2D wall : map.getWalls()) {
+				out.writeDouble(wall.from().x);
+				out.writeDouble(wall.from().y);
+				out.writeDouble(wall.to().x);
+				out.writeDouble(wall.to().y);
+			}
+
+			out.writeInt(map.getSpawnPoints().size());
+			for (Vector2D point : map.getSpawnPoints()) {
+				out.writeDouble(point.x);
+				out.writeDouble(point.y);
+			}
+
+			out.writeInt(map.getTriggers().size());
+			for (Trigger<IRavenBot> trigger : map.getTriggers()) {
+				boolean health = trigger instanceof TriggerHealthGiver;
+				out.writeByte(health ? HEALTH_GIVER : WEAPON_GIVER);
+				writeString(out, trigger.entityType().name());
+				out.writeDouble(trigger.pos().x);
+				out.writeDouble(trigger.pos().y);
+				out.writeDouble(trigger.getBRadius());
+				out.writeInt(trigger.graphNodeIndex());
+				if (health) {
+					TriggerHealthGiver giver = (TriggerHealthGiver)trigger;
+					out.writeDouble(giver.getRespawnDelay());
+					out.writeInt(giver.healthGiven());
+				} else {
+					out.writeDouble(((TriggerWeaponGiver)trigger).getRespawnDelay());
+				}
+			}
+
+			SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> graph = map.getNavGraph();
+			out.writeBoolean(graph.isDigraph());
+			out.writeInt(graph.getNextFreeNodeIndex());
+			out.writeInt(graph.numNodes());
+			for (int i = 0; i < graph.numNodes(); i++) {
+				NavGraphNode<Trigger<IRavenBot>> node = graph.getNode(i);
+				out.writeInt(node.index());
+				out.writeDouble(node.pos().x);
+				out.writeDouble(node.pos().y);
+			}
+			for (int i = 0; i < graph.numNodes(); i++) {
+				List<NavGraphEdge> edges = graph.getEdges(i);
+				out.writeInt(edges.size());
+				for (NavGraphEdge edge : edges) {
+					out.writeInt(edge.from());
+					out.writeInt(edge.to());
+					out.writeDouble(edge.baseCost());
+					out.writeInt(edge.flags());
+					out.writeInt(edge.IDOfIntersectingEntity());
+				}
+			}
+
+			map.getPathCostTable().write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static RavenMap read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			FileChannel channel = raf.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+			throw new IOException(file + " is not a binary map");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException(file + " is binary map version " + version + ", expected " + VERSION);
+
+		try {
+			return read(file, buffer);
+		} catch (BufferUnderflowException e) {
+			throw new IOException(file + " is truncated", e);
+		} catch (RuntimeException e) {
+			throw new IOException(file + " is corrupt", e);
+		}
+	}
+
+	/** reads the rest of a binary map, after the header */
+	private static RavenMap read(File file, ByteBuffer buffer) throws IOException {
+		String name = readString(buffer);
+		int sizeX = buffer.getInt();
+		int sizeY = buffer.getInt();
+
+		int numWalls = buffer.getInt();
+		List<Wall2D> walls = new ArrayList<Wall2D>(numWalls);
+		for (int i = 0; i < numWalls; i++) {
+			Vector2D from = new Vector2D(buffer.getDouble(), buffer.getDouble());
+			Vector2D to = new Vector2D(buffer.getDouble(), buffer.getDouble());
+			walls.add(new Wall2D(from, to));
+		}
+
+		int numSpawnPoints = buffer.getInt();
+		List<Vector2D> spawnPoints = new ArrayList<Vector2D>(numSpawnPoints);
+		for (int i = 0; i < numSpawnPoints; i++) {
+			spawnPoints.add(new Vector2D(buffer.getDouble(), buffer.getDouble()));
+		}
+
+		int giverRange = RavenScript.getInt("DefaultGiverTriggerRange");
+		int numTriggers = buffer.getInt();
+		List<Trigger<IRavenBot>> triggers = new ArrayList<Trigger<IRavenBot>>(numTriggers);
+		Map<Integer, Trigger<IRavenBot>> triggersByNode = new HashMap<Integer, Trigger<IRavenBot>>();
+		for (int i = 0; i < numTriggers; i++) {
+			byte kind = buffer.get();
+			RavenObject type = RavenObject.valueOf(readString(buffer));
+			Vector2D position = new Vector2D(buffer.getDouble(), buffer.getDouble());
+			double radius = buffer.getDouble();
+			int nodeIndex = buffer.getInt();
+			double respawnDelay = buffer.getDouble();
+
+			Trigger<IRavenBot> trigger;
+			if (kind == HEALTH_GIVER) {
+				TriggerHealthGiver giver = new TriggerHealthGiver(position, giverRange, buffer.getInt());
+				giver.setRespawnDelay(respawnDelay);
+				trigger = giver;
+			} else if (kind == WEAPON_GIVER) {
+				TriggerWeaponGiver giver = new TriggerWeaponGiver(position, giverRange);
+				giver.setRespawnDelay(respawnDelay);
+				trigger = giver;
+			} else {
+				throw new IOException(file + " has a trigger of unknown kind " + kind);
+			}
+
+			trigger.setEntityType(type);
+			trigger.setBRadius(radius);
+			trigger.setGraphNodeIndex(nodeIndex);
+			triggers.add(trigger);
+			triggersByNode.put(nodeIndex, trigger);
+		}
+
+		boolean digraph = buffer.get() != 0;
+		int nextNodeIndex = buffer.getInt();
+		int numNodes = buffer.getInt();
+		List<NavGraphNode<Trigger<IRavenBot>>> nodes = new ArrayList<NavGraphNode<Trigger<IRavenBot>>>(numNodes);
+		for (int i = 0; i < numNodes; i++) {
+			int index = buffer.getInt();
+			Vector2D position = new Vector2D(buffer.getDouble(), buffer.getDouble());
+
+			// a giver's node shares its position and points back at it, as
+			// when the map was made
+			Trigger<IRavenBot> trigger = index == NavGraphNode.INVALID_NODE_INDEX ? null : triggersByNode.get(index);
+			if (trigger != null) {
+				position = trigger.pos();
+			}
+
+			NavGraphNode<Trigger<IRavenBot>> node = new NavGraphNode<Trigger<IRavenBot>>(index, position);
+			node.setExtraInfo(trigger);
+			nodes.add(node);
+		}
+
+		List<List<NavGraphEdge>> edges = new ArrayList<List<NavGraphEdge>>(numNodes);
+		for (int i = 0; i < numNodes; i++) {
+			int numEdges = buffer.getInt();
+			List<NavGraphEdge> edgeList = new LinkedList<NavGraphEdge>();
+			for (int j = 0; j < numEdges; j++) {
+				int from = buffer.getInt();
+				int to = buffer.getInt();
+				double cost = buffer.getDouble();
+				int flags = buffer.getInt();
+				int id = buffer.getInt();
+				edgeList.add(new NavGraphEdge(from, to, cost, flags, id));
+			}
+			edges.add(edgeList);
+		}
+
+		SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> navGraph =
+			new SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>(nodes, edges, digraph, nextNodeIndex);
+
+		PathCostTable pathCosts = PathCostTable.read(buffer);
+
+		RavenMap map = new RavenMap(name, sizeX, sizeY, walls, spawnPoints, triggers, navGraph, pathCosts);
+		map.setPath(file.getPath());
+		return map;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -1,96 +1,237 @@
 package raven.utils;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class IndexedPriorityQueue<K extends Comparable<K>> {
-	private List<K>	keys = new ArrayList<K>();
-	
-	private List<Integer> heap;
-	
-	private List<Integer> invHeap;
-	
+import java.util.Arrays;
+
+/**
+ * An indexed min-priority queue of the integers 0 .. maxSize-1. The queue
+ * does not store priorities itself: it orders indices by looking them up in
+ * a keys array owned by the caller, so a search can lower a node's cost in
+ * its own array and then call changePriority.
+ *
+ * Everything is kept in primitive arrays, and clear() empties the queue
+ * without reallocating, so one queue can be reused for many searches.
+ *
+ * Indices with equal keys may optionally be ordered by a second array of
+ * keys.
+ */
+public class IndexedPriorityQueue {
+	/** the default number of children of each heap node */
+	public static final int DEFAULT_ARITY = 2;
+
+	private double[] keys;
+
+	/** orders indices whose keys are equal. null if ties are not broken */
+	private double[] tieKeys;
+
+	/** heap[i] is the index stored at heap position i */
+	private int[] heap;
+
+	/** invHeap[index] is the heap position of index, or -1 if it is not
+	 * queued */
+	private int[] invHeap;
+
 	private int size, maxSize;
-	
-	public IndexedPriorityQueue(List<K> keys, int maxSize) {
+
+	private final int arity;
+
+	public IndexedPriorityQueue(double[] keys, int maxSize) {
+		this(keys, maxSize, DEFAULT_ARITY);
+	}
+
+	/**
+	 * @param keys the priority of each index. Lower keys are popped first.
+	 * @param maxSize the number of indices that may be queued
+	 * @param arity the number of children of each heap node. Wider heaps
+	 * are shallower, which makes insert and changePriority cheaper.
+	 */
+	public IndexedPriorityQueue(double[] keys, int maxSize, int arity) {
+		this(keys, null, maxSize, arity);
+	}
+
+	/**
+	 * @param keys the priority of each index. Lower keys are popped first.
+	 * @param tieKeys the priority of each index among those with the same
+	 * key. May be null
+	 * @param maxSize the number of indices that may be queued
+	 * @param arity the number of children of each heap node
+	 */
+	public IndexedPriorityQueue(double[] keys, double[] tieKeys, int maxSize, int arity) {
+		if (arity < 2)
+			throw new IllegalArgumentException("IndexedPriorityQueue: arity must be at least 2");
+		if (keys.length < maxSize)
+			throw new IllegalArgumentException("IndexedPriorityQueue: keys shorter than maxSize");
+
+		this.arity = arity;
 		this.keys = keys;
+		this.tieKeys = tieKeys;
 		this.maxSize = maxSize;
-		invHeap = new ArrayList<Integer>(maxSize);
-		heap = new ArrayList<Integer>(maxSize);
+		heap = new int[maxSize];
+		invHeap = new int[maxSize];
+		Arrays.fill(invHeap, -1);
 		size = 0;
-		
-		// Allocate blanks
-		for (int i = 0; i < maxSize+1; i++) {
-			heap.add(0);
-			invHeap.add(0);			
-		}
 	}
-	
-	private void swap(int a, int b) {
-		int temp = heap.get(a);
-		heap.set(a, heap.get(b));
-		heap.set(b, temp);
-		
-		// change the handles too
-		invHeap.set(heap.get(a), a);
-		invHeap.set(heap.get(b), b);
-	}
-	
-	private void reorderUpwards(int node) {
-		// move up the heap swapping the elements until the heap is ordered
-		while (node > 1 && keys.get(heap.get(node/2)).compareTo(keys.get(heap.get(node))) > 0) {
-			swap(node/2, node);
-			
-			node /= 2;
+
+	private void place(int pos, int index) {
+		heap[pos] = index;
+		invHeap[index] = pos;
+	}
+
+	private void reorderUpwards(int pos) {
+		// move up the heap, shifting parents down until the heap is ordered
+		int index = heap[pos];
+		double key = keys[index];
+
+		while (pos > 0) {
+			int parent = (pos - 1) / arity;
+			double parentKey = keys[heap[parent]];
+			if (parentKey < key || (parentKey == key && !isTieBrokenBelow(index, heap[parent]))) {
+				break;
+			}
+			place(pos, heap[parent]);
+			pos = parent;
 		}
+
+		place(pos, index);
 	}
-	
-	private void reorderDownwards(int node, int heapSize) {
-		// move down the heap from node nd swapping the elements until the
-		// heap is reordered
-		while (2 * node <= heapSize) {
-			int child = 2 * node;
-			
-			// set child to smaller of node's two children
-			if (child < heapSize && keys.get(heap.get(child)).compareTo(keys.get(heap.get(child+1))) > 0) {
-				child++;
+
+	private void reorderDownwards(int pos) {
+		// move down the heap, shifting the smallest child up until the heap
+		// is reordered
+		int index = heap[pos];
+		double key = keys[index];
+
+		while (true) {
+			int first = pos * arity + 1;
+			if (first >= size) {
+				break;
 			}
-			
-			// if this node is larger than its child, swap
-			if (keys.get(heap.get(node)).compareTo(keys.get(heap.get(child))) > 0) {
-				swap(child, node);
-			} else {
+
+			// find the smallest of this node's children
+			int last = Math.min(first + arity, size);
+			int child = first;
+			double childKey = keys[heap[first]];
+			for (int c = first + 1; c < last; c++) {
+				double k = keys[heap[c]];
+				if (k < childKey || (k == childKey && isTieBrokenBelow(heap[c], heap[child]))) {
+					child = c;
+					childKey = k;
+				}
+			}
+
+			if (key < childKey || (key == childKey && !isTieBrokenBelow(heap[child], index))) {
 				break;
 			}
+			place(pos, heap[child]);
+			pos = child;
 		}
+
+		place(pos, index);
 	}
-	
+
+	/** true if, their keys being equal, a must be popped before b */
+	private boolean isTieBrokenBelow(int a, int b) {
+		return tieKeys != null && tieKeys[a] < tieKeys[b];
+	}
+
 	/** to insert an item into the queue it gets added to the end of the heap
 	 * and then the heap is reordered from the bottom up. */
 	public void insert(int index) {
-		if (size+1 > maxSize)
+		if (size + 1 > maxSize)
 			throw new IndexOutOfBoundsException("IndexPriorityQueue grew too large!");
-		
+
+		place(size, index);
 		size++;
-		heap.set(size, index);
-		invHeap.set(index, size);
-		
-		reorderUpwards(size);
+
+		reorderUpwards(size - 1);
 	}
-	
+
 	/** to get the min item the first element is exchanged with the lowest in
 	 * the heap and then the heap is reordered from the top down. */
 	public int pop() {
-		swap(1, size);
-		
-		reorderDownwards(1, size-1);
-		
-		return heap.get(size--);
+		if (size == 0)
+			throw new IndexOutOfBoundsException("IndexPriorityQueue is empty!");
+
+		int top = heap[0];
+		invHeap[top] = -1;
+
+		size--;
+		if (size > 0) {
+			place(0, heap[size]);
+			reorderDownwards(0);
+		}
+
+		return top;
 	}
-	
+
+	/** restores the heap order after the key of a queued index was lowered */
 	public void changePriority(int index) {
-		reorderUpwards(invHeap.get(index));
+		reorderUpwards(invHeap[index]);
+	}
+
+	/** restores the heap order after the key of a queued index was raised
+	 * or lowered */
+	public void update(int index) {
+		int pos = invHeap[index];
+		reorderUpwards(pos);
+		if (heap[pos] == index) {
+			reorderDownwards(pos);
+		}
+	}
+
+	/** takes an index out of the queue, wherever it is */
+	public void remove(int index) {
+		int pos = invHeap[index];
+		invHeap[index] = -1;
+
+		size--;
+		if (pos < size) {
+			place(pos, heap[size]);
+			update(heap[pos]);
+		}
+	}
+
+	/** the index that pop would return, without removing it */
+	public int peek() {
+		if (size == 0)
+			throw new IndexOutOfBoundsException("IndexPriorityQueue is empty!");
+
+		return heap[0];
+	}
+
+	/** returns true if the index is currently queued */
+	public boolean contains(int index) {
+		return invHeap[index] >= 0;
+	}
+
+	/** empties the queue, keeping its arrays for reuse */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			invHeap[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * empties the queue and points it at a new keys array, only reallocating
+	 * if the queue must grow to hold maxSize indices.
+	 */
+	public void reset(double[] keys, int maxSize) {
+		if (keys.length < maxSize)
+			throw new IllegalArgumentException("IndexedPriorityQueue: keys shorter than maxSize");
+
+		if (maxSize > heap.length) {
+			heap = new int[maxSize];
+			invHeap = new int[maxSize];
+			Arrays.fill(invHeap, -1);
+		} else {
+			clear();
+		}
+
+		this.keys = keys;
+		this.maxSize = maxSize;
+		size = 0;
 	}
-	
+
 	public boolean isEmpty() { return size == 0; }
+	public int size() { return size; }
 }
@@ -3,10 +3,14 @@
  */
 package raven.utils;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 import raven.game.RavenBot;
 import raven.game.RavenDoor;
@@ -51,6 +55,10 @@ public class MapSerializer {
 		streamer.processAnnotations(NavGraphNode.class);
 		streamer.processAnnotations(NavGraphEdge.class);
 		
+		// the cost table is only ever written by serializeMapWithCosts, and
+		// XStream leaves it for readResolve to work out
+		streamer.omitField(RavenMap.class, "pathCosts");
+		
 		return streamer;
 	}
 	
@@ -89,4 +97,68 @@ public class MapSerializer {
 		reader.close();
 		return result;
 	}
+	
+	/**
+	 * Writes a map as XML with its path cost table added in a pathCosts
+	 * section, as hex. StreamingMapReader reads the table back instead of
+	 * searching the graph, and XStream skips it.
+	 */
+	public static void serializeMapWithCosts(RavenMap map, String filePath) throws IOException {
+		String xml = initXStream().toXML(map);
+		int end = xml.lastIndexOf("</RavenMap>");
+		
+		Writer writer = new BufferedWriter(new FileWriter(filePath));
+		try {
+			writer.write(xml, 0, end);
+			writer.write("  <pathCosts>");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(StreamingMapReader.hexStream(writer)));
+			map.getPathCostTable().write(out);
+			out.flush();
+			writer.write("</pathCosts>\n");
+			writer.write(xml, end, xml.length() - end);
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Reads an XML map with the streaming reader, or with XStream if the map
+	 * has something the streaming reader doesn't support.
+	 */
+	public static RavenMap readXmlMap(String filePath) throws IOException {
+		try {
+			return StreamingMapReader.read(new File(filePath));
+		} catch (IOException e) {
+			Log.info("MapSerializer", "Reading " + filePath + " with XStream. Reason: " + e.getLocalizedMessage());
+			return deserializeMapFromPath(filePath);
+		}
+	}
+	
+	/**
+	 * Loads a map for play. A binary map is read directly. For an XML map, a
+	 * binary copy beside it is used instead if it is at least as new, and the
+	 * XML is parsed otherwise.
+	 */
+	public static RavenMap loadMap(String filePath) throws IOException {
+		File file = new File(filePath);
+		if (BinaryMapFormat.isBinary(file)) {
+			return BinaryMapFormat.read(file);
+		}
+		
+		File binary = BinaryMapFormat.binaryFileFor(file);
+		if (!binary.equals(file) && binary.isFile() && binary.lastModified() >= file.lastModified()) {
+			try {
+				return BinaryMapFormat.read(binary);
+			} catch (IOException e) {
+				Log.warn("MapSerializer", "Couldn't read " + binary + ", loading the XML instead. Reason: " + e.getLocalizedMessage());
+			}
+		}
+		
+		return readXmlMap(filePath);
+	}
+	
+	/** writes a binary copy of an XML map for faster loading */
+	public static void convertToBinary(String xmlPath, String binaryPath) throws IOException {
+		BinaryMapFormat.write(readXmlMap(xmlPath), new File(binaryPath));
+	}
 }
@@ -0,0 +1,445 @@
+/**
+ * Reads XML maps with a pull parser instead of XStream.
+ */
+package raven.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import raven.game.RavenMap;
+import raven.game.RavenObject;
+import raven.game.interfaces.IRavenBot;
+import raven.game.navigation.NavGraphEdge;
+import raven.game.navigation.NavGraphNode;
+import raven.game.triggers.Trigger;
+import raven.game.triggers.TriggerHealthGiver;
+import raven.game.triggers.TriggerWeaponGiver;
+import raven.math.Vector2D;
+import raven.math.Wall2D;
+import raven.math.graph.PathCostTable;
+import raven.math.graph.SparseGraph;
+import raven.script.RavenScript;
+
+/**
+ * Builds a RavenMap from the XML XStream writes, one element at a time,
+ * without reflection or an intermediate object tree. The graph's node and
+ * edge lists are filled in directly and handed to the map whole.
+ *
+ * If the map has a pathCosts section (see MapSerializer.serializeMapWithCosts)
+ * the cost table is read from it rather than worked out.
+ *
+ * The same maps as BinaryMapFormat are supported: no doors, and only health
+ * and weapon giver triggers. Anything else throws an IOException, and the
+ * map should be read with XStream instead. XStream's relative references
+ * are followed when they point at a vector or trigger read earlier.
+ */
+public class StreamingMapReader {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final XmlPullParser parser;
+
+	/** everything that may be the target of a reference, by its path */
+	private final Map<String, Object> objects = new HashMap<String, Object>();
+
+	private StreamingMapReader(Reader reader) throws XmlPullParserException {
+		parser = new MXParser();
+		parser.setInput(reader);
+	}
+
+	public static RavenMap read(File file) throws IOException {
+		Reader reader = new BufferedReader(new FileReader(file), 1 << 16);
+		try {
+			RavenMap map = read(reader);
+			map.setPath(file.getPath());
+			return map;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** reads a map from XML, leaving the reader open */
+	public static RavenMap read(Reader reader) throws IOException {
+		try {
+			return new StreamingMapReader(reader).readMap();
+		} catch (XmlPullParserException e) {
+			throw new IOException("Not a valid map: " + e.getMessage());
+		}
+	}
+
+	private RavenMap readMap() throws IOException, XmlPullParserException {
+		parser.nextTag();
+		parser.require(XmlPullParser.START_TAG, null, "RavenMap");
+		String root = "/RavenMap";
+
+		String name = null;
+		int sizeX = 0;
+		int sizeY = 0;
+		List<Wall2D> walls = new ArrayList<Wall2D>();
+		List<Vector2D> spawnPoints = new ArrayList<Vector2D>();
+		List<Trigger<IRavenBot>> triggers = new ArrayList<Trigger<IRavenBot>>();
+		SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> navGraph = null;
+		PathCostTable pathCosts = null;
+
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String element = parser.getName();
+			String path = root + "/" + element;
+
+			if (element.equals("walls")) {
+				readWalls(path, walls);
+			} else if (element.equals("triggerSystem")) {
+				readTriggers(path, triggers);
+			} else if (element.equals("spawnPoints")) {
+				readSpawnPoints(path, spawnPoints);
+			} else if (element.equals("doors")) {
+				if (parser.nextTag() != XmlPullParser.END_TAG)
+					throw new IOException("Maps with doors can't be read by the streaming reader");
+			} else if (element.equals("navGraph")) {
+				navGraph = readNavGraph(path);
+			} else if (element.equals("sizeX")) {
+				sizeX = Integer.parseInt(parser.nextText().trim());
+			} else if (element.equals("sizeY")) {
+				sizeY = Integer.parseInt(parser.nextText().trim());
+			} else if (element.equals("name")) {
+				name = parser.nextText();
+			} else if (element.equals("pathCosts")) {
+				pathCosts = PathCostTable.read(ByteBuffer.wrap(decodeHex(parser.nextText())));
+			} else {
+				skip();
+			}
+		}
+
+		if (navGraph == null)
+			throw new IOException("Map has no navGraph");
+
+		return new RavenMap(name, sizeX, sizeY, walls, spawnPoints, triggers, navGraph, pathCosts);
+	}
+
+	private void readWalls(String path, List<Wall2D> walls) throws IOException, XmlPullParserException {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String wallPath = childPath(path, counts);
+
+			Vector2D from = null;
+			Vector2D to = null;
+			while (parser.nextTag() == XmlPullParser.START_TAG) {
+				String element = parser.getName();
+				if (element.equals("from")) {
+					from = readVector(wallPath + "/from");
+				} else if (element.equals("to")) {
+					to = readVector(wallPath + "/to");
+				} else {
+					skip();
+				}
+			}
+
+			walls.add(new Wall2D(from, to));
+		}
+	}
+
+	private void readSpawnPoints(String path, List<Vector2D> spawnPoints) throws IOException, XmlPullParserException {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			spawnPoints.add(readVector(childPath(path, counts)));
+		}
+	}
+
+	private void readTriggers(String path, List<Trigger<IRavenBot>> triggers) throws IOException, XmlPullParserException {
+		int giverRange = RavenScript.getInt("DefaultGiverTriggerRange");
+
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String kind = parser.getName();
+			if (!kind.equals("TriggerHealthGiver") && !kind.equals("TriggerWeaponGiver"))
+				throw new IOException("Triggers of type " + kind + " can't be read by the streaming reader");
+
+			String triggerPath = childPath(path, counts);
+
+			RavenObject type = null;
+			Vector2D position = null;
+			double radius = 0;
+			int nodeIndex = 0;
+			double respawnDelay = -1;
+			int healthGiven = 0;
+
+			while (parser.nextTag() == XmlPullParser.START_TAG) {
+				String element = parser.getName();
+				if (element.equals("type")) {
+					type = RavenObject.valueOf(parser.nextText().trim());
+				} else if (element.equals("position")) {
+					position = readVector(triggerPath + "/position");
+				} else if (element.equals("boundingRadius")) {
+					radius = Double.parseDouble(parser.nextText());
+				} else if (element.equals("graphNodeIndex")) {
+					nodeIndex = Integer.parseInt(parser.nextText().trim());
+				} else if (element.equals("numSecondsBetweenRespawns")) {
+					respawnDelay = Double.parseDouble(parser.nextText());
+				} else if (element.equals("healthGiven")) {
+					healthGiven = Integer.parseInt(parser.nextText().trim());
+				} else {
+					skip();
+				}
+			}
+
+			Trigger<IRavenBot> trigger;
+			if (kind.equals("TriggerHealthGiver")) {
+				TriggerHealthGiver giver = new TriggerHealthGiver(position, giverRange, healthGiven);
+				if (respawnDelay >= 0) {
+					giver.setRespawnDelay(respawnDelay);
+				}
+				trigger = giver;
+			} else {
+				TriggerWeaponGiver giver = new TriggerWeaponGiver(position, giverRange);
+				if (respawnDelay >= 0) {
+					giver.setRespawnDelay(respawnDelay);
+				}
+				trigger = giver;
+			}
+			if (type != null) {
+				trigger.setEntityType(type);
+			}
+			trigger.setBRadius(radius);
+			trigger.setGraphNodeIndex(nodeIndex);
+			triggers.add(trigger);
+
+			// the trigger keeps a copy of its position, and that copy is what
+			// anything referring to it should share
+			objects.put(triggerPath, trigger);
+			objects.put(triggerPath + "/position", trigger.pos());
+		}
+	}
+
+	private SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge> readNavGraph(String path)
+			throws IOException, XmlPullParserException {
+		List<NavGraphNode<Trigger<IRavenBot>>> nodes = new ArrayList<NavGraphNode<Trigger<IRavenBot>>>();
+		List<List<NavGraphEdge>> edges = new ArrayList<List<NavGraphEdge>>();
+		boolean digraph = false;
+		int nextNodeIndex = -1;
+
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String element = parser.getName();
+			if (element.equals("nodes")) {
+				readNodes(path + "/nodes", nodes);
+			} else if (element.equals("edges")) {
+				while (parser.nextTag() == XmlPullParser.START_TAG) {
+					edges.add(readEdgeList());
+				}
+			} else if (element.equals("isDigraph")) {
+				digraph = Boolean.parseBoolean(parser.nextText().trim());
+			} else if (element.equals("nextNodeIndex")) {
+				nextNodeIndex = Integer.parseInt(parser.nextText().trim());
+			} else {
+				skip();
+			}
+		}
+
+		if (nextNodeIndex < 0) {
+			nextNodeIndex = nodes.size();
+		}
+
+		try {
+			return new SparseGraph<NavGraphNode<Trigger<IRavenBot>>, NavGraphEdge>(nodes, edges, digraph, nextNodeIndex);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readNodes(String path, List<NavGraphNode<Trigger<IRavenBot>>> nodes) throws IOException, XmlPullParserException {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String nodePath = childPath(path, counts);
+
+			Vector2D position = null;
+			int index = NavGraphNode.INVALID_NODE_INDEX;
+			Trigger<IRavenBot> extraInfo = null;
+
+			while (parser.nextTag() == XmlPullParser.START_TAG) {
+				String element = parser.getName();
+				if (element.equals("position")) {
+					position = readVector(nodePath + "/position");
+				} else if (element.equals("index")) {
+					index = Integer.parseInt(parser.nextText().trim());
+				} else if (element.equals("extraInfo")) {
+					Object target = readReference(nodePath + "/extraInfo");
+					if (!(target instanceof Trigger))
+						throw new IOException("Node " + nodePath + " refers to something other than a trigger");
+					extraInfo = (Trigger<IRavenBot>)target;
+				} else {
+					skip();
+				}
+			}
+
+			NavGraphNode<Trigger<IRavenBot>> node = new NavGraphNode<Trigger<IRavenBot>>(index, position);
+			node.setExtraInfo(extraInfo);
+			nodes.add(node);
+		}
+	}
+
+	private List<NavGraphEdge> readEdgeList() throws IOException, XmlPullParserException {
+		List<NavGraphEdge> edgeList = new LinkedList<NavGraphEdge>();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			int from = 0;
+			int to = 0;
+			double cost = 0;
+			int flags = 0;
+			int id = -1;
+
+			while (parser.nextTag() == XmlPullParser.START_TAG) {
+				String element = parser.getName();
+				if (element.equals("from")) {
+					from = Integer.parseInt(parser.nextText().trim());
+				} else if (element.equals("to")) {
+					to = Integer.parseInt(parser.nextText().trim());
+				} else if (element.equals("cost")) {
+					cost = Double.parseDouble(parser.nextText());
+				} else if (element.equals("flags")) {
+					flags = Integer.parseInt(parser.nextText().trim());
+				} else if (element.equals("IDOfIntersectingEntity")) {
+					id = Integer.parseInt(parser.nextText().trim());
+				} else {
+					skip();
+				}
+			}
+
+			edgeList.add(new NavGraphEdge(from, to, cost, flags, id));
+		}
+		return edgeList;
+	}
+
+	/** reads a vector at the current element, or looks up the one it refers
+	 * to, and leaves the parser on its end tag */
+	private Vector2D readVector(String path) throws IOException, XmlPullParserException {
+		if (parser.getAttributeValue(null, "reference") != null) {
+			Object target = readReference(path);
+			if (!(target instanceof Vector2D))
+				throw new IOException(path + " refers to something other than a vector");
+			return (Vector2D)target;
+		}
+
+		double x = 0;
+		double y = 0;
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String element = parser.getName();
+			if (element.equals("x")) {
+				x = Double.parseDouble(parser.nextText());
+			} else if (element.equals("y")) {
+				y = Double.parseDouble(parser.nextText());
+			} else {
+				skip();
+			}
+		}
+
+		Vector2D vector = new Vector2D(x, y);
+		objects.put(path, vector);
+		return vector;
+	}
+
+	/** follows the reference on the current element, which must be empty */
+	private Object readReference(String path) throws IOException, XmlPullParserException {
+		String reference = parser.getAttributeValue(null, "reference");
+		if (reference == null)
+			throw new IOException(path + " is not a reference, which the streaming reader doesn't support");
+		if (parser.nextTag() != XmlPullParser.END_TAG)
+			throw new IOException(path + " is a reference with content");
+
+		Object target = objects.get(resolve(path, reference));
+		if (target == null)
+			throw new IOException(path + " refers to " + reference + ", which hasn't been read");
+		return target;
+	}
+
+	/** the absolute path of a relative reference made from the given path */
+	private static String resolve(String path, String reference) {
+		if (reference.startsWith("/"))
+			return reference;
+
+		LinkedList<String> parts = new LinkedList<String>();
+		for (String part : path.substring(1).split("/")) {
+			parts.add(part);
+		}
+		for (String part : reference.split("/")) {
+			if (part.equals("..")) {
+				if (!parts.isEmpty()) {
+					parts.removeLast();
+				}
+			} else if (!part.equals(".") && part.length() > 0) {
+				parts.add(part);
+			}
+		}
+
+		StringBuilder result = new StringBuilder();
+		for (String part : parts) {
+			result.append('/').append(part);
+		}
+		return result.toString();
+	}
+
+	/** the path XStream gives the current element, a child of parent. The
+	 * second and later siblings of the same name are numbered from [2] */
+	private String childPath(String parent, Map<String, Integer> counts) {
+		String element = parser.getName();
+		Integer count = counts.get(element);
+		count = count == null ? 1 : count + 1;
+		counts.put(element, count);
+
+		return count == 1 ? parent + "/" + element : parent + "/" + element + "[" + count + "]";
+	}
+
+	/** skips the current element and everything in it */
+	private void skip() throws IOException, XmlPullParserException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = parser.next();
+			if (event == XmlPullParser.START_TAG) {
+				depth++;
+			} else if (event == XmlPullParser.END_TAG) {
+				depth--;
+			} else if (event == XmlPullParser.END_DOCUMENT) {
+				throw new IOException("Map ends inside an element");
+			}
+		}
+	}
+
+	/** a stream that writes each byte to the writer as two lower case hex
+	 * digits, the form decodeHex reads */
+	static OutputStream hexStream(final Writer writer) {
+		return new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				writer.write(HEX_DIGITS[(b >> 4) & 0xf]);
+				writer.write(HEX_DIGITS[b & 0xf]);
+			}
+		};
+	}
+
+	static byte[] decodeHex(String text) throws IOException {
+		text = text.trim();
+		if (text.length() % 2 != 0)
+			throw new IOException("pathCosts has an odd number of hex digits");
+
+		byte[] bytes = new byte[text.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int high = Character.digit(text.charAt(2 * i), 16);
+			int low = Character.digit(text.charAt(2 * i + 1), 16);
+			if (high < 0 || low < 0)
+				throw new IOException("pathCosts has a character that isn't a hex digit");
+			bytes[i] = (byte)((high << 4) | low);
+		}
+		return bytes;
+	}
+}